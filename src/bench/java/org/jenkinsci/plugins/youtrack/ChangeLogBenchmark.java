@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.youtrack;
+
+import hudson.MarkupText;
+import hudson.scm.ChangeLogSet;
+import org.jenkinsci.plugins.youtrack.youtrackapi.Project;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-commit work of the plugin on a whole change log: finding the commands and the issues to comment on when a
+ * build has parsed its change log, and linking the issue ids when the changes are shown.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ChangeLogBenchmark {
+    private static final String YOUTRACK_URL = "http://youtrack.example.com";
+    private static final String ROOT_URL = "http://jenkins.example.com/";
+    private static final String BUILD_URL = "job/bench/1/";
+
+    @Param({"1000", "10000"})
+    public int entryCount;
+
+    @Param({"10", "1000"})
+    public int projectCount;
+
+    private YouTrackSite youTrackSite;
+    private List<ChangeLogSet.Entry> entries;
+    private IssueIdMatcher issueIdMatcher;
+    private YouTrackSCMListener listener;
+    private YouTrackSCMListener.ProcessingContext context;
+    private YouTrackChangeLogAnnotator annotator;
+
+    @Setup
+    public void setUp() {
+        List<String> shortNames = ChangeLogs.shortNames(projectCount);
+        List<Project> projects = ChangeLogs.projects(shortNames);
+        entries = ChangeLogs.entries(ChangeLogs.messages(new Random(42), shortNames, entryCount));
+
+        youTrackSite = new YouTrackSite("bench", "user", "password", YOUTRACK_URL);
+        youTrackSite.setPluginEnabled(true);
+        youTrackSite.setCommandsEnabled(true);
+        youTrackSite.setCommentEnabled(true);
+        youTrackSite.setAnnotationsEnabled(true);
+
+        issueIdMatcher = IssueIdMatcher.forProjects(projects);
+        listener = new YouTrackSCMListener();
+        context = new YouTrackSCMListener.ProcessingContext(youTrackSite, projects, ROOT_URL + BUILD_URL);
+        annotator = new YouTrackChangeLogAnnotator();
+    }
+
+    @Benchmark
+    public int commands() {
+        CommandBatch commandBatch = new CommandBatch(youTrackSite);
+        int numCommands = 0;
+        for (ChangeLogSet.Entry entry : entries) {
+            numCommands += listener.addCommandsIfEnabled(context, entry, entry.getMsg(), commandBatch);
+        }
+        return numCommands;
+    }
+
+    @Benchmark
+    public CommandBatch comments() {
+        CommandBatch commandBatch = new CommandBatch(youTrackSite);
+        for (ChangeLogSet.Entry entry : entries) {
+            listener.addCommentIfEnabled(context, entry.getMsg(), commandBatch);
+        }
+        return commandBatch;
+    }
+
+    @Benchmark
+    public void annotate(Blackhole blackhole) {
+        for (ChangeLogSet.Entry entry : entries) {
+            MarkupText markupText = new MarkupText(entry.getMsg());
+            annotator.addIssueLinks(markupText, issueIdMatcher, YOUTRACK_URL, ROOT_URL, BUILD_URL);
+            blackhole.consume(markupText);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.jenkinsci.plugins.youtrack;
+
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+import org.jenkinsci.plugins.youtrack.youtrackapi.Project;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic change logs resembling those of a monorepo, with many projects and mostly plain messages.
+ */
+class ChangeLogs {
+    private static final String[] WORDS = {"fix", "refactor", "update", "the", "parser", "for", "build", "cache",
+            "remove", "unused", "code", "in", "module", "add", "test", "handle", "null", "values", "bump", "version"};
+    private static final String[] COMMANDS = {"Fixed", "State In Progress", "Fixed Assignee me", "work 1h", "tag build"};
+
+    private ChangeLogs() {
+    }
+
+    /**
+     * Creates distinct project short names, like APRJ, BPRJ, ..., ABPRJ.
+     */
+    static List<String> shortNames(int count) {
+        List<String> shortNames = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int n = i;
+            do {
+                name.append((char) ('A' + n % 26));
+                n /= 26;
+            } while (n > 0);
+            name.append("PRJ");
+            shortNames.add(name.toString());
+        }
+        return shortNames;
+    }
+
+    static List<Project> projects(List<String> shortNames) {
+        List<Project> projects = new ArrayList<Project>(shortNames.size());
+        for (String shortName : shortNames) {
+            Project project = new Project();
+            project.setShortName(shortName);
+            projects.add(project);
+        }
+        return projects;
+    }
+
+    /**
+     * Creates commit messages where about a third reference an issue, and one in ten has a command.
+     */
+    static List<String> messages(Random random, List<String> shortNames, int count) {
+        List<String> messages = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder message = new StringBuilder();
+            String issueId = shortNames.get(random.nextInt(shortNames.size())) + "-" + (1 + random.nextInt(5000));
+            int kind = random.nextInt(10);
+            if (kind < 3) {
+                message.append(issueId).append(' ');
+            }
+            sentence(random, message);
+            int lines = random.nextInt(8);
+            if (lines > 0) {
+                message.append("\n");
+            }
+            for (int line = 0; line < lines; line++) {
+                message.append('\n');
+                sentence(random, message);
+            }
+            if (kind == 9) {
+                message.append('\n').append(random.nextBoolean() ? "#" : "!#").append(issueId).append(' ')
+                        .append(COMMANDS[random.nextInt(COMMANDS.length)]).append('\n');
+                sentence(random, message);
+            }
+            messages.add(message.toString());
+        }
+        return messages;
+    }
+
+    /**
+     * Creates change log entries with the given messages.
+     */
+    static List<ChangeLogSet.Entry> entries(List<String> messages) {
+        List<ChangeLogSet.Entry> entries = new ArrayList<ChangeLogSet.Entry>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            entries.add(new Entry(Integer.toHexString(i), messages.get(i)));
+        }
+        return entries;
+    }
+
+    private static void sentence(Random random, StringBuilder message) {
+        int words = 3 + random.nextInt(10);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                message.append(' ');
+            }
+            message.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+
+    private static class Entry extends ChangeLogSet.Entry {
+        private final String commitId;
+        private final String msg;
+
+        Entry(String commitId, String msg) {
+            this.commitId = commitId;
+            this.msg = msg;
+        }
+
+        @Override
+        public String getCommitId() {
+            return commitId;
+        }
+
+        @Override
+        public String getMsg() {
+            return msg;
+        }
+
+        @Override
+        public User getAuthor() {
+            return null;
+        }
+
+        @Override
+        public Collection<String> getAffectedPaths() {
+            return Collections.emptyList();
+        }
+    }
+}
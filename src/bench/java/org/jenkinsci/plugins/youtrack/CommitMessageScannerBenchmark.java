@@ -0,0 +1,83 @@
+package org.jenkinsci.plugins.youtrack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * Compares finding the commands of a change log with {@link CommitMessageScanner} against splitting each message into
+ * lines and matching the text after each #, as the SCM listener did before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class CommitMessageScannerBenchmark {
+    @Param({"10", "1000"})
+    public int projectCount;
+
+    @Param({"1000"})
+    public int entryCount;
+
+    private List<String> messages;
+    private IssueIdMatcher issueIdMatcher;
+    private CommitMessageScanner scanner;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<String> shortNames = ChangeLogs.shortNames(projectCount);
+        messages = ChangeLogs.messages(random, shortNames, entryCount);
+        issueIdMatcher = IssueIdMatcher.get(shortNames);
+        scanner = CommitMessageScanner.create(issueIdMatcher);
+    }
+
+    @Benchmark
+    public void scanner(Blackhole blackhole) {
+        for (String message : messages) {
+            scanner.reset(message);
+            while (scanner.next()) {
+                blackhole.consume(scanner.getIssueId());
+                blackhole.consume(scanner.getCommand());
+                blackhole.consume(scanner.getComment());
+                blackhole.consume(scanner.isSilent());
+            }
+        }
+    }
+
+    @Benchmark
+    public void splitLines(Blackhole blackhole) {
+        for (String message : messages) {
+            String[] lines = message.split("\n");
+            for (int i = 0; i < lines.length; i++) {
+                String line = lines[i];
+                if (line.contains("#")) {
+                    String comment = null;
+                    String issueStart = line.substring(line.indexOf("#") + 1);
+                    int hashPosition = line.indexOf("#");
+                    boolean silent = hashPosition != 0 && line.charAt(hashPosition - 1) == '!';
+                    if (i + 1 < lines.length && !lines[i + 1].contains("#")) {
+                        comment = lines[i + 1];
+                    }
+                    Matcher matcher = issueIdMatcher.commandMatcher(issueStart);
+                    if (matcher != null && matcher.lookingAt()) {
+                        blackhole.consume(matcher.group(IssueIdMatcher.ISSUE_ID_GROUP));
+                        blackhole.consume(matcher.group(IssueIdMatcher.COMMAND_GROUP));
+                        blackhole.consume(comment);
+                        blackhole.consume(silent);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package org.jenkinsci.plugins.youtrack;
+
+import hudson.model.StreamBuildListener;
+import hudson.scm.ChangeLogSet;
+import org.jenkinsci.plugins.youtrack.youtrackapi.BuildBundle;
+import org.jenkinsci.plugins.youtrack.youtrackapi.CachingYouTrackClient;
+import org.jenkinsci.plugins.youtrack.youtrackapi.Field;
+import org.jenkinsci.plugins.youtrack.youtrackapi.Group;
+import org.jenkinsci.plugins.youtrack.youtrackapi.Issue;
+import org.jenkinsci.plugins.youtrack.youtrackapi.Project;
+import org.jenkinsci.plugins.youtrack.youtrackapi.StateBundle;
+import org.jenkinsci.plugins.youtrack.youtrackapi.User;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackClient;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackServer;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackStubServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays synthetic change logs against a {@link YouTrackStubServer}, the way builds do, and reports the throughput
+ * and the latency percentiles of each YouTrack operation.
+ * <p/>
+ * Each build logs in, gets the projects, collects the comments and commands of its change log, executes them with
+ * {@link CommandBatch} and adds itself to a build bundle, using the same client stack as the plugin. Options are
+ * given as <code>--name=value</code>:
+ * <ul>
+ * <li>builds: number of builds to replay (20)</li>
+ * <li>concurrency: number of builds running at the same time (4)</li>
+ * <li>entries: change log entries per build (200)</li>
+ * <li>projects: number of projects (100)</li>
+ * <li>latency, jitter: milliseconds added to every request by the server (20, 10)</li>
+ * <li>errorRate: fraction of requests failing with 503 (0)</li>
+ * <li>maxConcurrent: requests the server handles at once before answering 429, 0 for no limit (0)</li>
+ * </ul>
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec -Dbench.main=org.jenkinsci.plugins.youtrack.YouTrackLoadTest
+ * -Dbench.args="--builds=50 --errorRate=0.01"</code>.
+ */
+public class YouTrackLoadTest {
+    private final Map<String, String> options;
+
+    public YouTrackLoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Options are given as --name=value: " + arg);
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        new YouTrackLoadTest(options).run();
+        System.exit(0);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    public void run() throws Exception {
+        int builds = intOption("builds", 20);
+        int concurrency = intOption("concurrency", 4);
+        int entries = intOption("entries", 200);
+        List<String> shortNames = ChangeLogs.shortNames(intOption("projects", 100));
+
+        YouTrackStubServer stubServer = new YouTrackStubServer(shortNames);
+        stubServer.setLatency(intOption("latency", 20), intOption("jitter", 10));
+        stubServer.setErrorRate(options.containsKey("errorRate") ? Double.parseDouble(options.get("errorRate")) : 0);
+        stubServer.setMaxConcurrentRequests(intOption("maxConcurrent", 0));
+        stubServer.start();
+        try {
+            final YouTrackSite youTrackSite = new YouTrackSite("load-test", "user", "password", stubServer.getUrl());
+            youTrackSite.setPluginEnabled(true);
+            youTrackSite.setCommentEnabled(true);
+            youTrackSite.setCommandsEnabled(true);
+            final TimingClient timingClient = new TimingClient(new YouTrackServer(stubServer.getUrl()));
+            final YouTrackClient youTrackClient = new CachingYouTrackClient(timingClient);
+
+            Random random = new Random(42);
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(builds);
+            for (int i = 0; i < builds; i++) {
+                final int buildNumber = i + 1;
+                final List<ChangeLogSet.Entry> changeLog = ChangeLogs.entries(ChangeLogs.messages(random, shortNames, entries));
+                tasks.add(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        replay(youTrackSite, youTrackClient, buildNumber, changeLog);
+                        return null;
+                    }
+                });
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+            long start = System.nanoTime();
+            try {
+                for (Future<Void> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            report(builds, elapsed, timingClient, stubServer.getRequestCounts());
+        } finally {
+            stubServer.stop();
+        }
+    }
+
+    private void replay(YouTrackSite youTrackSite, YouTrackClient youTrackClient, int buildNumber, List<ChangeLogSet.Entry> changeLog) throws Exception {
+        User user = YouTrackSessionCache.getUser(youTrackClient, youTrackSite);
+        if (user == null || !user.isLoggedIn()) {
+            return;
+        }
+        List<Project> projects = YouTrackProjectCache.getProjects(youTrackClient, youTrackSite, user);
+        if (projects == null) {
+            projects = new ArrayList<Project>();
+        }
+
+        YouTrackSCMListener listener = new YouTrackSCMListener();
+        YouTrackSCMListener.ProcessingContext context = new YouTrackSCMListener.ProcessingContext(youTrackSite, projects, "http://jenkins.example.com/job/load-test/" + buildNumber + "/");
+        CommandBatch commandBatch = new CommandBatch(youTrackSite);
+        for (ChangeLogSet.Entry entry : changeLog) {
+            String msg = entry.getMsg();
+            listener.addCommentIfEnabled(context, msg, commandBatch);
+            if (context.commandScanner != null) {
+                listener.addCommandsIfEnabled(context, entry, msg, commandBatch);
+            }
+        }
+        commandBatch.execute(youTrackClient, user, new StreamBuildListener(new NullOutputStream()), new ArrayList<Issue>());
+        youTrackClient.addBuildToBundle(youTrackSite.getName(), user, "Builds", String.valueOf(buildNumber));
+    }
+
+    private static void report(int builds, long elapsed, TimingClient timingClient, Map<String, Long> requestCounts) {
+        long calls = 0;
+        for (Timings timings : timingClient.timings.values()) {
+            calls += timings.count();
+        }
+        double seconds = elapsed / 1e9;
+        System.out.printf("%d builds in %.2f s, %.1f builds/s, %d calls, %.1f calls/s%n", builds, seconds, builds / seconds, calls, calls / seconds);
+        System.out.println();
+        System.out.printf("%-24s %8s %8s %10s %10s %10s %10s%n", "operation", "calls", "errors", "mean ms", "p50 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, Timings> entry : new TreeMap<String, Timings>(timingClient.timings).entrySet()) {
+            Timings timings = entry.getValue();
+            System.out.printf("%-24s %8d %8d %10.2f %10.2f %10.2f %10.2f%n", entry.getKey(), timings.count(), timings.errors(),
+                    timings.mean() / 1e6, timings.percentile(0.5) / 1e6, timings.percentile(0.99) / 1e6, timings.percentile(1) / 1e6);
+        }
+        System.out.println();
+        System.out.printf("%-56s %8s%n", "server request", "count");
+        for (Map.Entry<String, Long> entry : new TreeMap<String, Long>(requestCounts).entrySet()) {
+            System.out.printf("%-56s %8d%n", entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * The durations of the calls of one operation.
+     */
+    private static class Timings {
+        private final List<Long> durations = new ArrayList<Long>();
+        private int errors;
+
+        synchronized void add(long duration, boolean error) {
+            durations.add(duration);
+            if (error) {
+                errors++;
+            }
+        }
+
+        synchronized int count() {
+            return durations.size();
+        }
+
+        synchronized int errors() {
+            return errors;
+        }
+
+        synchronized double mean() {
+            long total = 0;
+            for (long duration : durations) {
+                total += duration;
+            }
+            return durations.isEmpty() ? 0 : (double) total / durations.size();
+        }
+
+        synchronized double percentile(double fraction) {
+            if (durations.isEmpty()) {
+                return 0;
+            }
+            List<Long> sorted = new ArrayList<Long>(durations);
+            Collections.sort(sorted);
+            int index = (int) Math.ceil(fraction * sorted.size()) - 1;
+            return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+        }
+    }
+
+    /**
+     * Measures the calls to the server, below the caching done by the plugin.
+     */
+    private static class TimingClient implements YouTrackClient {
+        private final YouTrackClient delegate;
+        private final ConcurrentMap<String, Timings> timings = new ConcurrentHashMap<String, Timings>();
+
+        TimingClient(YouTrackClient delegate) {
+            this.delegate = delegate;
+        }
+
+        private <T> T time(String operation, Callable<T> call) {
+            long start = System.nanoTime();
+            T result = null;
+            try {
+                result = call.call();
+                return result;
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            } finally {
+                Timings operationTimings = timings.get(operation);
+                if (operationTimings == null) {
+                    operationTimings = new Timings();
+                    Timings existing = timings.putIfAbsent(operation, operationTimings);
+                    if (existing != null) {
+                        operationTimings = existing;
+                    }
+                }
+                boolean error = result == null || (result instanceof Command && ((Command) result).getStatus() != Command.Status.OK)
+                        || (operation.equals("login") && !((User) result).isLoggedIn());
+                operationTimings.add(System.nanoTime() - start, error);
+            }
+        }
+
+        public Command createIssue(final String siteName, final User user, final String project, final String title, final String description, final String command) {
+            return time("createIssue", new Callable<Command>() {
+                public Command call() {
+                    return delegate.createIssue(siteName, user, project, title, description, command);
+                }
+            });
+        }
+
+        public List<Group> getGroups(final User user) {
+            return time("getGroups", new Callable<List<Group>>() {
+                public List<Group> call() {
+                    return delegate.getGroups(user);
+                }
+            });
+        }
+
+        public StateBundle getStateBundleWithName(final User user, final String stateBundleName) {
+            return time("getStateBundleWithName", new Callable<StateBundle>() {
+                public StateBundle call() {
+                    return delegate.getStateBundleWithName(user, stateBundleName);
+                }
+            });
+        }
+
+        public StateBundle getStateBundleForField(final User user, final String fieldName) {
+            return time("getStateBundleForField", new Callable<StateBundle>() {
+                public StateBundle call() {
+                    return delegate.getStateBundleForField(user, fieldName);
+                }
+            });
+        }
+
+        public List<Field> getFields(final User user) {
+            return time("getFields", new Callable<List<Field>>() {
+                public List<Field> call() {
+                    return delegate.getFields(user);
+                }
+            });
+        }
+
+        public List<Project> getProjects(final User user) {
+            return time("getProjects", new Callable<List<Project>>() {
+                public List<Project> call() {
+                    return delegate.getProjects(user);
+                }
+            });
+        }
+
+        public Command comment(final String siteName, final User user, final Issue issue, final String comment, final String group, final boolean silent) {
+            return time("comment", new Callable<Command>() {
+                public Command call() {
+                    return delegate.comment(siteName, user, issue, comment, group, silent);
+                }
+            });
+        }
+
+        public Command applyCommand(final String siteName, final User user, final Issue issue, final String command, final String comment, final User runAs, final boolean notify) {
+            return time("applyCommand", new Callable<Command>() {
+                public Command call() {
+                    return delegate.applyCommand(siteName, user, issue, command, comment, runAs, notify);
+                }
+            });
+        }
+
+        public User getUserByEmail(final User user, final String email) throws IOException {
+            try {
+                return time("getUserByEmail", new Callable<User>() {
+                    public User call() throws IOException {
+                        return delegate.getUserByEmail(user, email);
+                    }
+                });
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        public Map<String, User> getUsersByEmail(final User user, final int max) {
+            return time("getUsersByEmail", new Callable<Map<String, User>>() {
+                public Map<String, User> call() {
+                    return delegate.getUsersByEmail(user, max);
+                }
+            });
+        }
+
+        public User login(final String username, final String password) {
+            return time("login", new Callable<User>() {
+                public User call() {
+                    return delegate.login(username, password);
+                }
+            });
+        }
+
+        public Command addBuildToBundle(final String siteName, final User user, final String bundleName, final String buildName) {
+            return time("addBuildToBundle", new Callable<Command>() {
+                public Command call() {
+                    return delegate.addBuildToBundle(siteName, user, bundleName, buildName);
+                }
+            });
+        }
+
+        public Issue getIssue(final User user, final String issueId, final String stateField) {
+            return time("getIssue", new Callable<Issue>() {
+                public Issue call() {
+                    return delegate.getIssue(user, issueId, stateField);
+                }
+            });
+        }
+
+        public Issue getIssueState(final User user, final String issueId, final String stateField) {
+            return time("getIssueState", new Callable<Issue>() {
+                public Issue call() {
+                    return delegate.getIssueState(user, issueId, stateField);
+                }
+            });
+        }
+
+        public Map<String, Issue> getIssues(final User user, final Collection<String> issueIds, final String stateField) {
+            return time("getIssues", new Callable<Map<String, Issue>>() {
+                public Map<String, Issue> call() {
+                    return delegate.getIssues(user, issueIds, stateField);
+                }
+            });
+        }
+
+        public Map<String, Issue> getIssueStates(final User user, final Collection<String> issueIds, final String stateField) {
+            return time("getIssueStates", new Callable<Map<String, Issue>>() {
+                public Map<String, Issue> call() {
+                    return delegate.getIssueStates(user, issueIds, stateField);
+                }
+            });
+        }
+
+        public String[] getVersion() {
+            return time("getVersion", new Callable<String[]>() {
+                public String[] call() {
+                    return delegate.getVersion();
+                }
+            });
+        }
+
+        public List<BuildBundle> getBuildBundles(final User user) {
+            return time("getBuildBundles", new Callable<List<BuildBundle>>() {
+                public List<BuildBundle> call() {
+                    return delegate.getBuildBundles(user);
+                }
+            });
+        }
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
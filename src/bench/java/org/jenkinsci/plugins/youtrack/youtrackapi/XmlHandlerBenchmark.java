@@ -0,0 +1,108 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the XML responses of the legacy REST API which are read for every build: the project list, single
+ * issues and issue query results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class XmlHandlerBenchmark {
+    /**
+     * Number of projects in the project list, and of issues in the issue query result.
+     */
+    @Param({"10", "1000"})
+    public int count;
+
+    private byte[] projects;
+    private byte[] issue;
+    private byte[] issues;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder xml = new StringBuilder("<projects>");
+        for (int i = 0; i < count; i++) {
+            xml.append("<project name=\"Project ").append(i).append("\" shortName=\"P").append(i)
+                    .append("\" description=\"Project number ").append(i).append("\" isImporting=\"false\"/>");
+        }
+        projects = xml.append("</projects>").toString().getBytes("UTF-8");
+
+        issue = issueXml(new StringBuilder(), 1).toString().getBytes("UTF-8");
+
+        xml = new StringBuilder("<issueCompacts>");
+        for (int i = 0; i < count; i++) {
+            issueXml(xml, i);
+        }
+        issues = xml.append("</issueCompacts>").toString().getBytes("UTF-8");
+    }
+
+    /**
+     * Appends an issue with the fields in the order the server sends them, the state and summary after many others.
+     */
+    private static StringBuilder issueXml(StringBuilder xml, int number) {
+        xml.append("<issue id=\"P1-").append(number).append("\">");
+        field(xml, "projectShortName", "P1");
+        field(xml, "numberInProject", String.valueOf(number));
+        field(xml, "created", "1360000000000");
+        field(xml, "updated", "1360000000000");
+        field(xml, "reporterName", "root");
+        field(xml, "commentsCount", "3");
+        field(xml, "votes", "0");
+        field(xml, "summary", "Issue number " + number);
+        field(xml, "description", "A long description of the issue, which is not needed for the state checks. "
+                + "It describes the steps to reproduce the problem, the expected and the actual behaviour.");
+        field(xml, "Priority", "Normal");
+        field(xml, "Type", "Bug");
+        field(xml, "State", "Open");
+        field(xml, "Assignee", "root");
+        for (int i = 0; i < 3; i++) {
+            xml.append("<comment id=\"").append(i).append("\" author=\"root\" text=\"A comment on the issue\"/>");
+        }
+        return xml.append("</issue>");
+    }
+
+    private static void field(StringBuilder xml, String name, String value) {
+        xml.append("<field name=\"").append(name).append("\"><value>").append(value).append("</value></field>");
+    }
+
+    @Benchmark
+    public List<Project> projectList() throws Exception {
+        Project.ProjectListHandler handler = new Project.ProjectListHandler();
+        XmlParser.parse(new ByteArrayInputStream(projects), handler);
+        return handler.getProjects();
+    }
+
+    @Benchmark
+    public Issue issue() throws Exception {
+        Issue.IssueHandler handler = new Issue.IssueHandler("State");
+        XmlParser.parse(new ByteArrayInputStream(issue), handler);
+        return handler.getIssue();
+    }
+
+    @Benchmark
+    public Issue issueState() throws Exception {
+        Issue.IssueHandler handler = new Issue.IssueHandler("State", true);
+        XmlParser.parse(new ByteArrayInputStream(issue), handler);
+        return handler.getIssue();
+    }
+
+    @Benchmark
+    public List<Issue> issueList() throws Exception {
+        Issue.IssueListHandler handler = new Issue.IssueListHandler("State", true);
+        XmlParser.parse(new ByteArrayInputStream(issues), handler);
+        return handler.getIssues();
+    }
+}
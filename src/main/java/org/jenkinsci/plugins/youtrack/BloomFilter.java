@@ -0,0 +1,105 @@
+package org.jenkinsci.plugins.youtrack;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter for keys which already are uniformly distributed hashes, like the SHA-1 keys of
+ * {@link ProcessedRevisionStore}, so no further hashing is needed.
+ * <p/>
+ * Adding and checking keys is lock free. A negative answer is exact, a positive answer has to be confirmed.
+ */
+public class BloomFilter {
+    private final AtomicLongArray words;
+    private final long numBits;
+    private final int numHashes;
+
+    BloomFilter(int numWords, int numHashes) {
+        this.words = new AtomicLongArray(numWords);
+        this.numBits = (long) numWords * Long.SIZE;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Creates a filter.
+     *
+     * @param expectedKeys      the number of keys expected to be added.
+     * @param falsePositiveRate the wanted rate of false positives when the expected number of keys has been added.
+     * @return the filter.
+     */
+    public static BloomFilter create(long expectedKeys, double falsePositiveRate) {
+        long keys = Math.max(1, expectedKeys);
+        long bits = (long) Math.ceil(-keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int numWords = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bits + Long.SIZE - 1) / Long.SIZE));
+        int numHashes = (int) Math.max(1, Math.round((double) numWords * Long.SIZE / keys * Math.log(2)));
+        return new BloomFilter(numWords, numHashes);
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param key the key, at least 16 uniformly distributed bytes.
+     */
+    public void put(byte[] key) {
+        long hash1 = readLong(key, 0);
+        long hash2 = readLong(key, 8);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % numBits;
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word = words.get(index);
+            while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask)) {
+                word = words.get(index);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a key might have been added.
+     *
+     * @param key the key, at least 16 uniformly distributed bytes.
+     * @return false if the key has not been added, true if it might have been.
+     */
+    public boolean mightContain(byte[] key) {
+        long hash1 = readLong(key, 0);
+        long hash2 = readLong(key, 8);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % numBits;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void writeTo(DataOutputStream outputStream) throws IOException {
+        outputStream.writeInt(numHashes);
+        outputStream.writeInt(words.length());
+        for (int i = 0; i < words.length(); i++) {
+            outputStream.writeLong(words.get(i));
+        }
+    }
+
+    static BloomFilter readFrom(DataInputStream inputStream) throws IOException {
+        int numHashes = inputStream.readInt();
+        int numWords = inputStream.readInt();
+        if (numHashes <= 0 || numWords <= 0) {
+            throw new IOException("Invalid filter size");
+        }
+        BloomFilter filter = new BloomFilter(numWords, numHashes);
+        for (int i = 0; i < numWords; i++) {
+            filter.words.set(i, inputStream.readLong());
+        }
+        return filter;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,152 @@
+package org.jenkinsci.plugins.youtrack;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the time of the plugin went during a build: the total time spent by the plugin, the time of the calls to
+ * YouTrack in each phase, and the slowest calls. It is saved with the build in its {@link YouTrackCommandAction}.
+ * <p/>
+ * The time of a phase is the sum of the times of its calls. Comments and commands for different issues are executed
+ * in parallel, so the phases can add up to more than the total time.
+ */
+public class BuildTimings {
+    public static final String LOGIN = "Login";
+    public static final String PROJECT_FETCH = "Project fetch";
+    public static final String USER_LOOKUP = "User lookup";
+    public static final String COMMENTS = "Comments";
+    public static final String COMMANDS = "Commands";
+    public static final String STATE_CHECKS = "State checks";
+    public static final String BUNDLE_UPDATE = "Bundle update";
+
+    /**
+     * Number of slowest calls kept.
+     */
+    static final int MAX_SLOWEST_CALLS = 10;
+
+    /**
+     * Time in milliseconds the plugin took in the build.
+     */
+    private long totalTime;
+    /**
+     * The phases in the order they were first timed, keyed by name.
+     */
+    private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+    /**
+     * The slowest calls, slowest first.
+     */
+    private final List<Call> slowestCalls = new ArrayList<Call>();
+
+    /**
+     * Adds to the time the plugin took.
+     *
+     * @param millis the time in milliseconds.
+     */
+    public synchronized void addTotalTime(long millis) {
+        totalTime += millis;
+    }
+
+    /**
+     * Adds a call to the time of a phase.
+     *
+     * @param phase       the phase.
+     * @param description what the call did, e.g. the issue and command.
+     * @param millis      the time the call took in milliseconds.
+     */
+    public synchronized void addCall(String phase, String description, long millis) {
+        Phase timedPhase = phases.get(phase);
+        if (timedPhase == null) {
+            timedPhase = new Phase(phase);
+            phases.put(phase, timedPhase);
+        }
+        timedPhase.time += millis;
+        timedPhase.calls++;
+
+        int index = slowestCalls.size();
+        while (index > 0 && slowestCalls.get(index - 1).time < millis) {
+            index--;
+        }
+        if (index < MAX_SLOWEST_CALLS) {
+            slowestCalls.add(index, new Call(phase, description, millis));
+            if (slowestCalls.size() > MAX_SLOWEST_CALLS) {
+                slowestCalls.remove(slowestCalls.size() - 1);
+            }
+        }
+    }
+
+    public synchronized long getTotalTime() {
+        return totalTime;
+    }
+
+    public synchronized List<Phase> getPhases() {
+        return new ArrayList<Phase>(phases.values());
+    }
+
+    public synchronized List<Call> getSlowestCalls() {
+        return new ArrayList<Call>(slowestCalls);
+    }
+
+    public synchronized boolean isEmpty() {
+        return totalTime == 0 && phases.isEmpty();
+    }
+
+    /**
+     * The time of the calls in a phase.
+     */
+    public static class Phase {
+        private final String name;
+        private long time;
+        private int calls;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the time of the calls in milliseconds.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public int getCalls() {
+            return calls;
+        }
+    }
+
+    /**
+     * A timed call.
+     */
+    public static class Call {
+        private final String phase;
+        private final String description;
+        private final long time;
+
+        Call(String phase, String description, long time) {
+            this.phase = phase;
+            this.description = description;
+            this.time = time;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * @return the time of the call in milliseconds.
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+}
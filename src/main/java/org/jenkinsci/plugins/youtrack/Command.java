@@ -6,7 +6,7 @@ import java.util.Date;
  * This class represents a command performed by this plugin.
  */
 public class Command {
-    public enum Status {OK, FAILED, NOT_LOGGED_IN}
+    public enum Status {OK, FAILED, NOT_LOGGED_IN, QUEUED}
 
     private String siteName;
     private String issueId;
@@ -18,6 +18,26 @@ public class Command {
     private String group;
     private Date date;
     private boolean silent;
+    /**
+     * Key of the command in the {@link YouTrackOutbox} if it has been queued for retrying.
+     */
+    private String key;
+    /**
+     * Number of times the command has been retried from the outbox.
+     */
+    private int retries;
+    /**
+     * Time the command was started.
+     */
+    private Date startTime;
+    /**
+     * Time in milliseconds the command took.
+     */
+    private long duration;
+    /**
+     * Whether a failure was caused by the server being unavailable, so the command may succeed later.
+     */
+    private transient boolean retryable;
 
     public String getSiteName() {
         return siteName;
@@ -98,4 +118,51 @@ public class Command {
     public void setSilent(boolean silent) {
         this.silent = silent;
     }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Date startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * Checks whether the command failed in a way that retrying it later may succeed, i.e. the server could not be
+     * reached or answered with a server error, either for the command or when logging in. A login rejected because of
+     * wrong credentials is not retried.
+     *
+     * @return true if the command can be retried.
+     */
+    public boolean isRetryable() {
+        return retryable && (status == Status.FAILED || status == Status.NOT_LOGGED_IN);
+    }
+
+    public void setRetryable(boolean retryable) {
+        this.retryable = retryable;
+    }
 }
@@ -0,0 +1,370 @@
+package org.jenkinsci.plugins.youtrack;
+
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import org.jenkinsci.plugins.youtrack.youtrackapi.Issue;
+import org.jenkinsci.plugins.youtrack.youtrackapi.User;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Collects the comments and commands parsed from a change log, so they can be deduplicated and executed together.
+ * <p/>
+ * The states of the issues commands are applied to are fetched with one issue query before and one after executing
+ * the commands, instead of getting each issue before and after each command. The query after the commands only
+ * includes the issues which can have become fixed.
+ * <p/>
+ * Comments and commands which fail because YouTrack is unavailable are queued in the {@link YouTrackOutbox} for
+ * retrying, if the batch has a build.
+ */
+public class CommandBatch {
+    /**
+     * The site the commands are executed on.
+     */
+    private final YouTrackSite youTrackSite;
+    /**
+     * The build the commands are executed for, null if failed commands should not be queued.
+     */
+    private final AbstractBuild<?, ?> build;
+    /**
+     * The comments and commands in the order they were added.
+     */
+    private final List<PendingCommand> pendingCommands = new ArrayList<PendingCommand>();
+    /**
+     * Keys of the added comments and commands, used for skipping duplicates.
+     */
+    private final Set<String> keys = new HashSet<String>();
+
+    public CommandBatch(YouTrackSite youTrackSite) {
+        this(youTrackSite, null);
+    }
+
+    public CommandBatch(YouTrackSite youTrackSite, AbstractBuild<?, ?> build) {
+        this.youTrackSite = youTrackSite;
+        this.build = build;
+    }
+
+    /**
+     * Adds a comment to the batch. The same comment is only added once per issue.
+     *
+     * @param issueId the issue to comment on.
+     * @param comment the comment text.
+     * @return true if the comment was added, false if it was a duplicate.
+     */
+    public boolean addComment(String issueId, String comment) {
+        if (!keys.add("comment\n" + issueId + "\n" + comment)) {
+            return false;
+        }
+        PendingCommand pendingCommand = new PendingCommand(issueId);
+        pendingCommand.comment = comment;
+        pendingCommand.isComment = true;
+        pendingCommands.add(pendingCommand);
+        return true;
+    }
+
+    /**
+     * Adds a command to the batch. The same command for the same issue is only added once per commit, but is kept
+     * if it comes from different commits, as e.g. time tracking commands are not idempotent.
+     *
+     * @param commitId    the commit the command was found in.
+     * @param issueId     the issue to apply the command to.
+     * @param command     the command.
+     * @param comment     comment for the command, null is allowed.
+     * @param authorEmail e-mail of the user to run the command as, null is allowed.
+     * @param silent      true if watchers should not be notified.
+     * @return true if the command was added, false if it was a duplicate.
+     */
+    public boolean addCommand(String commitId, String issueId, String command, String comment, String authorEmail, boolean silent) {
+        if (!keys.add("command\n" + commitId + "\n" + issueId + "\n" + command + "\n" + comment + "\n" + authorEmail + "\n" + silent)) {
+            return false;
+        }
+        PendingCommand pendingCommand = new PendingCommand(issueId);
+        pendingCommand.command = command;
+        pendingCommand.comment = comment;
+        pendingCommand.authorEmail = authorEmail;
+        pendingCommand.silent = silent;
+        pendingCommands.add(pendingCommand);
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return pendingCommands.isEmpty();
+    }
+
+    /**
+     * Executes the comments and commands. Comments and commands for the same issue are executed in the order they
+     * were added, while different issues are updated in parallel with {@link YouTrackCommandExecutor}.
+     *
+     * @param youTrackServer the server.
+     * @param user           the logged in user.
+     * @param listener       the build listener to log to.
+     * @param fixedIssues    list to fill with the issues marked fixed by the commands.
+     * @return the commands executed.
+     * @throws InterruptedException if interrupted while waiting for the commands to complete.
+     */
+    public List<Command> execute(YouTrackClient youTrackServer, User user, BuildListener listener, List<Issue> fixedIssues) throws InterruptedException {
+        return execute(youTrackServer, user, listener, fixedIssues, new BuildTimings());
+    }
+
+    /**
+     * Executes the comments and commands, adding the time of the calls to the timings of the build.
+     *
+     * @param youTrackServer the server.
+     * @param user           the logged in user.
+     * @param listener       the build listener to log to.
+     * @param fixedIssues    list to fill with the issues marked fixed by the commands.
+     * @param timings        the timings of the build.
+     * @return the commands executed.
+     * @throws InterruptedException if interrupted while waiting for the commands to complete.
+     */
+    public List<Command> execute(final YouTrackClient youTrackServer, final User user, BuildListener listener, List<Issue> fixedIssues, BuildTimings timings) throws InterruptedException {
+        List<Command> commands = new ArrayList<Command>(pendingCommands.size());
+        if (pendingCommands.isEmpty()) {
+            return commands;
+        }
+
+        String stateFieldName = "State";
+        if (youTrackSite.getStateFieldName() != null && !youTrackSite.getStateFieldName().equals("")) {
+            stateFieldName = youTrackSite.getStateFieldName();
+        }
+
+        Set<String> commandIssueIds = new LinkedHashSet<String>();
+        for (PendingCommand pendingCommand : pendingCommands) {
+            if (!pendingCommand.isComment) {
+                commandIssueIds.add(pendingCommand.issueId);
+            }
+        }
+
+        //Get the issue states, then apply the commands, and get the issue states again,
+        //to know whether the commands have marked the issues as fixed, instead of trying to
+        //interpret the commands. This means however that there is a possibility for
+        //the user to change state between the before and the after call, so the after
+        //state can be affected by something else than the commands.
+        long start = System.currentTimeMillis();
+        Map<String, Issue> before = getIssues(youTrackServer, user, commandIssueIds, stateFieldName);
+        if (!commandIssueIds.isEmpty()) {
+            timings.addCall(BuildTimings.STATE_CHECKS, "Get states of " + commandIssueIds.size() + " issues before commands", System.currentTimeMillis() - start);
+        }
+
+        //Look up the users to run commands as first, each e-mail only once.
+        List<String> authorEmails = new ArrayList<String>();
+        for (PendingCommand pendingCommand : pendingCommands) {
+            if (!pendingCommand.isComment && pendingCommand.authorEmail != null && !authorEmails.contains(pendingCommand.authorEmail)) {
+                authorEmails.add(pendingCommand.authorEmail);
+            }
+        }
+        //E-mails which could not be looked up, as opposed to e-mails of no user.
+        final Set<String> failedLookups = Collections.synchronizedSet(new HashSet<String>());
+        List<Callable<User>> userLookups = new ArrayList<Callable<User>>(authorEmails.size());
+        for (final String authorEmail : authorEmails) {
+            userLookups.add(new Callable<User>() {
+                public User call() {
+                    try {
+                        return youTrackServer.getUserByEmail(user, authorEmail);
+                    } catch (IOException e) {
+                        failedLookups.add(authorEmail);
+                        return null;
+                    }
+                }
+            });
+        }
+        start = System.currentTimeMillis();
+        List<User> foundUsers = YouTrackCommandExecutor.execute(youTrackSite, authorEmails, userLookups);
+        if (!authorEmails.isEmpty()) {
+            timings.addCall(BuildTimings.USER_LOOKUP, "Find users of " + authorEmails.size() + " e-mails", System.currentTimeMillis() - start);
+        }
+        Map<String, User> runAsUsers = new HashMap<String, User>();
+        for (int i = 0; i < authorEmails.size(); i++) {
+            if (foundUsers.get(i) == null) {
+                listener.getLogger().println("Failed to find user with e-mail: " + authorEmails.get(i));
+            }
+            runAsUsers.put(authorEmails.get(i), foundUsers.get(i));
+        }
+
+        YouTrackOutbox outbox = build != null ? YouTrackOutbox.get() : null;
+
+        //Commands for the same issue are kept in order, different issues are updated in parallel.
+        List<String> issueKeys = new ArrayList<String>(pendingCommands.size());
+        List<Callable<Command>> tasks = new ArrayList<Callable<Command>>(pendingCommands.size());
+        for (final PendingCommand pendingCommand : pendingCommands) {
+            issueKeys.add(pendingCommand.issueId);
+            if (pendingCommand.isComment) {
+                tasks.add(new Callable<Command>() {
+                    public Command call() {
+                        return youTrackServer.comment(youTrackSite.getName(), user, new Issue(pendingCommand.issueId), pendingCommand.comment, youTrackSite.getLinkVisibility(), youTrackSite.isSilentLinks());
+                    }
+                });
+            } else if (outbox != null && failedLookups.contains(pendingCommand.authorEmail)) {
+                //Queue the command instead of running it as the wrong user.
+                tasks.add(new Callable<Command>() {
+                    public Command call() {
+                        return createLookupFailure(pendingCommand);
+                    }
+                });
+            } else {
+                final User userByEmail = pendingCommand.authorEmail != null ? runAsUsers.get(pendingCommand.authorEmail) : null;
+                tasks.add(new Callable<Command>() {
+                    public Command call() {
+                        return youTrackServer.applyCommand(youTrackSite.getName(), user, new Issue(pendingCommand.issueId), pendingCommand.command, pendingCommand.comment, userByEmail, !pendingCommand.silent);
+                    }
+                });
+            }
+        }
+        List<Command> results = YouTrackCommandExecutor.execute(youTrackSite, issueKeys, tasks);
+
+        //Log on the build thread in the original order, so the console output does not depend on timing.
+        for (int i = 0; i < pendingCommands.size(); i++) {
+            PendingCommand pendingCommand = pendingCommands.get(i);
+            Command cmd = results.get(i);
+            if (outbox != null && cmd.isRetryable() && enqueue(outbox, i, pendingCommand, runAsUsers, cmd)) {
+                if (pendingCommand.isComment) {
+                    listener.getLogger().println("QUEUED: Commenting on " + pendingCommand.issueId + ", YouTrack is unavailable");
+                } else {
+                    listener.getLogger().println("QUEUED: Applying command: " + pendingCommand.command + " to issue: " + pendingCommand.issueId + ", YouTrack is unavailable");
+                }
+            } else if (pendingCommand.isComment) {
+                if (cmd.getStatus() == Command.Status.OK) {
+                    listener.getLogger().println("Commented on " + pendingCommand.issueId);
+                } else {
+                    listener.getLogger().println("FAILED: Commented on " + pendingCommand.issueId);
+                }
+            } else {
+                if (cmd.getStatus() == Command.Status.OK) {
+                    listener.getLogger().println("Applied command: " + pendingCommand.command + " to issue: " + pendingCommand.issueId);
+                } else {
+                    listener.getLogger().println("FAILED: Applying command: " + pendingCommand.command + " to issue: " + pendingCommand.issueId);
+                }
+            }
+            if (pendingCommand.isComment) {
+                timings.addCall(BuildTimings.COMMENTS, "Comment on " + pendingCommand.issueId, cmd.getDuration());
+            } else {
+                timings.addCall(BuildTimings.COMMANDS, pendingCommand.issueId + ": " + pendingCommand.command, cmd.getDuration());
+            }
+            commands.add(cmd);
+        }
+
+        //Only issues which were found, were not fixed already, and had a command applied can have become fixed,
+        //so only those are in the query after the commands, and it is skipped if there are none.
+        Set<String> fixedValues = getFixedValues();
+        Set<String> candidateIssueIds = new LinkedHashSet<String>();
+        for (int i = 0; i < pendingCommands.size(); i++) {
+            PendingCommand pendingCommand = pendingCommands.get(i);
+            Issue beforeIssue = before.get(pendingCommand.issueId);
+            if (!pendingCommand.isComment && results.get(i).getStatus() == Command.Status.OK && beforeIssue != null && !fixedValues.contains(beforeIssue.getState())) {
+                candidateIssueIds.add(pendingCommand.issueId);
+            }
+        }
+
+        start = System.currentTimeMillis();
+        Map<String, Issue> after = getIssues(youTrackServer, user, candidateIssueIds, stateFieldName);
+        if (!candidateIssueIds.isEmpty()) {
+            timings.addCall(BuildTimings.STATE_CHECKS, "Get states of " + candidateIssueIds.size() + " issues after commands", System.currentTimeMillis() - start);
+        }
+
+        for (String issueId : candidateIssueIds) {
+            Issue afterIssue = after.get(issueId);
+            if (afterIssue != null && fixedValues.contains(afterIssue.getState())) {
+                fixedIssues.add(afterIssue);
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * Creates the result of a command which was not applied because the user to run it as could not be looked up.
+     */
+    private Command createLookupFailure(PendingCommand pendingCommand) {
+        Command cmd = new Command();
+        cmd.setDate(new Date());
+        cmd.setSiteName(youTrackSite.getName());
+        cmd.setIssueId(pendingCommand.issueId);
+        cmd.setCommand(pendingCommand.command);
+        cmd.setComment(pendingCommand.comment);
+        cmd.setSilent(pendingCommand.silent);
+        cmd.setStatus(Command.Status.FAILED);
+        cmd.setResponse("Could not look up the user with e-mail " + pendingCommand.authorEmail);
+        cmd.setRetryable(true);
+        return cmd;
+    }
+
+    /**
+     * Queues a failed comment or command for retrying. A command to run as a user who was not found is queued with
+     * the e-mail, so the user is looked up again when retrying.
+     */
+    private boolean enqueue(YouTrackOutbox outbox, int index, PendingCommand pendingCommand, Map<String, User> runAsUsers, Command cmd) {
+        YouTrackOutbox.Entry entry;
+        if (pendingCommand.isComment) {
+            entry = YouTrackOutbox.Entry.comment(pendingCommand.issueId, pendingCommand.comment, youTrackSite.getLinkVisibility(), youTrackSite.isSilentLinks());
+        } else {
+            User runAs = pendingCommand.authorEmail != null ? runAsUsers.get(pendingCommand.authorEmail) : null;
+            entry = YouTrackOutbox.Entry.command(pendingCommand.issueId, pendingCommand.command, pendingCommand.comment, runAs != null ? runAs.getUsername() : null, pendingCommand.silent);
+            if (runAs == null) {
+                entry.runAsEmail(pendingCommand.authorEmail);
+            }
+        }
+        return outbox.enqueue(build, youTrackSite, "changes", index, entry, cmd);
+    }
+
+    /**
+     * Gets the given issues with one issue query, falling back to getting them one by one if the query fails.
+     */
+    private Map<String, Issue> getIssues(YouTrackClient youTrackServer, User user, Set<String> issueIds, String stateFieldName) {
+        if (issueIds.isEmpty()) {
+            return new HashMap<String, Issue>();
+        }
+        Map<String, Issue> issues = youTrackServer.getIssueStates(user, issueIds, stateFieldName);
+        if (issues == null) {
+            issues = new HashMap<String, Issue>();
+            for (String issueId : issueIds) {
+                Issue issue = youTrackServer.getIssueState(user, issueId, stateFieldName);
+                if (issue != null) {
+                    issues.put(issueId, issue);
+                }
+            }
+        }
+        return issues;
+    }
+
+    private Set<String> getFixedValues() {
+        Set<String> fixedValues = new HashSet<String>();
+        if (youTrackSite.getFixedValues() != null && !youTrackSite.getFixedValues().equals("")) {
+            String values = youTrackSite.getFixedValues();
+            String[] fixedValueArray = values.split(",");
+            for (String fixedValueFromArray : fixedValueArray) {
+                if (!fixedValueFromArray.trim().equals("")) {
+                    fixedValues.add(fixedValueFromArray.trim());
+                }
+            }
+        } else {
+            fixedValues.add("Fixed");
+        }
+        return fixedValues;
+    }
+
+    /**
+     * A comment or command waiting to be executed.
+     */
+    private static class PendingCommand {
+        private final String issueId;
+        private boolean isComment;
+        private String command;
+        private String comment;
+        private String authorEmail;
+        private boolean silent;
+
+        PendingCommand(String issueId) {
+            this.issueId = issueId;
+        }
+    }
+}
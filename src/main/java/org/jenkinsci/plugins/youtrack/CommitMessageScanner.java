@@ -0,0 +1,175 @@
+package org.jenkinsci.plugins.youtrack;
+
+import java.util.regex.Matcher;
+
+/**
+ * Finds the commands in a commit message in one pass over the message, without splitting it into lines or copying
+ * the text after each #.
+ * <p/>
+ * A command is a line containing # directly followed by an issue id and the command, e.g. <code>#PROJ-12 Fixed</code>.
+ * A ! before the # makes the command silent, and the next line is the comment of the command if it does not contain
+ * a # itself. The scanner works as a cursor: {@link #next()} moves to the next command, and the getters give its
+ * parts, as positions in the message or, when needed, as strings.
+ * <p/>
+ * The scanner reuses its matcher for all messages, so it is not thread safe, and should be used for one build.
+ */
+public final class CommitMessageScanner {
+    private final Matcher matcher;
+    private CharSequence message;
+    /**
+     * End of the message without trailing line breaks, lines after it do not count.
+     */
+    private int contentEnd;
+    /**
+     * Start of the line to scan next.
+     */
+    private int position;
+
+    private int hashPosition;
+    private int commentStart;
+    private int commentEnd;
+
+    /**
+     * Creates a scanner.
+     *
+     * @param issueIdMatcher matcher for the issue ids of the projects to find commands for.
+     * @return the scanner, null if there are no projects.
+     */
+    public static CommitMessageScanner create(IssueIdMatcher issueIdMatcher) {
+        Matcher matcher = issueIdMatcher.commandMatcher("");
+        return matcher == null ? null : new CommitMessageScanner(matcher);
+    }
+
+    private CommitMessageScanner(Matcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * Starts scanning a message.
+     *
+     * @param message the commit message.
+     * @return this scanner.
+     */
+    public CommitMessageScanner reset(CharSequence message) {
+        this.message = message;
+        matcher.reset(message);
+        int end = message.length();
+        while (end > 0 && message.charAt(end - 1) == '\n') {
+            end--;
+        }
+        contentEnd = end;
+        position = 0;
+        return this;
+    }
+
+    /**
+     * Moves to the next command.
+     *
+     * @return true if a command was found, false if there are no more commands.
+     */
+    public boolean next() {
+        while (position < contentEnd) {
+            int lineStart = position;
+            int lineEnd = lineEnd(lineStart);
+            position = lineEnd + 1;
+
+            int hash = indexOf('#', lineStart, lineEnd);
+            if (hash < 0) {
+                continue;
+            }
+            matcher.region(hash + 1, lineEnd);
+            if (!matcher.lookingAt()) {
+                continue;
+            }
+            hashPosition = hash;
+            commentStart = -1;
+            commentEnd = -1;
+            if (position < contentEnd) {
+                int nextLineEnd = lineEnd(position);
+                if (indexOf('#', position, nextLineEnd) < 0) {
+                    commentStart = position;
+                    commentEnd = nextLineEnd;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private int lineEnd(int from) {
+        int length = message.length();
+        for (int i = from; i < length; i++) {
+            if (message.charAt(i) == '\n') {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (message.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the current command is preceded by !.
+     */
+    public boolean isSilent() {
+        return hashPosition > 0 && message.charAt(hashPosition - 1) == '!';
+    }
+
+    public int getIssueIdStart() {
+        return matcher.start(IssueIdMatcher.ISSUE_ID_GROUP);
+    }
+
+    public int getIssueIdEnd() {
+        return matcher.end(IssueIdMatcher.ISSUE_ID_GROUP);
+    }
+
+    public int getCommandStart() {
+        return matcher.start(IssueIdMatcher.COMMAND_GROUP);
+    }
+
+    public int getCommandEnd() {
+        return matcher.end(IssueIdMatcher.COMMAND_GROUP);
+    }
+
+    /**
+     * @return the start of the comment of the current command, -1 if it has none.
+     */
+    public int getCommentStart() {
+        return commentStart;
+    }
+
+    /**
+     * @return the end of the comment of the current command, -1 if it has none.
+     */
+    public int getCommentEnd() {
+        return commentEnd;
+    }
+
+    /**
+     * @return the issue id of the current command.
+     */
+    public String getIssueId() {
+        return message.subSequence(getIssueIdStart(), getIssueIdEnd()).toString();
+    }
+
+    /**
+     * @return the current command.
+     */
+    public String getCommand() {
+        return message.subSequence(getCommandStart(), getCommandEnd()).toString();
+    }
+
+    /**
+     * @return the comment of the current command, null if it has none.
+     */
+    public String getComment() {
+        return commentStart < 0 ? null : message.subSequence(commentStart, commentEnd).toString();
+    }
+}
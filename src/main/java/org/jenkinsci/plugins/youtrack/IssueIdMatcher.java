@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.youtrack;
+
+import org.jenkinsci.plugins.youtrack.youtrackapi.Project;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds issue ids of a set of projects in texts, using one precompiled pattern for all the projects, so a text is
+ * scanned once no matter how many projects there are.
+ * <p/>
+ * Matchers are cached by project set, so they are only rebuilt when the projects change.
+ */
+public class IssueIdMatcher {
+    /**
+     * Group of the issue id, e.g. PROJ-12, in matchers from {@link #matcher(CharSequence)} and {@link #commandMatcher(CharSequence)}.
+     */
+    public static final int ISSUE_ID_GROUP = 1;
+    /**
+     * Group of the command following the issue id in matchers from {@link #commandMatcher(CharSequence)}.
+     */
+    public static final int COMMAND_GROUP = 4;
+
+    /**
+     * Max number of cached matchers, there is normally one for all projects and one for the projects commands can be
+     * executed for, per site.
+     */
+    private static final int CACHE_SIZE = 32;
+
+    private static final Map<String, IssueIdMatcher> CACHE = new LinkedHashMap<String, IssueIdMatcher>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, IssueIdMatcher> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final Pattern issuePattern;
+    private final Pattern commandPattern;
+
+    private IssueIdMatcher(List<String> shortNames) {
+        if (shortNames.isEmpty()) {
+            issuePattern = null;
+            commandPattern = null;
+        } else {
+            StringBuilder alternation = new StringBuilder();
+            for (String shortName : shortNames) {
+                if (alternation.length() > 0) {
+                    alternation.append('|');
+                }
+                alternation.append(Pattern.quote(shortName));
+            }
+            String issueId = "((?:" + alternation + ")-(\\d+))";
+            issuePattern = Pattern.compile(issueId);
+            commandPattern = Pattern.compile(issueId + "( )?(.*)");
+        }
+    }
+
+    /**
+     * Gets the matcher for the given project short names.
+     *
+     * @param shortNames the project short names.
+     * @return the matcher.
+     */
+    public static IssueIdMatcher get(Collection<String> shortNames) {
+        List<String> sortedNames = new ArrayList<String>(shortNames.size());
+        for (String shortName : shortNames) {
+            if (shortName != null && !shortName.equals("") && !sortedNames.contains(shortName)) {
+                sortedNames.add(shortName);
+            }
+        }
+        //Longest first, so the longest short name wins where one is a prefix of another.
+        Collections.sort(sortedNames, new Comparator<String>() {
+            public int compare(String o1, String o2) {
+                if (o1.length() != o2.length()) {
+                    return o2.length() - o1.length();
+                }
+                return o1.compareTo(o2);
+            }
+        });
+
+        StringBuilder key = new StringBuilder();
+        for (String shortName : sortedNames) {
+            key.append(shortName).append('\n');
+        }
+        String cacheKey = key.toString();
+        synchronized (CACHE) {
+            IssueIdMatcher issueIdMatcher = CACHE.get(cacheKey);
+            if (issueIdMatcher == null) {
+                issueIdMatcher = new IssueIdMatcher(sortedNames);
+                CACHE.put(cacheKey, issueIdMatcher);
+            }
+            return issueIdMatcher;
+        }
+    }
+
+    /**
+     * Gets the matcher for the short names of the given projects.
+     *
+     * @param projects the projects.
+     * @return the matcher.
+     */
+    public static IssueIdMatcher forProjects(Collection<Project> projects) {
+        List<String> shortNames = new ArrayList<String>(projects.size());
+        for (Project project : projects) {
+            shortNames.add(project.getShortName());
+        }
+        return get(shortNames);
+    }
+
+    /**
+     * Creates a matcher finding issue ids in the text.
+     *
+     * @param text the text to search.
+     * @return the matcher, with the issue id in group {@link #ISSUE_ID_GROUP}, null if there are no projects.
+     */
+    public Matcher matcher(CharSequence text) {
+        return issuePattern == null ? null : issuePattern.matcher(text);
+    }
+
+    /**
+     * Creates a matcher for an issue id followed by a command, as in the text after # in a commit message.
+     *
+     * @param text the text to search.
+     * @return the matcher, with the issue id in group {@link #ISSUE_ID_GROUP} and the command in group
+     *         {@link #COMMAND_GROUP}, null if there are no projects.
+     */
+    public Matcher commandMatcher(CharSequence text) {
+        return commandPattern == null ? null : commandPattern.matcher(text);
+    }
+}
@@ -0,0 +1,935 @@
+package org.jenkinsci.plugins.youtrack;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the ids of processed revisions in a compact binary form on disk.
+ * <p/>
+ * Each revision id is stored as a 20 byte key: the id itself if it is a hex SHA-1 as used by Git and Mercurial,
+ * otherwise the SHA-1 of the id. The keys are kept sorted in a segment file, which is memory mapped and binary
+ * searched, so the keys are not held on the heap. New keys are appended to a journal by a background writer, and
+ * merged into a new segment when the journal holds {@link #COMPACT_THRESHOLD} keys. Keys older than {@link #MAX_AGE_DAYS} days, if
+ * set, are no longer reported as added, and are dropped when merging.
+ * <p/>
+ * A {@link BloomFilter} sized for {@link #EXPECTED_COMMITS} keys is checked before the journal and the segment, so
+ * looking up a revision which has not been processed, which is the common case, normally only touches the filter.
+ * The filter is saved next to the segment, and rebuilt from the segment if it does not match it.
+ * <p/>
+ * Adding a key does not wait for the disk. The key is visible to lookups at once, and queued for the writer, which
+ * appends the queued keys to the journal as one batch with a single fsync every {@link #FLUSH_INTERVAL} milliseconds,
+ * or as soon as {@link #FLUSH_SIZE} keys are queued. Each batch is written with a checksum, so a batch torn by a crash
+ * is detected and dropped when the journal is replayed on startup. Keys added just before a crash may thus be lost,
+ * which only means their commands may be applied again.
+ * <p/>
+ * Lookups do not take any lock.
+ */
+public class ProcessedRevisionStore {
+    private static final Logger LOGGER = Logger.getLogger(ProcessedRevisionStore.class.getName());
+
+    /**
+     * Number of keys in the journal that triggers merging it into the segment.
+     */
+    static final int COMPACT_THRESHOLD = Integer.getInteger(ProcessedRevisionStore.class.getName() + ".compactThreshold", 10000);
+    /**
+     * Max age in days of the kept keys, 0 to keep them forever.
+     */
+    static final int MAX_AGE_DAYS = Integer.getInteger(ProcessedRevisionStore.class.getName() + ".maxAgeDays", 0);
+    /**
+     * Number of keys the filter is sized for, it is sized for more if the store holds more keys.
+     */
+    static final int EXPECTED_COMMITS = Integer.getInteger(ProcessedRevisionStore.class.getName() + ".expectedCommits", 1000000);
+    /**
+     * False positive rate of the filter when it holds the number of keys it was sized for.
+     */
+    static final double FALSE_POSITIVE_RATE = 0.01;
+    /**
+     * Max time in milliseconds a key waits in the queue before it is written.
+     */
+    static final long FLUSH_INTERVAL = Long.getLong(ProcessedRevisionStore.class.getName() + ".flushIntervalMillis", 1000);
+    /**
+     * Number of queued keys that are written without waiting for the interval.
+     */
+    static final int FLUSH_SIZE = Integer.getInteger(ProcessedRevisionStore.class.getName() + ".flushSize", 1000);
+    /**
+     * Number of revisions of an import sorted in memory at a time.
+     */
+    static final int IMPORT_CHUNK_SIZE = Integer.getInteger(ProcessedRevisionStore.class.getName() + ".importChunkSize", 200000);
+
+    static final int KEY_SIZE = 20;
+    /**
+     * A record is a key followed by the time it was added, in minutes since the epoch.
+     */
+    static final int RECORD_SIZE = KEY_SIZE + 4;
+
+    private static final int MAGIC = 0x59545052;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int FILTER_MAGIC = 0x59544246;
+    /**
+     * Queued to stop the writer.
+     */
+    private static final byte[] STOP = new byte[0];
+
+    private final File directory;
+    private final String name;
+    private final Pattern segmentPattern;
+    private final int maxAgeDays;
+    /**
+     * The current segment, replaced when the journal is merged into a new segment.
+     */
+    private volatile Segment segment;
+    /**
+     * Filter with all keys of the segment and the journal.
+     */
+    private volatile BloomFilter filter;
+    /**
+     * The keys in the journal with the time they were added.
+     */
+    private final ConcurrentMap<Key, Integer> journalKeys = new ConcurrentHashMap<Key, Integer>();
+    private RandomAccessFile journal;
+    /**
+     * Guards adding keys to the journal keys and the filter against replacing the filter.
+     */
+    private final Object keysLock = new Object();
+    /**
+     * Records waiting to be written to the journal.
+     */
+    private final BlockingQueue<byte[]> writeQueue = new LinkedBlockingQueue<byte[]>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Opens the store, creating it if it does not exist.
+     *
+     * @param directory the directory holding the files of the store.
+     * @param name      the base name of the files.
+     * @throws IOException if the store could not be opened.
+     */
+    public ProcessedRevisionStore(File directory, String name) throws IOException {
+        this(directory, name, MAX_AGE_DAYS);
+    }
+
+    ProcessedRevisionStore(File directory, String name, int maxAgeDays) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.maxAgeDays = maxAgeDays;
+        this.segmentPattern = Pattern.compile(Pattern.quote(name) + "-(\\d+)\\.seg");
+        open();
+        writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, "YouTrack processed revisions writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Checks whether the revision has been added.
+     *
+     * @param revisionId the revision id.
+     * @return true if it has been added and not expired.
+     */
+    public boolean contains(String revisionId) {
+        Key key = Key.of(revisionId);
+        if (!filter.mightContain(key.getBytes())) {
+            return false;
+        }
+        int expiry = getExpiry();
+        Integer time = journalKeys.get(key);
+        if (time != null && time >= expiry) {
+            return true;
+        }
+        Segment current = segment;
+        int index = current.indexOf(key);
+        return index >= 0 && current.getTime(index) >= expiry;
+    }
+
+    /**
+     * Adds a revision. The revision is written to disk in the background.
+     *
+     * @param revisionId the revision id.
+     * @return true if it was added, false if it was already there or the store is closed. An expired revision is
+     * added again.
+     */
+    public boolean add(String revisionId) {
+        if (closed) {
+            LOGGER.warning("Not adding " + revisionId + ", the processed revisions store is closed");
+            return false;
+        }
+        Key key = Key.of(revisionId);
+        int expiry = getExpiry();
+        Segment current = segment;
+        int index = current.indexOf(key);
+        if (index >= 0 && current.getTime(index) >= expiry) {
+            return false;
+        }
+        int time = now();
+        synchronized (keysLock) {
+            Integer previous = journalKeys.get(key);
+            if (previous != null && previous >= expiry) {
+                return false;
+            }
+            journalKeys.put(key, time);
+            filter.put(key.getBytes());
+        }
+        writeQueue.add(key.toRecord(time));
+        return true;
+    }
+
+    /**
+     * Adds revisions in bulk, e.g. when migrating from another format. See {@link Import}.
+     *
+     * @param revisionIds the revision ids.
+     * @param time        the time the revisions were processed, in milliseconds since the epoch.
+     * @throws IOException if the revisions could not be written.
+     */
+    public void importAll(Iterable<String> revisionIds, long time) throws IOException {
+        Import anImport = startImport(time);
+        try {
+            for (String revisionId : revisionIds) {
+                anImport.add(revisionId);
+            }
+            anImport.commit();
+        } finally {
+            anImport.discard();
+        }
+    }
+
+    /**
+     * Starts adding revisions in bulk.
+     *
+     * @param time the time the revisions were processed, in milliseconds since the epoch.
+     * @return the import, which must be committed or discarded.
+     */
+    public Import startImport(long time) {
+        return new Import((int) TimeUnit.MILLISECONDS.toMinutes(time));
+    }
+
+    /**
+     * Merges the journal into a new segment.
+     *
+     * @throws IOException if the new segment could not be written.
+     */
+    public synchronized void compact() throws IOException {
+        Map<Key, Integer> snapshot = new HashMap<Key, Integer>(journalKeys);
+        merge(Collections.<Records>singletonList(new KeyRecords(snapshot)));
+        //The journal is only emptied after the new segment is in place, keys replayed after a crash are just merged again.
+        journal.setLength(0);
+        //Keys added again after expiring while merging keep their new time.
+        for (Map.Entry<Key, Integer> entry : snapshot.entrySet()) {
+            journalKeys.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return the number of keys in the store. Keys added while the journal is merged, and keys which expired but have
+     * not been dropped yet, may be counted twice.
+     */
+    public int size() {
+        return segment.count + journalKeys.size();
+    }
+
+    /**
+     * Writes the queued keys and closes the store.
+     *
+     * @throws IOException if the journal could not be closed.
+     */
+    public void close() throws IOException {
+        synchronized (writeQueue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        writeQueue.add(STOP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            journal.close();
+        }
+    }
+
+    /**
+     * The loop of the writer thread, writing the queued records in batches.
+     */
+    private void write() {
+        List<byte[]> batch = new ArrayList<byte[]>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(writeQueue.take());
+                long deadline = System.currentTimeMillis() + FLUSH_INTERVAL;
+                while (batch.get(batch.size() - 1) != STOP && batch.size() < FLUSH_SIZE) {
+                    long wait = deadline - System.currentTimeMillis();
+                    byte[] record = wait > 0 ? writeQueue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                    if (record == null) {
+                        break;
+                    }
+                    batch.add(record);
+                }
+            } catch (InterruptedException e) {
+                //Not interrupted by the store, just write what there is.
+            }
+            if (!batch.isEmpty() && batch.get(batch.size() - 1) == STOP) {
+                batch.remove(batch.size() - 1);
+                stop = true;
+                writeQueue.drainTo(batch);
+            }
+            try {
+                flush(batch);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not write " + batch.size() + " processed revisions", e);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not write " + batch.size() + " processed revisions", e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Appends the records to the journal as one batch, syncs it to disk, and compacts the journal if it is full.
+     */
+    private synchronized void flush(List<byte[]> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        byte[] batch = new byte[4 + records.size() * RECORD_SIZE + 4];
+        writeInt(batch, 0, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            System.arraycopy(records.get(i), 0, batch, 4 + i * RECORD_SIZE, RECORD_SIZE);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(batch, 4, records.size() * RECORD_SIZE);
+        writeInt(batch, batch.length - 4, (int) crc.getValue());
+        journal.write(batch);
+        journal.getChannel().force(false);
+
+        if (journalKeys.size() >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    private void open() throws IOException {
+        segment = Segment.EMPTY;
+        long generation = -1;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = segmentPattern.matcher(file.getName());
+                if (matcher.matches() && Long.parseLong(matcher.group(1)) > generation) {
+                    try {
+                        Segment candidate = Segment.map(file, Long.parseLong(matcher.group(1)));
+                        generation = candidate.generation;
+                        segment = candidate;
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Deleting invalid processed revisions segment " + file, e);
+                        file.delete();
+                    }
+                }
+            }
+        }
+        deleteOldSegments();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(name + "-") && file.getName().endsWith(".run")) {
+                    file.delete();
+                }
+            }
+        }
+
+        File journalFile = getJournalFile();
+        long validLength = 0;
+        if (journalFile.exists()) {
+            DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            try {
+                while (true) {
+                    int count = inputStream.readInt();
+                    if (count <= 0 || count > journalFile.length() / RECORD_SIZE) {
+                        LOGGER.warning("Dropping the end of the processed revisions journal, invalid batch size " + count);
+                        break;
+                    }
+                    byte[] records = new byte[count * RECORD_SIZE];
+                    inputStream.readFully(records);
+                    CRC32 crc = new CRC32();
+                    crc.update(records);
+                    if (inputStream.readInt() != (int) crc.getValue()) {
+                        LOGGER.warning("Dropping the end of the processed revisions journal, invalid checksum");
+                        break;
+                    }
+                    for (int i = 0; i < count; i++) {
+                        Key key = new Key(Arrays.copyOfRange(records, i * RECORD_SIZE, i * RECORD_SIZE + KEY_SIZE));
+                        int time = readInt(records, i * RECORD_SIZE + KEY_SIZE);
+                        //Keys written after the journal was merged, while merging, are already in the segment.
+                        int index = segment.indexOf(key);
+                        if (index < 0 || segment.getTime(index) < time) {
+                            journalKeys.put(key, time);
+                        }
+                    }
+                    validLength += 4 + records.length + 4;
+                }
+            } catch (EOFException e) {
+                //End of journal, a batch partially written before a crash is dropped.
+            } finally {
+                inputStream.close();
+            }
+        }
+        journal = new RandomAccessFile(journalFile, "rw");
+        journal.setLength(validLength);
+        journal.seek(validLength);
+
+        filter = loadFilter();
+        if (filter == null) {
+            rebuildFilter();
+        } else {
+            for (Key key : journalKeys.keySet()) {
+                filter.put(key.getBytes());
+            }
+        }
+
+        if (journalKeys.size() >= COMPACT_THRESHOLD || (maxAgeDays > 0 && segment.count > 0)) {
+            compact();
+        }
+    }
+
+    /**
+     * Writes a new segment with the records of the current segment and the given sorted records, keeping the latest
+     * time of a key found in several of them.
+     */
+    private void merge(List<Records> sources) throws IOException {
+        int expiry = getExpiry();
+        Segment current = segment;
+        PriorityQueue<Records> queue = new PriorityQueue<Records>(sources.size() + 1);
+        for (Records records : sources) {
+            if (records.next()) {
+                queue.add(records);
+            }
+        }
+        Records segmentRecords = new SegmentRecords(current);
+        if (segmentRecords.next()) {
+            queue.add(segmentRecords);
+        }
+
+        long generation = current.generation + 1;
+        File tmpFile = new File(directory, name + "-" + generation + ".tmp");
+        int count = 0;
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024));
+        try {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(0);
+            byte[] record = new byte[RECORD_SIZE];
+            while (!queue.isEmpty()) {
+                Records first = queue.poll();
+                System.arraycopy(first.record, 0, record, 0, RECORD_SIZE);
+                int time = readInt(record, KEY_SIZE);
+                if (first.next()) {
+                    queue.add(first);
+                }
+                while (!queue.isEmpty() && compareKeys(queue.peek().record, record) == 0) {
+                    Records same = queue.poll();
+                    time = Math.max(time, readInt(same.record, KEY_SIZE));
+                    if (same.next()) {
+                        queue.add(same);
+                    }
+                }
+                if (time >= expiry) {
+                    writeInt(record, KEY_SIZE, time);
+                    outputStream.write(record);
+                    count++;
+                }
+            }
+        } finally {
+            outputStream.close();
+        }
+
+        RandomAccessFile header = new RandomAccessFile(tmpFile, "rw");
+        try {
+            header.seek(8);
+            header.writeInt(count);
+            header.getFD().sync();
+        } finally {
+            header.close();
+        }
+
+        File segmentFile = new File(directory, name + "-" + generation + ".seg");
+        if (!tmpFile.renameTo(segmentFile)) {
+            throw new IOException("Could not rename " + tmpFile + " to " + segmentFile);
+        }
+        segment = Segment.map(segmentFile, generation);
+        deleteOldSegments();
+        //Rebuilt rather than updated, so it is resized as the store grows and expired keys are removed.
+        rebuildFilter();
+    }
+
+    /**
+     * Creates a new filter with the keys of the segment and the journal, and saves it.
+     */
+    private void rebuildFilter() throws IOException {
+        Segment current = segment;
+        BloomFilter newFilter = BloomFilter.create(Math.max(EXPECTED_COMMITS, (long) current.count + COMPACT_THRESHOLD), FALSE_POSITIVE_RATE);
+        byte[] record = new byte[RECORD_SIZE];
+        for (int i = 0; i < current.count; i++) {
+            current.readRecord(i, record);
+            newFilter.put(record);
+        }
+        //Keys added while the filter is replaced must not be missed by the new filter.
+        synchronized (keysLock) {
+            for (Key key : journalKeys.keySet()) {
+                newFilter.put(key.getBytes());
+            }
+            filter = newFilter;
+        }
+        saveFilter();
+    }
+
+    /**
+     * Saves the filter with the generation of the segment it was built from.
+     */
+    private void saveFilter() throws IOException {
+        File filterFile = getFilterFile();
+        File tmpFile = new File(directory, filterFile.getName() + ".tmp");
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024));
+        try {
+            outputStream.writeInt(FILTER_MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeLong(segment.generation);
+            filter.writeTo(outputStream);
+        } finally {
+            outputStream.close();
+        }
+        if (filterFile.exists() && !filterFile.delete()) {
+            throw new IOException("Could not delete " + filterFile);
+        }
+        if (!tmpFile.renameTo(filterFile)) {
+            throw new IOException("Could not rename " + tmpFile + " to " + filterFile);
+        }
+    }
+
+    /**
+     * Loads the saved filter.
+     *
+     * @return the filter, null if there is none or it was not built from the current segment.
+     */
+    private BloomFilter loadFilter() {
+        File filterFile = getFilterFile();
+        if (!filterFile.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(filterFile), 64 * 1024));
+            try {
+                if (inputStream.readInt() != FILTER_MAGIC || inputStream.readInt() != VERSION || inputStream.readLong() != segment.generation) {
+                    return null;
+                }
+                return BloomFilter.readFrom(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not load processed revisions filter, rebuilding it", e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes segments older than the current one. Deleting a segment which is still mapped fails on some platforms,
+     * it is then deleted the next time.
+     */
+    private void deleteOldSegments() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(name + "-") && file.getName().endsWith(".tmp")) {
+                file.delete();
+            }
+            Matcher matcher = segmentPattern.matcher(file.getName());
+            if (matcher.matches() && Long.parseLong(matcher.group(1)) < segment.generation) {
+                file.delete();
+            }
+        }
+    }
+
+    private File getJournalFile() {
+        return new File(directory, name + ".journal");
+    }
+
+    private File getFilterFile() {
+        return new File(directory, name + ".bloom");
+    }
+
+    /**
+     * @return the time before which keys are expired, in minutes since the epoch.
+     */
+    private int getExpiry() {
+        return maxAgeDays > 0 ? now() - (int) TimeUnit.DAYS.toMinutes(maxAgeDays) : Integer.MIN_VALUE;
+    }
+
+    private static int now() {
+        return (int) TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    private static int compareKeys(byte[] a, byte[] b) {
+        for (int i = 0; i < KEY_SIZE; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Revisions added in bulk. The revisions are sorted in chunks of {@link #IMPORT_CHUNK_SIZE}, which bounds the heap
+     * used, and written to run files next to the segment. Committing merges the segment and all runs into a single
+     * new segment, so the segment is rewritten once whatever the number of revisions. Revisions are not visible
+     * before the import is committed.
+     */
+    public class Import {
+        private final int time;
+        private final Map<Key, Integer> keys = new HashMap<Key, Integer>();
+        private final List<File> runs = new ArrayList<File>();
+
+        private Import(int time) {
+            this.time = time;
+        }
+
+        /**
+         * Adds a revision to the import.
+         *
+         * @param revisionId the revision id.
+         * @throws IOException if a full chunk could not be written.
+         */
+        public void add(String revisionId) throws IOException {
+            keys.put(Key.of(revisionId), time);
+            if (keys.size() >= IMPORT_CHUNK_SIZE) {
+                writeRun();
+            }
+        }
+
+        /**
+         * Merges the added revisions into the store.
+         *
+         * @throws IOException if the new segment could not be written.
+         */
+        public void commit() throws IOException {
+            if (keys.isEmpty() && runs.isEmpty()) {
+                return;
+            }
+            List<Records> sources = new ArrayList<Records>();
+            try {
+                for (File run : runs) {
+                    sources.add(new RunRecords(run));
+                }
+                sources.add(new KeyRecords(keys));
+                synchronized (ProcessedRevisionStore.this) {
+                    merge(sources);
+                }
+            } finally {
+                for (Records records : sources) {
+                    records.close();
+                }
+            }
+            keys.clear();
+            discard();
+        }
+
+        /**
+         * Deletes the run files. Does nothing if the import was committed.
+         */
+        public void discard() {
+            for (File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+        }
+
+        private void writeRun() throws IOException {
+            File run = File.createTempFile(name + "-", ".run", directory);
+            runs.add(run);
+            DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 64 * 1024));
+            try {
+                Records records = new KeyRecords(keys);
+                while (records.next()) {
+                    outputStream.write(records.record);
+                }
+            } finally {
+                outputStream.close();
+            }
+            keys.clear();
+        }
+    }
+
+    /**
+     * Sorted records read one at a time, ordered by their current record.
+     */
+    private abstract static class Records implements Comparable<Records> {
+        final byte[] record = new byte[RECORD_SIZE];
+
+        /**
+         * Reads the next record.
+         *
+         * @return false if there are no more records.
+         */
+        abstract boolean next() throws IOException;
+
+        void close() throws IOException {
+        }
+
+        public int compareTo(Records other) {
+            return compareKeys(record, other.record);
+        }
+    }
+
+    private static class SegmentRecords extends Records {
+        private final Segment segment;
+        private int index;
+
+        SegmentRecords(Segment segment) {
+            this.segment = segment;
+        }
+
+        boolean next() {
+            if (index >= segment.count) {
+                return false;
+            }
+            segment.readRecord(index++, record);
+            return true;
+        }
+    }
+
+    private static class KeyRecords extends Records {
+        private final Map<Key, Integer> keys;
+        private final List<Key> sortedKeys;
+        private int index;
+
+        KeyRecords(Map<Key, Integer> keys) {
+            this.keys = keys;
+            this.sortedKeys = new ArrayList<Key>(keys.keySet());
+            Collections.sort(sortedKeys);
+        }
+
+        boolean next() {
+            if (index >= sortedKeys.size()) {
+                return false;
+            }
+            Key key = sortedKeys.get(index++);
+            key.toRecord(keys.get(key), record);
+            return true;
+        }
+    }
+
+    private static class RunRecords extends Records {
+        private final DataInputStream inputStream;
+
+        RunRecords(File run) throws IOException {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 64 * 1024));
+        }
+
+        boolean next() throws IOException {
+            try {
+                inputStream.readFully(record);
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        @Override
+        void close() throws IOException {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * The 20 byte key of a revision id.
+     */
+    static final class Key implements Comparable<Key> {
+        private final byte[] bytes;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        static Key of(String revisionId) {
+            if (revisionId.length() == KEY_SIZE * 2) {
+                byte[] bytes = new byte[KEY_SIZE];
+                boolean hex = true;
+                for (int i = 0; i < KEY_SIZE && hex; i++) {
+                    int high = Character.digit(revisionId.charAt(i * 2), 16);
+                    int low = Character.digit(revisionId.charAt(i * 2 + 1), 16);
+                    hex = high >= 0 && low >= 0;
+                    bytes[i] = (byte) ((high << 4) | low);
+                }
+                if (hex) {
+                    return new Key(bytes);
+                }
+            }
+            try {
+                return new Key(MessageDigest.getInstance("SHA-1").digest(revisionId.getBytes("UTF-8")));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        byte[] getBytes() {
+            return bytes;
+        }
+
+        byte[] toRecord(int time) {
+            byte[] record = new byte[RECORD_SIZE];
+            toRecord(time, record);
+            return record;
+        }
+
+        void toRecord(int time, byte[] record) {
+            System.arraycopy(bytes, 0, record, 0, KEY_SIZE);
+            writeInt(record, KEY_SIZE, time);
+        }
+
+        public int compareTo(Key other) {
+            return compareKeys(bytes, other.bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            //The keys are SHA-1 hashes, so any four bytes are evenly distributed.
+            return readInt(bytes, 0);
+        }
+    }
+
+    /**
+     * A memory mapped file of sorted records.
+     */
+    private static class Segment {
+        static final Segment EMPTY = new Segment(null, 0, 0);
+
+        private final MappedByteBuffer buffer;
+        private final int count;
+        private final long generation;
+
+        Segment(MappedByteBuffer buffer, int count, long generation) {
+            this.buffer = buffer;
+            this.count = count;
+            this.generation = generation;
+        }
+
+        static Segment map(File file, long generation) throws IOException {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                long length = randomAccessFile.length();
+                if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid segment length " + length);
+                }
+                MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    throw new IOException("Invalid segment header");
+                }
+                int count = buffer.getInt(8);
+                if (count < 0 || HEADER_SIZE + (long) count * RECORD_SIZE != length) {
+                    throw new IOException("Invalid segment count " + count);
+                }
+                return new Segment(buffer, count, generation);
+            } finally {
+                //The mapping stays valid after closing the file.
+                randomAccessFile.close();
+            }
+        }
+
+        /**
+         * @return the index of the key, or -1 if it is not in the segment.
+         */
+        int indexOf(Key key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(mid, key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        int compare(int index, Key key) {
+            int offset = HEADER_SIZE + index * RECORD_SIZE;
+            for (int i = 0; i < KEY_SIZE; i++) {
+                int cmp = (buffer.get(offset + i) & 0xff) - (key.bytes[i] & 0xff);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+
+        int getTime(int index) {
+            return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + KEY_SIZE);
+        }
+
+        void readRecord(int index, byte[] record) {
+            int offset = HEADER_SIZE + index * RECORD_SIZE;
+            for (int i = 0; i < RECORD_SIZE; i++) {
+                record[i] = buffer.get(offset + i);
+            }
+        }
+    }
+}
@@ -12,14 +12,16 @@ import net.sf.json.JSONObject;
 import org.jenkinsci.plugins.youtrack.youtrackapi.BuildBundle;
 import org.jenkinsci.plugins.youtrack.youtrackapi.Issue;
 import org.jenkinsci.plugins.youtrack.youtrackapi.User;
-import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackServer;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackClient;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Updates build bundle.
@@ -138,10 +140,14 @@ public class YouTrackBuildUpdater extends Recorder {
             }
         }
 
-        YouTrackServer youTrackServer = new YouTrackServer(youTrackSite.getUrl());
-        User user = youTrackServer.login(youTrackSite.getUsername(), youTrackSite.getPassword());
+        BuildTimings timings = youTrackCommandAction.getTimings();
+        long start = System.currentTimeMillis();
+        YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+        User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
+        timings.addCall(BuildTimings.LOGIN, "Log in to " + youTrackSite.getName(), System.currentTimeMillis() - start);
         if(user == null || !user.isLoggedIn()) {
             listener.getLogger().println("FAILED: to log in to youtrack");
+            timings.addTotalTime(System.currentTimeMillis() - start);
             return true;
         }
         EnvVars environment = build.getEnvironment(listener);
@@ -156,13 +162,20 @@ public class YouTrackBuildUpdater extends Recorder {
         String inputBundleName =environment.expand(getBundleName());
 
         Command addedBuild = youTrackServer.addBuildToBundle(youTrackSite.getName(), user, inputBundleName, buildName);
-        if(addedBuild.getStatus() == Command.Status.OK) {
+        YouTrackOutbox outbox = YouTrackOutbox.get();
+        //Key of the queued adding of the build, which the Fixed in build commands have to wait for.
+        String addedBuildKey = null;
+        if(outbox != null && addedBuild.isRetryable() && outbox.enqueue(build, youTrackSite, "bundle", 0, YouTrackOutbox.Entry.addBuild(inputBundleName, buildName), addedBuild)) {
+            addedBuildKey = addedBuild.getKey();
+            listener.getLogger().println("QUEUED: adding build " + buildName + " to bundle: " + inputBundleName + ", YouTrack is unavailable");
+        } else if(addedBuild.getStatus() == Command.Status.OK) {
             listener.getLogger().println("Added build " + buildName + " to bundle: " + inputBundleName);
         } else {
             listener.getLogger().println("FAILED: adding build " + buildName + " to bundle: " + inputBundleName);
         }
 
         youTrackCommandAction.addCommand(addedBuild);
+        timings.addCall(BuildTimings.BUNDLE_UPDATE, "Add build " + buildName + " to " + inputBundleName, addedBuild.getDuration());
 
         if(action != null) {
             List<String> issueIds = action.getIssueIds();
@@ -172,22 +185,39 @@ public class YouTrackBuildUpdater extends Recorder {
 
             if(stable || (isMarkFixedIfUnstable() && unstable)) {
 
-                for (String issueId : issueIds) {
-                Issue issue = new Issue(issueId);
-
-                    String commandValue = "Fixed in build " + buildName;
-                    Command command = youTrackServer.applyCommand(youTrackSite.getName(), user, issue, commandValue, null, null, !runSilently);
-                    if(command.getStatus() == Command.Status.OK) {
+                final String commandValue = "Fixed in build " + buildName;
+                final YouTrackClient server = youTrackServer;
+                final User commandUser = user;
+                final String siteName = youTrackSite.getName();
+                List<Callable<Command>> tasks = new ArrayList<Callable<Command>>(issueIds.size());
+                for (final String issueId : issueIds) {
+                    tasks.add(new Callable<Command>() {
+                        public Command call() {
+                            return server.applyCommand(siteName, commandUser, new Issue(issueId), commandValue, null, null, !runSilently);
+                        }
+                    });
+                }
+                List<Command> commands = YouTrackCommandExecutor.execute(youTrackSite, issueIds, tasks);
+                for (int i = 0; i < issueIds.size(); i++) {
+                    String issueId = issueIds.get(i);
+                    Command command = commands.get(i);
+                    //When adding the build was queued, the command fails as the build is not in the bundle yet, so it is queued to run after it.
+                    if(outbox != null && (command.isRetryable() || (addedBuildKey != null && command.getStatus() != Command.Status.OK))
+                            && outbox.enqueue(build, youTrackSite, "fixed", i, YouTrackOutbox.Entry.command(issueId, commandValue, null, null, runSilently).after(addedBuildKey), command)) {
+                        listener.getLogger().println("QUEUED: updating Fixed in build to " + buildName + " for " + issueId + ", YouTrack is unavailable");
+                    } else if(command.getStatus() == Command.Status.OK) {
                         listener.getLogger().println("Updated Fixed in build to " + buildName + " for " + issueId);
                     } else {
                         listener.getLogger().println("FAILED: updating Fixed in build to " + buildName + " for " + issueId);
                     }
                     youTrackCommandAction.addCommand(command);
+                    timings.addCall(BuildTimings.BUNDLE_UPDATE, issueId + ": " + commandValue, command.getDuration());
                 }
             }
 
         }
 
+        timings.addTotalTime(System.currentTimeMillis() - start);
         return true;
     }
 
@@ -216,8 +246,8 @@ public class YouTrackBuildUpdater extends Recorder {
             YouTrackSite youTrackSite = YouTrackSite.get(project);
             AutoCompletionCandidates autoCompletionCandidates = new AutoCompletionCandidates();
             if(youTrackSite != null) {
-                YouTrackServer youTrackServer = new YouTrackServer(youTrackSite.getUrl());
-                User user = youTrackServer.login(youTrackSite.getUsername(), youTrackSite.getPassword());
+                YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+                User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
                 if(user != null) {
                     List<BuildBundle> bundles = youTrackServer.getBuildBundles(user);
                     for (BuildBundle bundle : bundles) {
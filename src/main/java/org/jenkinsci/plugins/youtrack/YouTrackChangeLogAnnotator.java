@@ -8,15 +8,18 @@ import hudson.model.Hudson;
 import hudson.scm.ChangeLogAnnotator;
 import hudson.scm.ChangeLogSet;
 import org.apache.log4j.Logger;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
 
-import java.util.List;
-import java.util.Random;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Extension
 public class YouTrackChangeLogAnnotator extends ChangeLogAnnotator {
     private static final Logger LOGGER = Logger.getLogger(YouTrackChangeLogAnnotator.class.getName());
+    /**
+     * Request attribute set when the tooltip script has been added to the page.
+     */
+    private static final String SCRIPT_ADDED_ATTRIBUTE = YouTrackChangeLogAnnotator.class.getName() + ".scriptAdded";
 
     @Override
     public void annotate(AbstractBuild<?, ?> abstractBuild, ChangeLogSet.Entry entry, MarkupText markupText) {
@@ -26,37 +29,58 @@ public class YouTrackChangeLogAnnotator extends ChangeLogAnnotator {
         if (lastSuccessfulBuild != null) {
             YouTrackSaveProjectShortNamesAction action = lastSuccessfulBuild.getAction(YouTrackSaveProjectShortNamesAction.class);
             if (action != null) {
-                List<String> shortNames = action.getShortNames();
-
                 if (youTrackSite != null && youTrackSite.isPluginEnabled() && youTrackSite.isAnnotationsEnabled()) {
 
-                    String msg = markupText.getText();
-                    int i = 0;
-                    Random random = new Random();
-                    for (String shortName : shortNames) {
-                        Pattern projectPattern = Pattern.compile("(" + shortName + "-" + "(\\d+)" + ")");
-                        Matcher matcher = projectPattern.matcher(msg);
-                        while (matcher.find()) {
-                            if (matcher.groupCount() >= 1) {
-                                String issueId = shortName + "-" + matcher.group(2);
-                                String commitId = "_" + entry.getMsg().hashCode() + "_"  + i++ + "_" + random.nextInt();
-
-
-                                String issueUrl = Hudson.getInstance().getRootUrl() + project.getLastSuccessfulBuild().getUrl() + "youtrack/issue?id=" + issueId;
-
-
-                                String s = "<script>\n";
-                                String js =  "var tooltip = new YAHOO.widget.Tooltip(\"tt1\", {\n    context: \"" +commitId+ "\"\n});\n\nfunction updateData(cfg, data) {\n    var id = data.id;\n\n    var summaryField = data.summary;\n    var descriptionField = data.description;\n    var resolvedField = data.resolved;\n\n\n    var text;\n    var desc = \"\";\n    if(descriptionField) {\n        desc = descriptionField;\n    }\n\n    if (resolvedField == null) {\n        text = \"<h2>\" + id + \": \" + summaryField + \"</h2><p>\" + desc + \"</p>\";\n    } else {\n        text = \"<h2><del>\" + id + \": \" + summaryField + \"</del></h2><p>\" + desc + \"</p>\";\n    }\n    cfg.setProperty(\"text\", text)\n}\n\ntooltip.contextTriggerEvent.subscribe(\n    \n    \n    function (type, args) {\n        var context = args[0];\n        var cfg = this.cfg;\n        cfg.setProperty(\"text\", \"Loading data...\");\n        \n        var request = Q.ajax({\n            url:  \"" + issueUrl + "\",\n            dataType: \"json\"\n        });\n        \n        request.done(\n            function(data) {\n                updateData(cfg, data);}\n        );\n        \n    }\n);\n";
+                    addIssueLinks(markupText, action.getIssueIdMatcher(), youTrackSite.getUrl(), Hudson.getInstance().getRootUrl(), lastSuccessfulBuild.getUrl());
+                }
+            }
+        }
+    }
 
-                                s += js + "\n</script>";
-                                markupText.addMarkup(matcher.start(1), matcher.end(1), s + "<a title=\"test\" id=\"" + commitId + "\" href=\"" + youTrackSite.getUrl() + "/issue/" + issueId + "\">", "</a>");
-                            }
-                        }
+    /**
+     * Links the issue ids in a change log message to the issues.
+     *
+     * @param markupText     the message to add the links to.
+     * @param issueIdMatcher matcher for the issue ids of the projects.
+     * @param youTrackUrl    the url of the YouTrack site.
+     * @param rootUrl        the root url of Jenkins.
+     * @param buildUrl       the url of the build with the issue tooltips, relative to the root url.
+     */
+    void addIssueLinks(MarkupText markupText, IssueIdMatcher issueIdMatcher, String youTrackUrl, String rootUrl, String buildUrl) {
+        String msg = markupText.getText();
+        Matcher matcher = issueIdMatcher.matcher(msg);
+        if (matcher != null) {
+            String issuesUrl = null;
+            while (matcher.find()) {
+                if (matcher.groupCount() >= 1) {
+                    String issueId = matcher.group(IssueIdMatcher.ISSUE_ID_GROUP);
+                    if (issuesUrl == null) {
+                        issuesUrl = rootUrl + buildUrl + "youtrack/issues";
                     }
+
+                    //The tooltips are handled by one script for the whole page, the link only carries the issue id.
+                    String link = "<a class=\"youtrack-issue\" href=\"" + youTrackUrl + "/issue/" + issueId + "\" data-youtrack-id=\"" + issueId + "\" data-youtrack-url=\"" + issuesUrl + "\">";
+                    markupText.addMarkup(matcher.start(1), matcher.end(1), getScriptTag(rootUrl) + link, "</a>");
                 }
             }
         }
     }
 
-
+    /**
+     * Gets the tag including the tooltip script, the first time it is called while rendering a page.
+     *
+     * @param rootUrl the root url of Jenkins.
+     * @return the script tag, or an empty string if it has already been added to the page.
+     */
+    private String getScriptTag(String rootUrl) {
+        StaplerRequest request = Stapler.getCurrentRequest();
+        if (request != null) {
+            if (request.getAttribute(SCRIPT_ADDED_ATTRIBUTE) != null) {
+                return "";
+            }
+            request.setAttribute(SCRIPT_ADDED_ATTRIBUTE, Boolean.TRUE);
+        }
+        //The script ignores being loaded more than once, if the tag is added without a request.
+        return "<script type=\"text/javascript\" src=\"" + rootUrl + "plugin/youtrack-plugin/youtrack-tooltips.js\"></script>";
+    }
 }
@@ -7,11 +7,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * This action shows the commands that the build tried to execute.
+ * This action shows the commands that the build tried to execute, and where the time of the plugin went.
  */
 public class YouTrackCommandAction implements Action {
     private List<Command> commands;
     private AbstractBuild build;
+    /**
+     * The timings of the plugin in the build, null for builds from before they were recorded.
+     */
+    private BuildTimings timings;
 
     public YouTrackCommandAction(AbstractBuild build) {
         this.build = build;
@@ -23,6 +27,20 @@ public class YouTrackCommandAction implements Action {
     }
 
 
+    /**
+     * @return the timings of the plugin in the build.
+     */
+    public synchronized BuildTimings getTimings() {
+        if (timings == null) {
+            timings = new BuildTimings();
+        }
+        return timings;
+    }
+
+    public synchronized void setTimings(BuildTimings timings) {
+        this.timings = timings;
+    }
+
     public AbstractBuild getBuild() {
         return build;
     }
@@ -37,6 +55,21 @@ public class YouTrackCommandAction implements Action {
         return commands.add(command);
     }
 
+    /**
+     * Gets a command by the key it was queued in the {@link YouTrackOutbox} with.
+     *
+     * @param key the key.
+     * @return the command, null if none has the key.
+     */
+    public Command getCommand(String key) {
+        for (Command command : commands) {
+            if (key.equals(command.getKey())) {
+                return command;
+            }
+        }
+        return null;
+    }
+
     public int getNumCommands() {
         return commands.size();
     }
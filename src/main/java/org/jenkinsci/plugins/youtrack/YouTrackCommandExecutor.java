@@ -0,0 +1,185 @@
+package org.jenkinsci.plugins.youtrack;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes YouTrack requests for builds in parallel on a thread pool shared by the whole plugin.
+ * <p/>
+ * Tasks are grouped by a key, normally the issue id: tasks with the same key are run sequentially in the order they
+ * were given, while groups are run in parallel. The number of groups running at the same time against one YouTrack
+ * site is limited by {@link #MAX_CONCURRENT_PER_SITE}, across all builds.
+ */
+public class YouTrackCommandExecutor {
+    /**
+     * Number of threads in the shared pool.
+     */
+    static final int THREADS = Integer.getInteger(YouTrackCommandExecutor.class.getName() + ".threads", 16);
+    /**
+     * Max number of task groups running concurrently against one site.
+     */
+    static final int MAX_CONCURRENT_PER_SITE = Integer.getInteger(YouTrackCommandExecutor.class.getName() + ".maxConcurrentPerSite", 4);
+
+    private static final ExecutorService EXECUTOR;
+
+    static {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "YouTrack command executor #" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        EXECUTOR = threadPoolExecutor;
+    }
+
+    /**
+     * Concurrency limits keyed by site url.
+     */
+    private static final ConcurrentMap<String, Semaphore> SITE_PERMITS = new ConcurrentHashMap<String, Semaphore>();
+
+    private YouTrackCommandExecutor() {
+    }
+
+    /**
+     * Runs the tasks and waits for them to complete.
+     *
+     * @param youTrackSite the site the tasks run against.
+     * @param keys         the key of each task, tasks with the same key are run sequentially.
+     * @param tasks        the tasks.
+     * @param <T>          the result type.
+     * @return the results, in the same order as the tasks.
+     * @throws InterruptedException if interrupted while waiting, the remaining tasks are cancelled.
+     */
+    public static <T> List<T> execute(YouTrackSite youTrackSite, List<String> keys, List<Callable<T>> tasks) throws InterruptedException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            results.add(null);
+        }
+        if (tasks.isEmpty()) {
+            return results;
+        }
+
+        Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < tasks.size(); i++) {
+            List<Integer> group = groups.get(keys.get(i));
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(keys.get(i), group);
+            }
+            group.add(i);
+        }
+
+        Semaphore permits = getPermits(youTrackSite);
+        List<GroupTask<T>> groupTasks = new ArrayList<GroupTask<T>>(groups.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(groups.size());
+        try {
+            for (List<Integer> group : groups.values()) {
+                //Wait on the build thread for a permit, so the pool threads never block on other sites.
+                permits.acquire();
+                GroupTask<T> groupTask = new GroupTask<T>(group, tasks, results, permits);
+                try {
+                    futures.add(EXECUTOR.submit(groupTask));
+                    groupTasks.add(groupTask);
+                } catch (RuntimeException e) {
+                    groupTask.releasePermit();
+                    throw e;
+                }
+            }
+
+            RuntimeException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (InterruptedException e) {
+            for (int i = 0; i < futures.size(); i++) {
+                futures.get(i).cancel(true);
+                //A task cancelled before it started never releases its permit itself.
+                groupTasks.get(i).releasePermit();
+            }
+            throw e;
+        }
+
+        synchronized (results) {
+            return new ArrayList<T>(results);
+        }
+    }
+
+    /**
+     * Runs the tasks of one group sequentially, holding a permit of the site.
+     */
+    private static class GroupTask<T> implements Callable<Void> {
+        private final List<Integer> group;
+        private final List<Callable<T>> tasks;
+        private final List<T> results;
+        private final Semaphore permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        GroupTask(List<Integer> group, List<Callable<T>> tasks, List<T> results, Semaphore permits) {
+            this.group = group;
+            this.tasks = tasks;
+            this.results = results;
+            this.permits = permits;
+        }
+
+        public Void call() throws Exception {
+            try {
+                for (Integer index : group) {
+                    T result = tasks.get(index).call();
+                    synchronized (results) {
+                        results.set(index, result);
+                    }
+                }
+                return null;
+            } finally {
+                releasePermit();
+            }
+        }
+
+        void releasePermit() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    private static Semaphore getPermits(YouTrackSite youTrackSite) {
+        String key = youTrackSite.getUrl();
+        Semaphore semaphore = SITE_PERMITS.get(key);
+        if (semaphore == null) {
+            semaphore = new Semaphore(MAX_CONCURRENT_PER_SITE, true);
+            Semaphore existing = SITE_PERMITS.putIfAbsent(key, semaphore);
+            if (existing != null) {
+                semaphore = existing;
+            }
+        }
+        return semaphore;
+    }
+}
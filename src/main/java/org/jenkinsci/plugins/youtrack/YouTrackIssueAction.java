@@ -5,7 +5,7 @@ import hudson.model.AbstractProject;
 import hudson.model.Action;
 import org.jenkinsci.plugins.youtrack.youtrackapi.Issue;
 import org.jenkinsci.plugins.youtrack.youtrackapi.User;
-import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackServer;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackClient;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -15,7 +15,15 @@ import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * This is the action to get issue data from an YouTrack issue.
@@ -27,6 +35,16 @@ public class YouTrackIssueAction implements Action {
      */
     public final AbstractProject project;
 
+    /**
+     * Gson instances are thread safe, so one is shared.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Max number of issues returned by {@link #doIssues()}.
+     */
+    private static final int MAX_BATCH_SIZE = 100;
+
     /**
      * Constructs the action.
      *
@@ -59,6 +77,9 @@ public class YouTrackIssueAction implements Action {
 
     /**
      * Generates a response containing issue data, but first logs in to YouTrack.
+     * <p/>
+     * The rendered issue is cached by {@link YouTrackIssueCache}, and the response has an ETag, so the browser can
+     * revalidate its copy with If-None-Match.
      *
      * @return the response.
      */
@@ -68,38 +89,152 @@ public class YouTrackIssueAction implements Action {
         return new HttpResponse() {
             public void generateResponse(StaplerRequest req, StaplerResponse rsp, Object node) throws IOException, ServletException {
 
-                String id = req.getParameter("id");
-                YouTrackSite youTrackSite = YouTrackSite.get(project);
+                final String id = req.getParameter("id");
+                final YouTrackSite youTrackSite = getYouTrackSite();
                 if (youTrackSite == null) {
                     rsp.getWriter().write("YouTrack integration not set up for this project");
                     return;
                 }
+                if (id == null || id.equals("")) {
+                    rsp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                    return;
+                }
+
+                YouTrackIssueCache.CachedIssue cachedIssue = YouTrackIssueCache.get(youTrackSite, id, new Callable<String>() {
+                    public String call() {
+                        YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+                        User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
+                        Issue issue = youTrackServer.getIssue(user, id, youTrackSite.getStateFieldName());
+                        return issue == null ? null : toJson(youTrackSite, issue);
+                    }
+                });
+                if (cachedIssue == null) {
+                    rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                    return;
+                }
 
-                YouTrackServer youTrackServer = new YouTrackServer(youTrackSite.getUrl());
-                User user = youTrackServer.login(youTrackSite.getUsername(), youTrackSite.getPassword());
-                Issue issue = youTrackServer.getIssue(user, id, youTrackSite.getStateFieldName());
+                rsp.setHeader("ETag", cachedIssue.getEtag());
+                rsp.setHeader("Cache-Control", "private, no-cache");
+                if (cachedIssue.matches(req.getHeader("If-None-Match"))) {
+                    rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+                rsp.setContentType("application/json;charset=UTF-8");
+                rsp.getWriter().write(cachedIssue.getJson());
+            }
+        };
+    }
 
-                Document document = Jsoup.parse(issue.getDescription());
-                Elements imageElements = document.select("img");
-                for (Element imageElement : imageElements) {
-                    String src = imageElement.attr("src");
-                    if (!src.contains("://") && !src.startsWith("//")) {
-                        String url = youTrackSite.getUrl();
-                        String host = getDomainName(url);
+    /**
+     * Generates a response containing the data of several issues, given as a comma separated list in the ids
+     * parameter, as a JSON object keyed by issue id. Issues which are not cached are fetched with one issue query.
+     * Issues which are not found are left out.
+     *
+     * @return the response.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public HttpResponse doIssues() {
 
-                        imageElement.attr("src",  host + src);
+        return new HttpResponse() {
+            public void generateResponse(StaplerRequest req, StaplerResponse rsp, Object node) throws IOException, ServletException {
+                final YouTrackSite youTrackSite = getYouTrackSite();
+                if (youTrackSite == null) {
+                    rsp.getWriter().write("YouTrack integration not set up for this project");
+                    return;
+                }
+
+                Set<String> ids = new LinkedHashSet<String>();
+                String idsParameter = req.getParameter("ids");
+                if (idsParameter != null) {
+                    for (String id : idsParameter.split(",")) {
+                        if (!id.trim().equals("") && ids.size() < MAX_BATCH_SIZE) {
+                            ids.add(id.trim());
+                        }
                     }
                 }
 
-                issue.setDescription(document.html());
+                Map<String, YouTrackIssueCache.CachedIssue> cachedIssues = new LinkedHashMap<String, YouTrackIssueCache.CachedIssue>();
+                List<String> missingIds = new ArrayList<String>();
+                for (String id : ids) {
+                    YouTrackIssueCache.CachedIssue cachedIssue = YouTrackIssueCache.get(youTrackSite, id);
+                    if (cachedIssue != null) {
+                        cachedIssues.put(id, cachedIssue);
+                    } else {
+                        missingIds.add(id);
+                    }
+                }
 
-                Gson gson = new Gson();
-                String json = gson.toJson(issue);
-                rsp.getWriter().write(json);
+                if (!missingIds.isEmpty()) {
+                    YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+                    User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
+                    Map<String, Issue> issues = youTrackServer.getIssues(user, missingIds, youTrackSite.getStateFieldName());
+                    if (issues != null) {
+                        for (String id : missingIds) {
+                            Issue issue = issues.get(id);
+                            if (issue != null) {
+                                cachedIssues.put(id, YouTrackIssueCache.put(youTrackSite, id, toJson(youTrackSite, issue)));
+                            }
+                        }
+                    }
+                }
+
+                StringBuilder json = new StringBuilder("{");
+                StringBuilder etags = new StringBuilder();
+                for (String id : ids) {
+                    YouTrackIssueCache.CachedIssue cachedIssue = cachedIssues.get(id);
+                    if (cachedIssue != null) {
+                        if (json.length() > 1) {
+                            json.append(',');
+                        }
+                        json.append(GSON.toJson(id)).append(':').append(cachedIssue.getJson());
+                        etags.append(id).append(cachedIssue.getEtag());
+                    }
+                }
+                json.append('}');
+
+                YouTrackIssueCache.CachedIssue response = new YouTrackIssueCache.CachedIssue(json.toString(), etags.toString());
+                rsp.setHeader("ETag", response.getEtag());
+                rsp.setHeader("Cache-Control", "private, no-cache");
+                if (response.matches(req.getHeader("If-None-Match"))) {
+                    rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+                rsp.setContentType("application/json;charset=UTF-8");
+                rsp.getWriter().write(response.getJson());
             }
         };
     }
 
+    /**
+     * @return the site of the project, null if none.
+     */
+    YouTrackSite getYouTrackSite() {
+        return YouTrackSite.get(project);
+    }
+
+    /**
+     * Renders the issue as JSON, making image links in the description absolute.
+     */
+    String toJson(YouTrackSite youTrackSite, Issue issue) {
+        if (issue.getDescription() != null) {
+            Document document = Jsoup.parse(issue.getDescription());
+            Elements imageElements = document.select("img");
+            for (Element imageElement : imageElements) {
+                String src = imageElement.attr("src");
+                if (!src.contains("://") && !src.startsWith("//")) {
+                    String url = youTrackSite.getUrl();
+                    String host = getDomainName(url);
+
+                    imageElement.attr("src",  host + src);
+                }
+            }
+
+            issue.setDescription(document.html());
+        }
+
+        return GSON.toJson(issue);
+    }
+
     private String getDomainName(String url) {
         int slashslash = url.indexOf("//") + 2;
         return url.substring(0, slashslash ) + url.substring(slashslash, url.indexOf('/', slashslash));
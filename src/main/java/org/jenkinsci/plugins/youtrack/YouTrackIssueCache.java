@@ -0,0 +1,225 @@
+package org.jenkinsci.plugins.youtrack;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the issue data rendered as JSON for the change log tooltips, keyed by site and issue id.
+ * <p/>
+ * The cache holds at most {@link #MAX_SIZE} issues, evicting the least recently used, and an issue is fetched again
+ * when it is older than {@link #TTL}. Concurrent requests for an issue which is not cached share one fetch.
+ */
+public class YouTrackIssueCache {
+    /**
+     * Max number of cached issues.
+     */
+    static final int MAX_SIZE = Integer.getInteger(YouTrackIssueCache.class.getName() + ".maxSize", 1000);
+    /**
+     * Time in milliseconds an issue is cached.
+     */
+    static final long TTL = TimeUnit.SECONDS.toMillis(Long.getLong(YouTrackIssueCache.class.getName() + ".ttlSeconds", 300));
+
+    private static final Map<String, CachedIssue> CACHE = new LinkedHashMap<String, CachedIssue>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedIssue> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /**
+     * Fetches in progress, keyed as the cache.
+     */
+    private static final ConcurrentMap<String, FutureTask<CachedIssue>> FETCHES = new ConcurrentHashMap<String, FutureTask<CachedIssue>>();
+
+    private YouTrackIssueCache() {
+    }
+
+    /**
+     * Gets a cached issue.
+     *
+     * @param youTrackSite the site of the issue.
+     * @param issueId      the id of the issue.
+     * @return the issue, null if it is not cached or has expired.
+     */
+    public static CachedIssue get(YouTrackSite youTrackSite, String issueId) {
+        return get(getKey(youTrackSite, issueId));
+    }
+
+    private static CachedIssue get(String key) {
+        synchronized (CACHE) {
+            CachedIssue cachedIssue = CACHE.get(key);
+            if (cachedIssue != null && cachedIssue.isExpired()) {
+                CACHE.remove(key);
+                return null;
+            }
+            return cachedIssue;
+        }
+    }
+
+    /**
+     * Gets an issue, fetching it with the given loader if it is not cached.
+     *
+     * @param youTrackSite the site of the issue.
+     * @param issueId      the id of the issue.
+     * @param loader       fetches the issue and renders it as JSON, returning null if the issue could not be fetched.
+     * @return the issue, null if it could not be fetched.
+     */
+    public static CachedIssue get(YouTrackSite youTrackSite, String issueId, final Callable<String> loader) {
+        CachedIssue cachedIssue = get(youTrackSite, issueId);
+        if (cachedIssue != null) {
+            return cachedIssue;
+        }
+
+        final String key = getKey(youTrackSite, issueId);
+        FutureTask<CachedIssue> fetch = new FutureTask<CachedIssue>(new Callable<CachedIssue>() {
+            public CachedIssue call() throws Exception {
+                //Another fetch may have completed since the cache was checked.
+                CachedIssue cached = get(key);
+                if (cached != null) {
+                    return cached;
+                }
+                String json = loader.call();
+                return json == null ? null : put(key, json);
+            }
+        });
+        FutureTask<CachedIssue> existing = FETCHES.putIfAbsent(key, fetch);
+        if (existing == null) {
+            try {
+                fetch.run();
+            } finally {
+                FETCHES.remove(key);
+            }
+        } else {
+            fetch = existing;
+        }
+
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Caches an issue.
+     *
+     * @param youTrackSite the site of the issue.
+     * @param issueId      the id of the issue.
+     * @param json         the issue rendered as JSON.
+     * @return the cached issue.
+     */
+    public static CachedIssue put(YouTrackSite youTrackSite, String issueId, String json) {
+        return put(getKey(youTrackSite, issueId), json);
+    }
+
+    /**
+     * Forgets all cached issues.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static CachedIssue put(String key, String json) {
+        CachedIssue cachedIssue = new CachedIssue(json);
+        synchronized (CACHE) {
+            CACHE.put(key, cachedIssue);
+        }
+        return cachedIssue;
+    }
+
+    private static String getKey(YouTrackSite youTrackSite, String issueId) {
+        return youTrackSite.getUrl() + "\n" + youTrackSite.getUsername() + "\n" + issueId;
+    }
+
+    /**
+     * An issue rendered as JSON, with an entity tag for conditional requests.
+     */
+    public static class CachedIssue {
+        private final String json;
+        private final String etag;
+        private final long expires;
+
+        CachedIssue(String json) {
+            this(json, json);
+        }
+
+        /**
+         * Creates an issue with the entity tag computed from the given content, e.g. the entity tags of the parts
+         * of the JSON.
+         *
+         * @param json        the JSON.
+         * @param etagContent the content to compute the entity tag from.
+         */
+        CachedIssue(String json, String etagContent) {
+            this.json = json;
+            this.etag = "\"" + md5(etagContent) + "\"";
+            this.expires = System.currentTimeMillis() + TTL;
+        }
+
+        public String getJson() {
+            return json;
+        }
+
+        /**
+         * @return the quoted entity tag of the JSON.
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Checks whether an If-None-Match header matches the issue.
+         *
+         * @param ifNoneMatch the header value, null is allowed.
+         * @return true if the browser has the current version.
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                String trimmed = tag.trim();
+                if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expires;
+        }
+
+        private static String md5(String text) {
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(text.getBytes("UTF-8"));
+                StringBuilder hex = new StringBuilder(digest.length * 2);
+                for (byte b : digest) {
+                    hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.jenkinsci.plugins.youtrack;
+
+import com.google.gson.stream.JsonWriter;
+import hudson.Extension;
+import hudson.model.Hudson;
+import hudson.model.ManagementLink;
+import org.jenkinsci.plugins.youtrack.youtrackapi.MetricsYouTrackClient;
+import org.jenkinsci.plugins.youtrack.youtrackapi.OperationMetrics;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management page showing the calls made to the YouTrack sites, with call and error counts and latencies for each
+ * site and operation. The same data is available as JSON at <code>youtrack-metrics/json</code> for monitoring.
+ */
+@Extension
+public class YouTrackMetricsLink extends ManagementLink {
+    public String getIconFileName() {
+        return "plugin.png";
+    }
+
+    public String getDisplayName() {
+        return "YouTrack Metrics";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Calls, errors and latencies of the operations on the YouTrack sites.";
+    }
+
+    public String getUrlName() {
+        return "youtrack-metrics";
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public List<OperationMetrics> getMetrics() {
+        return MetricsYouTrackClient.getAll();
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public String formatMillis(double millis) {
+        return String.format("%.1f", millis);
+    }
+
+    /**
+     * Generates a response with the metrics as a JSON array with an object for each site and operation. The latency
+     * histogram is given as the upper bounds in milliseconds of the buckets, and the number of calls in each bucket,
+     * which has one more element for the calls slower than the last bound.
+     *
+     * @return the response.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public HttpResponse doJson() {
+        Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+
+        return new HttpResponse() {
+            public void generateResponse(StaplerRequest req, StaplerResponse rsp, Object node) throws IOException, ServletException {
+                rsp.setContentType("application/json;charset=UTF-8");
+                rsp.setHeader("Cache-Control", "no-cache");
+                JsonWriter writer = new JsonWriter(rsp.getWriter());
+                writer.beginArray();
+                for (OperationMetrics metrics : MetricsYouTrackClient.getAll()) {
+                    writer.beginObject();
+                    writer.name("site").value(metrics.getSiteName());
+                    writer.name("operation").value(metrics.getOperation());
+                    writer.name("calls").value(metrics.getCalls());
+                    writer.name("errors").value(metrics.getErrors());
+                    writer.name("errorsByStatus").beginObject();
+                    for (Map.Entry<String, Long> entry : metrics.getErrorsByStatus().entrySet()) {
+                        writer.name(entry.getKey()).value(entry.getValue());
+                    }
+                    writer.endObject();
+                    writer.name("meanMillis").value(metrics.getMeanMillis());
+                    writer.name("p50Millis").value(metrics.getPercentileMillis(0.5));
+                    writer.name("p99Millis").value(metrics.getPercentileMillis(0.99));
+                    writer.name("maxMillis").value(metrics.getMaxMillis());
+                    writer.name("bucketBoundsMillis").beginArray();
+                    for (long bound : OperationMetrics.getBucketBounds()) {
+                        writer.value(bound);
+                    }
+                    writer.endArray();
+                    writer.name("bucketCounts").beginArray();
+                    for (long count : metrics.getBucketCounts()) {
+                        writer.value(count);
+                    }
+                    writer.endArray();
+                    writer.endObject();
+                }
+                writer.endArray();
+                writer.flush();
+            }
+        };
+    }
+
+    /**
+     * Forgets all metrics, to start measuring again.
+     *
+     * @return a redirect back to the page.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    @RequirePOST
+    public HttpResponse doReset() {
+        Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+        MetricsYouTrackClient.reset();
+        return HttpResponses.redirectToDot();
+    }
+}
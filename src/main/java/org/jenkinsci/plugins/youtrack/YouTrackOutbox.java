@@ -0,0 +1,510 @@
+package org.jenkinsci.plugins.youtrack;
+
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.youtrack.youtrackapi.CircuitBreakerTransport;
+import org.jenkinsci.plugins.youtrack.youtrackapi.Issue;
+import org.jenkinsci.plugins.youtrack.youtrackapi.User;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent queue of the comments and commands which failed because YouTrack was unavailable, so they are retried
+ * later instead of being lost. Each queued command is stored as an XML file in the outbox directory under
+ * <code>JENKINS_HOME</code>, and is retried by {@link YouTrackOutboxDispatcher}.
+ * <p/>
+ * A queued command is identified by a key computed from the build, the place it was queued from and its content, so
+ * queuing the same command again is ignored, and the result of a retry updates the {@link Command} stored in the
+ * build. Retries back off exponentially from {@link #RETRY_BASE} up to {@link #RETRY_MAX}, and a command is given up
+ * after {@link #MAX_ATTEMPTS} attempts or when it has been queued longer than {@link #MAX_AGE}.
+ * <p/>
+ * Commands for the same issue are retried in the order they were queued, and a command can be set to wait for
+ * another one, like marking issues fixed in a build waiting for the build being added to the bundle. A command may
+ * be applied twice if the server applied it but the answer was lost, e.g. by a read timeout.
+ */
+public class YouTrackOutbox {
+    private static final Logger LOGGER = Logger.getLogger(YouTrackOutbox.class.getName());
+
+    /**
+     * Name of the outbox directory.
+     */
+    static final String NAME = "youtrack-outbox";
+    /**
+     * Time in milliseconds before the first retry.
+     */
+    static final long RETRY_BASE = TimeUnit.SECONDS.toMillis(Long.getLong(YouTrackOutbox.class.getName() + ".retryBaseSeconds", 60));
+    /**
+     * Max time in milliseconds between retries.
+     */
+    static final long RETRY_MAX = TimeUnit.SECONDS.toMillis(Long.getLong(YouTrackOutbox.class.getName() + ".retryMaxSeconds", 3600));
+    /**
+     * Max number of retries of a command.
+     */
+    static final int MAX_ATTEMPTS = Integer.getInteger(YouTrackOutbox.class.getName() + ".maxAttempts", 20);
+    /**
+     * Max time in milliseconds a command is kept in the outbox.
+     */
+    static final long MAX_AGE = TimeUnit.HOURS.toMillis(Long.getLong(YouTrackOutbox.class.getName() + ".maxAgeHours", 72));
+
+    private static final Comparator<Entry> BY_SEQUENCE = new Comparator<Entry>() {
+        public int compare(Entry entry1, Entry entry2) {
+            return entry1.sequence < entry2.sequence ? -1 : (entry1.sequence == entry2.sequence ? 0 : 1);
+        }
+    };
+
+    private final File directory;
+    /**
+     * The queued commands keyed by their key.
+     */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public YouTrackOutbox(File directory) {
+        this.directory = directory;
+        load();
+    }
+
+    /**
+     * Gets the outbox of the plugin.
+     *
+     * @return the outbox, null if Jenkins is not running.
+     */
+    public static YouTrackOutbox get() {
+        Jenkins instance = Jenkins.getInstance();
+        if (instance == null) {
+            return null;
+        }
+        YouTrackPlugin plugin = instance.getPlugin(YouTrackPlugin.class);
+        return plugin != null ? plugin.getOutbox() : null;
+    }
+
+    private void load() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(".xml")) {
+                continue;
+            }
+            try {
+                Entry entry = (Entry) new XmlFile(Jenkins.XSTREAM, file).read();
+                entries.put(entry.key, entry);
+                if (entry.sequence > sequence.get()) {
+                    sequence.set(entry.sequence);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not read queued YouTrack command " + file, e);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not read queued YouTrack command " + file, e);
+            }
+        }
+        if (!entries.isEmpty()) {
+            LOGGER.info(entries.size() + " YouTrack commands are queued for retrying");
+        }
+    }
+
+    /**
+     * @return the number of queued commands.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Queues a failed command for retrying.
+     *
+     * @param build        the build the command was executed by.
+     * @param youTrackSite the site of the command.
+     * @param source       the place the command was queued from, part of the key.
+     * @param index        the position of the command among the commands of the source and build, part of the key.
+     * @param entry        the operation to retry.
+     * @param command      the failed command, which gets the key and the status {@link Command.Status#QUEUED}.
+     * @return true if the command was queued.
+     */
+    public boolean enqueue(AbstractBuild<?, ?> build, YouTrackSite youTrackSite, String source, int index, Entry entry, Command command) {
+        return enqueue(build.getProject().getFullName(), build.getNumber(), youTrackSite, source, index, entry, command);
+    }
+
+    boolean enqueue(String jobName, int buildNumber, YouTrackSite youTrackSite, String source, int index, Entry entry, Command command) {
+        entry.key = createKey(jobName + "\n" + buildNumber + "\n" + source + "\n" + index + "\n" + entry.type + "\n" + entry.issueId + "\n" + entry.command + "\n" + entry.comment + "\n" + entry.bundleName + "\n" + entry.buildName);
+        entry.siteName = youTrackSite.getName();
+        entry.jobName = jobName;
+        entry.buildNumber = buildNumber;
+        entry.created = System.currentTimeMillis();
+        entry.nextAttempt = entry.created + RETRY_BASE;
+        entry.sequence = sequence.incrementAndGet();
+
+        if (entries.putIfAbsent(entry.key, entry) == null) {
+            try {
+                save(entry);
+            } catch (IOException e) {
+                entries.remove(entry.key);
+                LOGGER.log(Level.WARNING, "Could not queue YouTrack command", e);
+                return false;
+            }
+        }
+        command.setKey(entry.key);
+        command.setStatus(Command.Status.QUEUED);
+        return true;
+    }
+
+    /**
+     * Retries the queued commands which are due. Sites which are unavailable are skipped.
+     *
+     * @param listener the listener to log to.
+     * @throws InterruptedException if interrupted.
+     */
+    public void dispatch(TaskListener listener) throws InterruptedException {
+        dispatch(listener, System.currentTimeMillis());
+    }
+
+    synchronized void dispatch(TaskListener listener, long now) throws InterruptedException {
+        List<Entry> queued = new ArrayList<Entry>(entries.values());
+        Collections.sort(queued, BY_SEQUENCE);
+
+        Map<String, Session> sessions = new HashMap<String, Session>();
+        //Issues, and bundles, with a command still queued, so later commands for them have to wait.
+        Set<String> blocked = new HashSet<String>();
+        for (Entry entry : queued) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            String orderingKey = entry.siteName + "\n" + entry.getOrderingKey();
+            if (now - entry.created > MAX_AGE) {
+                Command command = new Command();
+                command.setStatus(Command.Status.FAILED);
+                command.setResponse("Gave up retrying after " + TimeUnit.MILLISECONDS.toHours(MAX_AGE) + " hours");
+                finish(entry, command, listener);
+                continue;
+            }
+            if (blocked.contains(orderingKey) || entry.nextAttempt > now || (entry.after != null && entries.containsKey(entry.after))) {
+                blocked.add(orderingKey);
+                continue;
+            }
+
+            Session session = sessions.get(entry.siteName);
+            if (session == null) {
+                session = new Session(findSite(entry.siteName));
+                sessions.put(entry.siteName, session);
+            }
+            if (session.youTrackSite == null) {
+                Command command = new Command();
+                command.setStatus(Command.Status.FAILED);
+                command.setResponse("YouTrack site " + entry.siteName + " no longer exists");
+                finish(entry, command, listener);
+                continue;
+            }
+            if (session.user == null) {
+                blocked.add(orderingKey);
+                continue;
+            }
+
+            Command result = execute(entry, session.youTrackClient, session.user);
+            if (entry.runAs != null && entry.runAsEmail != null) {
+                //The user was found, so it is not looked up again.
+                entry.runAsEmail = null;
+            }
+            entry.attempts++;
+            if (result.getStatus() == Command.Status.OK || !result.isRetryable() || entry.attempts >= MAX_ATTEMPTS) {
+                finish(entry, result, listener);
+            } else {
+                entry.nextAttempt = now + Math.min(RETRY_MAX, RETRY_BASE << Math.min(entry.attempts, 30));
+                try {
+                    save(entry);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not save queued YouTrack command", e);
+                }
+                result.setStatus(Command.Status.QUEUED);
+                updateBuild(entry, result);
+                blocked.add(orderingKey);
+            }
+        }
+    }
+
+    /**
+     * Finds the site of queued commands.
+     *
+     * @param siteName the name of the site.
+     * @return the site, null if it no longer exists.
+     */
+    YouTrackSite findSite(String siteName) {
+        YouTrackSite found = null;
+        for (YouTrackSite site : YouTrackProjectProperty.DESCRIPTOR.getSites()) {
+            if (site.getName() != null && site.getName().equals(siteName)) {
+                found = site;
+            }
+        }
+        return found;
+    }
+
+    private Command execute(Entry entry, YouTrackClient youTrackClient, User user) {
+        switch (entry.type) {
+            case COMMENT:
+                return youTrackClient.comment(entry.siteName, user, new Issue(entry.issueId), entry.comment, entry.group, entry.silent);
+            case COMMAND:
+                if (entry.runAs == null && entry.runAsEmail != null) {
+                    try {
+                        User found = youTrackClient.getUserByEmail(user, entry.runAsEmail);
+                        if (found != null) {
+                            entry.runAs = found.getUsername();
+                        }
+                    } catch (IOException e) {
+                        Command command = new Command();
+                        command.setStatus(Command.Status.FAILED);
+                        command.setResponse("Could not look up the user with e-mail " + entry.runAsEmail + ": " + e.getMessage());
+                        command.setRetryable(true);
+                        return command;
+                    }
+                }
+                User runAs = null;
+                if (entry.runAs != null) {
+                    runAs = new User();
+                    runAs.setUsername(entry.runAs);
+                }
+                return youTrackClient.applyCommand(entry.siteName, user, new Issue(entry.issueId), entry.command, entry.comment, runAs, !entry.silent);
+            default:
+                return youTrackClient.addBuildToBundle(entry.siteName, user, entry.bundleName, entry.buildName);
+        }
+    }
+
+    /**
+     * Removes a command from the outbox and stores the final result in the build.
+     */
+    private void finish(Entry entry, Command result, TaskListener listener) {
+        entries.remove(entry.key);
+        File file = getFile(entry);
+        if (file.exists() && !file.delete()) {
+            LOGGER.warning("Could not delete queued YouTrack command " + file);
+        }
+        updateBuild(entry, result);
+        listener.getLogger().println((result.getStatus() == Command.Status.OK ? "Retried " : "FAILED: Retrying ") + entry + " from " + entry.jobName + " #" + entry.buildNumber);
+    }
+
+    /**
+     * Updates the command stored in the build with the result of a retry.
+     */
+    private void updateBuild(Entry entry, Command result) {
+        Jenkins instance = Jenkins.getInstance();
+        if (instance == null) {
+            return;
+        }
+        AbstractProject<?, ?> project = instance.getItemByFullName(entry.jobName, AbstractProject.class);
+        if (project == null) {
+            return;
+        }
+        AbstractBuild<?, ?> build = project.getBuildByNumber(entry.buildNumber);
+        if (build == null) {
+            return;
+        }
+        YouTrackCommandAction commandAction = build.getAction(YouTrackCommandAction.class);
+        Command command = commandAction != null ? commandAction.getCommand(entry.key) : null;
+        if (command == null) {
+            return;
+        }
+        command.setStatus(result.getStatus());
+        command.setResponse(result.getResponse());
+        command.setRetries(entry.attempts);
+        try {
+            build.save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save result of retried YouTrack command", e);
+        }
+    }
+
+    private void save(Entry entry) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        new XmlFile(Jenkins.XSTREAM, getFile(entry)).write(entry);
+    }
+
+    private File getFile(Entry entry) {
+        return new File(directory, entry.key + ".xml");
+    }
+
+    private static String createKey(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(content.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The client and logged in user of a site during a dispatch. The user is null if the site is unavailable.
+     */
+    private static class Session {
+        private final YouTrackSite youTrackSite;
+        private YouTrackClient youTrackClient;
+        private User user;
+
+        Session(YouTrackSite youTrackSite) {
+            this.youTrackSite = youTrackSite;
+            if (youTrackSite != null && !CircuitBreakerTransport.getDefault().isOpen(youTrackSite.getUrl())) {
+                youTrackClient = YouTrackServers.get(youTrackSite);
+                User loggedIn = YouTrackSessionCache.getUser(youTrackClient, youTrackSite);
+                if (loggedIn != null && loggedIn.isLoggedIn()) {
+                    user = loggedIn;
+                }
+            }
+        }
+    }
+
+    /**
+     * A queued operation.
+     */
+    public static class Entry {
+        enum Type {COMMENT, COMMAND, ADD_BUILD}
+
+        private final Type type;
+        private String key;
+        private long sequence;
+        private String siteName;
+        private String jobName;
+        private int buildNumber;
+        private long created;
+        private long nextAttempt;
+        private int attempts;
+        /**
+         * Key of a command which has to be executed first, null if none.
+         */
+        private String after;
+
+        private String issueId;
+        private String command;
+        private String comment;
+        private String group;
+        private boolean silent;
+        private String runAs;
+        /**
+         * E-mail of the user to apply the command as, if the user could not be looked up yet.
+         */
+        private String runAsEmail;
+        private String bundleName;
+        private String buildName;
+
+        private Entry(Type type) {
+            this.type = type;
+        }
+
+        /**
+         * Creates a comment operation.
+         *
+         * @param issueId the issue to comment on.
+         * @param comment the comment text.
+         * @param group   the group the comment is visible to, null is allowed.
+         * @param silent  true if watchers should not be notified.
+         * @return the operation.
+         */
+        public static Entry comment(String issueId, String comment, String group, boolean silent) {
+            Entry entry = new Entry(Type.COMMENT);
+            entry.issueId = issueId;
+            entry.comment = comment;
+            entry.group = group;
+            entry.silent = silent;
+            return entry;
+        }
+
+        /**
+         * Creates a command operation.
+         *
+         * @param issueId the issue to apply the command to.
+         * @param command the command.
+         * @param comment comment with the command, null is allowed.
+         * @param runAs   login of the user to apply the command as, null is allowed.
+         * @param silent  true if watchers should not be notified.
+         * @return the operation.
+         */
+        public static Entry command(String issueId, String command, String comment, String runAs, boolean silent) {
+            Entry entry = new Entry(Type.COMMAND);
+            entry.issueId = issueId;
+            entry.command = command;
+            entry.comment = comment;
+            entry.runAs = runAs;
+            entry.silent = silent;
+            return entry;
+        }
+
+        /**
+         * Creates an operation adding a build to a build bundle.
+         *
+         * @param bundleName the name of the bundle.
+         * @param buildName  the name of the build.
+         * @return the operation.
+         */
+        public static Entry addBuild(String bundleName, String buildName) {
+            Entry entry = new Entry(Type.ADD_BUILD);
+            entry.bundleName = bundleName;
+            entry.buildName = buildName;
+            return entry;
+        }
+
+        /**
+         * Makes the command look up the user to apply it as by e-mail when it is retried.
+         *
+         * @param email the e-mail of the user, null if none.
+         * @return this operation.
+         */
+        public Entry runAsEmail(String email) {
+            this.runAsEmail = email;
+            return this;
+        }
+
+        /**
+         * Makes the operation wait for another queued operation.
+         *
+         * @param key the key of the other operation, null for none.
+         * @return this operation.
+         */
+        public Entry after(String key) {
+            this.after = key;
+            return this;
+        }
+
+        String getOrderingKey() {
+            return type == Type.ADD_BUILD ? "bundle\n" + bundleName : issueId;
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case COMMENT:
+                    return "comment on " + issueId;
+                case COMMAND:
+                    return "command " + command + " on " + issueId;
+                default:
+                    return "adding " + buildName + " to " + bundleName;
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.jenkinsci.plugins.youtrack;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+
+/**
+ * Retries the commands queued in the {@link YouTrackOutbox} every minute.
+ */
+@Extension
+public class YouTrackOutboxDispatcher extends AsyncPeriodicWork {
+    public YouTrackOutboxDispatcher() {
+        super("YouTrack outbox dispatcher");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MIN;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        YouTrackOutbox outbox = YouTrackOutbox.get();
+        if (outbox != null && outbox.size() > 0) {
+            outbox.dispatch(listener);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package org.jenkinsci.plugins.youtrack;
 
 import hudson.Plugin;
+import jenkins.model.Jenkins;
+
+import java.io.File;
 
 /**
  * Listens to SCM changes.
@@ -10,7 +13,11 @@ public class YouTrackPlugin extends Plugin {
     /**
      * For saving which ids has been processed.
      */
-    private YoutrackProcessedRevisionsSaver revisionsSaver;
+    private transient YoutrackProcessedRevisionsSaver revisionsSaver;
+    /**
+     * For retrying commands which failed because YouTrack was unavailable.
+     */
+    private transient YouTrackOutbox outbox;
 
 
     @Override
@@ -24,6 +31,11 @@ public class YouTrackPlugin extends Plugin {
     @Override
     public void stop() throws Exception {
         scmListener.unregister();
+        synchronized (this) {
+            if (revisionsSaver != null) {
+                revisionsSaver.close();
+            }
+        }
         super.stop();
     }
 
@@ -33,4 +45,11 @@ public class YouTrackPlugin extends Plugin {
         }
         return revisionsSaver;
     }
+
+    public synchronized YouTrackOutbox getOutbox() {
+        if (outbox == null) {
+            outbox = new YouTrackOutbox(new File(Jenkins.getInstance().getRootDir(), YouTrackOutbox.NAME));
+        }
+        return outbox;
+    }
 }
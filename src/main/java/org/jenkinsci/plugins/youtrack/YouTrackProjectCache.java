@@ -0,0 +1,167 @@
+package org.jenkinsci.plugins.youtrack;
+
+import org.jenkinsci.plugins.youtrack.youtrackapi.Project;
+import org.jenkinsci.plugins.youtrack.youtrackapi.User;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackClient;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches the project list of each YouTrack site, as it rarely changes but is needed by every build and by the
+ * auto completion in the configuration pages.
+ * <p/>
+ * When a cached list is older than {@link #PROJECTS_TTL}, the stale list is returned while it is refreshed in the
+ * background. If the server cannot be reached, the stale list is kept and used until the server is back.
+ */
+public class YouTrackProjectCache {
+    private static final Logger LOGGER = Logger.getLogger(YouTrackProjectCache.class.getName());
+
+    /**
+     * Age in milliseconds after which a project list is refreshed.
+     */
+    static final long PROJECTS_TTL = TimeUnit.MINUTES.toMillis(Long.getLong(YouTrackProjectCache.class.getName() + ".ttlMinutes", 60));
+    /**
+     * Time in milliseconds to wait before trying again after a failed refresh.
+     */
+    static final long RETRY_INTERVAL = Math.min(PROJECTS_TTL, TimeUnit.MINUTES.toMillis(1));
+
+    /**
+     * The project lists keyed by url and username of the site, as the projects visible depend on the user.
+     */
+    private static final ConcurrentMap<String, Entry> ENTRIES = new ConcurrentHashMap<String, Entry>();
+
+    private static final ExecutorService REFRESHER;
+
+    static {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "YouTrack project list refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        REFRESHER = threadPoolExecutor;
+    }
+
+    private YouTrackProjectCache() {
+    }
+
+    /**
+     * Gets the projects of the site. Only the first call for a site waits for the server, later calls get the cached
+     * list.
+     *
+     * @param youTrackServer the server to get the projects from.
+     * @param youTrackSite   the site.
+     * @param user           the logged in user.
+     * @return the projects, null if they have never been fetched and could not be fetched now.
+     */
+    public static List<Project> getProjects(YouTrackClient youTrackServer, YouTrackSite youTrackSite, User user) {
+        String key = youTrackSite.getUrl() + "\n" + youTrackSite.getUsername();
+        Entry entry = ENTRIES.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            Entry existing = ENTRIES.putIfAbsent(key, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        return entry.getProjects(youTrackServer, user);
+    }
+
+    /**
+     * Forgets the cached projects of all sites, so they are fetched again on next use.
+     */
+    public static void invalidate() {
+        ENTRIES.clear();
+    }
+
+    /**
+     * The cached project list of a single site.
+     */
+    private static class Entry implements Runnable {
+        private volatile List<Project> projects;
+        private volatile long nextRefresh;
+        private boolean refreshing;
+        private YouTrackClient youTrackServer;
+        private User user;
+
+        List<Project> getProjects(YouTrackClient youTrackServer, User user) {
+            List<Project> cached = projects;
+            if (cached == null) {
+                synchronized (this) {
+                    //Only one caller fetches the first list, the others wait for it.
+                    if (projects == null && System.currentTimeMillis() >= nextRefresh) {
+                        fetch(youTrackServer, user);
+                    }
+                    return projects;
+                }
+            }
+            if (System.currentTimeMillis() >= nextRefresh) {
+                scheduleRefresh(youTrackServer, user);
+            }
+            return cached;
+        }
+
+        private synchronized void scheduleRefresh(YouTrackClient youTrackServer, User user) {
+            if (refreshing) {
+                return;
+            }
+            this.youTrackServer = youTrackServer;
+            this.user = user;
+            refreshing = true;
+            try {
+                REFRESHER.execute(this);
+            } catch (RejectedExecutionException e) {
+                refreshing = false;
+            }
+        }
+
+        public void run() {
+            YouTrackClient server;
+            User refreshUser;
+            synchronized (this) {
+                server = youTrackServer;
+                refreshUser = user;
+                youTrackServer = null;
+                user = null;
+            }
+            try {
+                fetch(server, refreshUser);
+            } finally {
+                synchronized (this) {
+                    refreshing = false;
+                }
+            }
+        }
+
+        private void fetch(YouTrackClient youTrackServer, User user) {
+            List<Project> fetched = null;
+            try {
+                fetched = youTrackServer.getProjects(user);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not get the YouTrack projects", e);
+            }
+            if (fetched != null) {
+                projects = Collections.unmodifiableList(fetched);
+                nextRefresh = System.currentTimeMillis() + PROJECTS_TTL;
+            } else {
+                if (projects != null) {
+                    LOGGER.fine("Could not refresh the YouTrack projects, keeping the stale list");
+                }
+                nextRefresh = System.currentTimeMillis() + RETRY_INTERVAL;
+            }
+        }
+    }
+}
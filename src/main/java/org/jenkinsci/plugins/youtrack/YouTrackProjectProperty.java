@@ -12,6 +12,7 @@ import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
@@ -254,6 +255,9 @@ public class YouTrackProjectProperty extends JobProperty<AbstractProject<?, ?>>
             sites.replaceBy(req.bindParametersToList(YouTrackSite.class,
                     "youtrack."));
             save();
+            YouTrackSessionCache.clear();
+            YouTrackProjectCache.invalidate();
+            YouTrackServers.clear();
             return true;
         }
 
@@ -267,10 +271,13 @@ public class YouTrackProjectProperty extends JobProperty<AbstractProject<?, ?>>
             YouTrackSite youTrackSite = YouTrackSite.get(project);
             AutoCompletionCandidates autoCompletionCandidates = new AutoCompletionCandidates();
             if (youTrackSite != null) {
-                YouTrackServer youTrackServer = new YouTrackServer(youTrackSite.getUrl());
-                User user = youTrackServer.login(youTrackSite.getUsername(), youTrackSite.getPassword());
+                YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+                User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
                 if (user != null && user.isLoggedIn()) {
-                    List<Project> projects = youTrackServer.getProjects(user);
+                    List<Project> projects = YouTrackProjectCache.getProjects(youTrackServer, youTrackSite, user);
+                    if (projects == null) {
+                        return autoCompletionCandidates;
+                    }
                     for (Project youtrackProject : projects) {
                         if (value == null || value.equals("")) {
                             autoCompletionCandidates.add(value);
@@ -289,7 +296,7 @@ public class YouTrackProjectProperty extends JobProperty<AbstractProject<?, ?>>
 
                 @Override
                 protected FormValidation check() throws IOException, ServletException {
-                    YouTrackServer youTrackServer = new YouTrackServer(value);
+                    YouTrackClient youTrackServer = new JsonYouTrackServer(value);
                     String[] version = youTrackServer.getVersion();
                     if (version == null) {
                         return FormValidation.warning("Could not get version, maybe because version is below 4.x");
@@ -306,7 +313,7 @@ public class YouTrackProjectProperty extends JobProperty<AbstractProject<?, ?>>
                 @QueryParameter("youtrack.username") final String username,
                 @QueryParameter("youtrack.password") final String password) {
 
-            YouTrackServer youTrackServer = new YouTrackServer(url);
+            YouTrackClient youTrackServer = new YouTrackServer(url);
             if (username != null && !username.equals("")) {
                 User login = youTrackServer.login(username, password);
                 if (login != null && login.isLoggedIn()) {
@@ -320,13 +327,25 @@ public class YouTrackProjectProperty extends JobProperty<AbstractProject<?, ?>>
         }
 
 
+        /**
+         * Forgets the cached project lists, so projects just created in YouTrack are seen by the next build.
+         */
+        @SuppressWarnings("UnusedDeclaration")
+        @RequirePOST
+        public FormValidation doInvalidateProjectCache() {
+            Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+            YouTrackProjectCache.invalidate();
+            YouTrackServers.clear();
+            return FormValidation.ok("Project list will be fetched again");
+        }
+
         @SuppressWarnings("UnusedDeclaration")
         public AutoCompletionCandidates doAutoCompleteLinkVisibility(@AncestorInPath AbstractProject project, @QueryParameter String value) {
             YouTrackSite youTrackSite = YouTrackSite.get(project);
             AutoCompletionCandidates autoCompletionCandidates = new AutoCompletionCandidates();
             if (youTrackSite != null) {
-                YouTrackServer youTrackServer = new YouTrackServer(youTrackSite.getUrl());
-                User user = youTrackServer.login(youTrackSite.getUsername(), youTrackSite.getPassword());
+                YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+                User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
                 if (user != null) {
                     List<Group> groups = youTrackServer.getGroups(user);
                     for (Group group : groups) {
@@ -344,8 +363,8 @@ public class YouTrackProjectProperty extends JobProperty<AbstractProject<?, ?>>
             YouTrackSite youTrackSite = YouTrackSite.get(project);
             AutoCompletionCandidates autoCompletionCandidates = new AutoCompletionCandidates();
             if (youTrackSite != null) {
-                YouTrackServer youTrackServer = new YouTrackServer(youTrackSite.getUrl());
-                User user = youTrackServer.login(youTrackSite.getUsername(), youTrackSite.getPassword());
+                YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+                User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
                 if (user != null) {
                     List<Field> fields = youTrackServer.getFields(user);
                     for (Field field : fields) {
@@ -363,8 +382,8 @@ public class YouTrackProjectProperty extends JobProperty<AbstractProject<?, ?>>
             YouTrackSite youTrackSite = YouTrackSite.get(project);
             AutoCompletionCandidates autoCompletionCandidates = new AutoCompletionCandidates();
             if (youTrackSite != null) {
-                YouTrackServer youTrackServer = new YouTrackServer(youTrackSite.getUrl());
-                User user = youTrackServer.login(youTrackSite.getUsername(), youTrackSite.getPassword());
+                YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+                User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
                 if (user != null) {
                     StateBundle bundle = youTrackServer.getStateBundleForField(user, youTrackSite.getStateFieldName());
                     if (bundle != null) {
@@ -384,10 +403,13 @@ public class YouTrackProjectProperty extends JobProperty<AbstractProject<?, ?>>
             YouTrackSite youTrackSite = YouTrackSite.get(project);
             AutoCompletionCandidates autoCompletionCandidates = new AutoCompletionCandidates();
             if (youTrackSite != null) {
-                YouTrackServer youTrackServer = new YouTrackServer(youTrackSite.getUrl());
-                User user = youTrackServer.login(youTrackSite.getUsername(), youTrackSite.getPassword());
+                YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+                User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
                 if (user != null) {
-                    List<Project> projects = youTrackServer.getProjects(user);
+                    List<Project> projects = YouTrackProjectCache.getProjects(youTrackServer, youTrackSite, user);
+                    if (projects == null) {
+                        return autoCompletionCandidates;
+                    }
                     for (Project youtrackProject : projects) {
                         if(youtrackProject.getShortName().toLowerCase().contains(value.toLowerCase())) {
                             autoCompletionCandidates.add(youtrackProject.getShortName());
@@ -12,7 +12,6 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class YouTrackSCMListener extends SCMListener {
 
@@ -26,104 +25,88 @@ public class YouTrackSCMListener extends SCMListener {
 
             Iterator<? extends ChangeLogSet.Entry> changeLogIterator = changeLogSet.iterator();
 
-            YouTrackServer youTrackServer = new YouTrackServer(youTrackSite.getUrl());
-            User user = youTrackServer.login(youTrackSite.getUsername(), youTrackSite.getPassword());
+            YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+            BuildTimings timings = new BuildTimings();
+            long start = System.currentTimeMillis();
+            User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
+            long loginTime = System.currentTimeMillis() - start;
+            timings.addCall(BuildTimings.LOGIN, "Log in to " + youTrackSite.getName(), loginTime);
+            timings.addTotalTime(loginTime);
             if (user == null || !user.isLoggedIn()) {
-                listener.getLogger().append("FAILED: log in with set YouTrack user");
+                String message = "FAILED: log in with set YouTrack user";
+                if (CircuitBreakerTransport.getDefault().isOpen(youTrackSite.getUrl())) {
+                    message += ", YouTrack server is unavailable";
+                }
+                listener.getLogger().println(message);
             }
-            performActions(build, listener, youTrackSite, changeLogIterator, youTrackServer, user);
+            performActions(build, listener, youTrackSite, changeLogIterator, youTrackServer, user, timings);
         }
     }
 
-    protected void performActions(AbstractBuild<?, ?> build, BuildListener listener, YouTrackSite youTrackSite, Iterator<? extends ChangeLogSet.Entry> changeLogIterator, YouTrackServer youTrackServer, User user) throws IllegalAccessException, InvocationTargetException {
-        build.addAction(new YouTrackIssueAction(build.getProject()));
-
-        List<Project> projects = youTrackServer.getProjects(user);
+    protected void performActions(AbstractBuild<?, ?> build, BuildListener listener, YouTrackSite youTrackSite, Iterator<? extends ChangeLogSet.Entry> changeLogIterator, YouTrackClient youTrackServer, User user) throws IllegalAccessException, InvocationTargetException, InterruptedException {
+        performActions(build, listener, youTrackSite, changeLogIterator, youTrackServer, user, new BuildTimings());
+    }
 
+    /**
+     * Adds the comments and executes the commands found in the change log.
+     *
+     * @param timings the timings to add the time of the plugin to, shown with the commands of the build.
+     */
+    void performActions(AbstractBuild<?, ?> build, BuildListener listener, YouTrackSite youTrackSite, Iterator<? extends ChangeLogSet.Entry> changeLogIterator, YouTrackClient youTrackServer, User user, BuildTimings timings) throws IllegalAccessException, InvocationTargetException, InterruptedException {
+        long start = System.currentTimeMillis();
+        build.addAction(new YouTrackIssueAction(build.getProject()));
 
+        long projectsStart = System.currentTimeMillis();
+        List<Project> projects = YouTrackProjectCache.getProjects(youTrackServer, youTrackSite, user);
+        timings.addCall(BuildTimings.PROJECT_FETCH, "Get projects of " + youTrackSite.getName(), System.currentTimeMillis() - projectsStart);
+        if (projects == null) {
+            //The cache is empty after a restart, so fall back to the projects saved with the last stable build.
+            projects = getSavedProjects(build);
+        }
         if (projects != null) {
             build.addAction(new YouTrackSaveProjectShortNamesAction(projects));
         } else {
-            AbstractBuild<?, ?> lastSuccessfulBuild = build.getProject().getLastStableBuild();
-            YouTrackSaveProjectShortNamesAction action = lastSuccessfulBuild.getAction(YouTrackSaveProjectShortNamesAction.class);
-            if (action != null) {
-                List<String> shortNames = action.getShortNames();
-                List<Project> previousProjects = new ArrayList<Project>();
-                for (String shortName : shortNames) {
-                    Project prevProject = new Project();
-                    prevProject.setShortName(shortName);
-                    previousProjects.add(prevProject);
-                    projects = previousProjects;
-                }
-            } else {
-                projects = new ArrayList<Project>();
-            }
+            projects = new ArrayList<Project>();
         }
 
 
         YouTrackCommandAction commandAction = new YouTrackCommandAction(build);
+        commandAction.setTimings(timings);
 
         List<Issue> fixedIssues = new ArrayList<Issue>();
 
+        CommandBatch commandBatch = new CommandBatch(youTrackSite, build);
+        Set<String> commitsWithCommands = new LinkedHashSet<String>();
+        ProcessingContext context = new ProcessingContext(build, youTrackSite, projects);
+
         while (changeLogIterator.hasNext()) {
             ChangeLogSet.Entry next = changeLogIterator.next();
+            String msg = context.getMessage(next);
 
-            String msg;
-            if (next.getClass().getCanonicalName().equals("hudson.plugins.git.GitChangeSet")) {
-
-                try {
-                    Method getComment = next.getClass().getMethod("getComment");
-                    Object message = getComment.invoke(next);
-                    msg = (String) message;
-                } catch (NoSuchMethodException e) {
-                    msg = next.getMsg();
-                } catch (SecurityException e) {
-                    throw new RuntimeException(e);
-                }
-            } else {
-                msg = next.getMsg();
-            }
-
-            List<Command> commands = addCommentIfEnabled(build, youTrackSite, youTrackServer, user, projects, msg, listener);
-            for (Command command : commands) {
-                commandAction.addCommand(command);
-            }
+            addCommentIfEnabled(context, msg, commandBatch);
 
-
-            if (projects != null) {
-                List<Project> youtrackProjects = new ArrayList<Project>(projects.size());
-                Set<String> includedProjects = getIncludedProjects(projects, youTrackSite);
-
-                for (Project project : projects) {
-                    if (includedProjects.contains(project.getShortName())) {
-                        youtrackProjects.add(project);
-                    }
-                }
-
-                Jenkins instance = Jenkins.getInstance();
-                YouTrackPlugin plugin = null;
-                if (instance != null) {
-                    plugin = instance.getPlugin(YouTrackPlugin.class);
-                }
-                YoutrackProcessedRevisionsSaver revisionsSaver = null;
-                if (plugin != null) {
-                    revisionsSaver = plugin.getRevisionsSaver();
-                }
-                if ((youTrackSite.isTrackCommits() && (revisionsSaver != null && !revisionsSaver.isProcessed(next.getCommitId()))) || !youTrackSite.isTrackCommits()) {
-                    List<Command> commandList = executeCommandsIfEnabled(listener, youTrackSite, youTrackServer, user, youtrackProjects, fixedIssues, next, msg);
-                    for (Command command : commandList) {
-                        commandAction.addCommand(command);
-                    }
-                    if (youTrackSite.isTrackCommits() && !commandList.isEmpty()) {
-                        if (revisionsSaver != null) {
-                            revisionsSaver.addProcessed(next.getCommitId());
-                        }
+            if (context.commandScanner != null) {
+                if (!context.trackCommits || (context.revisionsSaver != null && !context.revisionsSaver.isProcessed(next.getCommitId()))) {
+                    int numCommands = addCommandsIfEnabled(context, next, msg, commandBatch);
+                    if (context.trackCommits && numCommands > 0) {
+                        commitsWithCommands.add(next.getCommitId());
                     }
                 }
             }
+        }
 
+        List<Command> commands = commandBatch.execute(youTrackServer, user, listener, fixedIssues, timings);
+        for (Command command : commands) {
+            commandAction.addCommand(command);
         }
 
+        if (context.revisionsSaver != null) {
+            for (String commitId : commitsWithCommands) {
+                context.revisionsSaver.addProcessed(commitId);
+            }
+        }
+
+        timings.addTotalTime(System.currentTimeMillis() - start);
         int numCommands = commandAction.getNumCommands();
 
         if (numCommands > 0) {
@@ -133,7 +116,27 @@ public class YouTrackSCMListener extends SCMListener {
         build.addAction(new YouTrackSaveFixedIssues(fixedIssues));
     }
 
-    private Set<String> getIncludedProjects(List<Project> projects, YouTrackSite youTrackSite) {
+    /**
+     * Gets the projects saved with the last stable build.
+     *
+     * @return the projects, null if there are none.
+     */
+    private static List<Project> getSavedProjects(AbstractBuild<?, ?> build) {
+        AbstractBuild<?, ?> lastStableBuild = build.getProject().getLastStableBuild();
+        YouTrackSaveProjectShortNamesAction action = lastStableBuild != null ? lastStableBuild.getAction(YouTrackSaveProjectShortNamesAction.class) : null;
+        if (action == null) {
+            return null;
+        }
+        List<Project> projects = new ArrayList<Project>();
+        for (String shortName : action.getShortNames()) {
+            Project project = new Project();
+            project.setShortName(shortName);
+            projects.add(project);
+        }
+        return projects;
+    }
+
+    private static Set<String> getIncludedProjects(List<Project> projects, YouTrackSite youTrackSite) {
         String executeProjectLimits = youTrackSite.getExecuteProjectLimits();
         if (executeProjectLimits == null || executeProjectLimits.trim().equals("")) {
             HashSet<String> projectIds = new HashSet<String>();
@@ -154,154 +157,146 @@ public class YouTrackSCMListener extends SCMListener {
     }
 
     /**
-     * Executes the commands if execute commands is enabled;
+     * Adds the commands found in the message to the batch if execute commands is enabled.
      *
-     * @param listener       the listener.
-     * @param youTrackSite   YouTrack site.
-     * @param youTrackServer YouTrack server.
-     * @param user           user.
-     * @param projects       projects.
-     * @param fixedIssues    list to fill with fixed issues.
+     * @param context        the processing context of the build.
      * @param changeLogEntry the ChangeLogEntry.
      * @param msg            the message to parse.
-     * @return the list of commands tried to be executed.
+     * @param commandBatch   the batch to add the commands to.
+     * @return the number of commands found.
      */
-    List<Command> executeCommandsIfEnabled(BuildListener listener, YouTrackSite youTrackSite, YouTrackServer youTrackServer, User user, List<Project> projects, List<Issue> fixedIssues, ChangeLogSet.Entry changeLogEntry, String msg) {
-        List<Command> commands = new ArrayList<Command>();
-        if (youTrackSite.isCommandsEnabled()) {
-            String[] lines = msg.split("\n");
-
-            for (int i = 0; i < lines.length; i++) {
-                String line = lines[i];
-                if (line.contains("#")) {
-
-                    StringBuilder stringBuilder = new StringBuilder();
-                    for (Project project : projects) {
-                        stringBuilder.append("#").append(project.getShortName()).append("|");
-                    }
-                    if (stringBuilder.length() > 0) {
-                        stringBuilder.deleteCharAt(stringBuilder.length() - 1);
-                    }
-
-                    String comment = null;
-                    String issueStart = line.substring(line.indexOf("#") + 1);
-                    boolean isSilent = false;
-                    int hashPosition = line.indexOf("#");
-                    if (hashPosition != 0) {
-                        char charBefore = line.charAt(hashPosition - 1);
-                        if (charBefore == '!') {
-                            isSilent = true;
-                        }
-                    }
-
-                    if (i + 1 < lines.length) {
-                        String l = lines[i + 1];
-                        if (!l.contains("#")) {
-                            comment = l;
-                        }
-                    }
-
-                    Project p = null;
-                    for (Project project : projects) {
-                        if (issueStart.startsWith(project.getShortName() + "-")) {
-                            p = project;
-                        }
-                    }
-
-                    findIssueId(youTrackSite, youTrackServer, user, fixedIssues, changeLogEntry, comment, issueStart, p, listener, commands, isSilent);
+    int addCommandsIfEnabled(ProcessingContext context, ChangeLogSet.Entry changeLogEntry, String msg, CommandBatch commandBatch) {
+        int numCommands = 0;
+        if (context.commandsEnabled) {
+            CommitMessageScanner scanner = context.commandScanner.reset(msg);
+            while (scanner.next()) {
+                String address = null;
+                if (context.runAsEnabled) {
+                    address = context.getAddress(changeLogEntry.getAuthor());
                 }
+                boolean isSilent = context.silentCommands || scanner.isSilent();
+                commandBatch.addCommand(changeLogEntry.getCommitId(), scanner.getIssueId(), scanner.getCommand(), scanner.getComment(), address, isSilent);
+                numCommands++;
             }
         }
-        return commands;
+        return numCommands;
     }
 
-    private void findIssueId(YouTrackSite youTrackSite, YouTrackServer youTrackServer, User user, List<Issue> fixedIssues, ChangeLogSet.Entry next, String comment, String issueStart, Project p, BuildListener listener, List<Command> commands, boolean silent) {
-        if (p != null) {
-            Pattern projectPattern = Pattern.compile("(" + p.getShortName() + "-" + "(\\d+)" + ")( )?(.*)");
-
-            Matcher matcher = projectPattern.matcher(issueStart);
-            while (matcher.find()) {
-                if (matcher.groupCount() >= 1) {
-                    String issueId = p.getShortName() + "-" + matcher.group(2);
-                    User userByEmail = null;
-                    if (youTrackSite.isRunAsEnabled()) {
-                        String address = next.getAuthor().getProperty(Mailer.UserProperty.class).getAddress();
-                        userByEmail = youTrackServer.getUserByEmail(user, address);
-                        if (userByEmail == null) {
-                            listener.getLogger().println("Failed to find user with e-mail: " + address);
-                        }
-                    }
-
-                    String stateFieldName = "State";
-                    if (youTrackSite.getStateFieldName() != null && !youTrackSite.getStateFieldName().equals("")) {
-                        stateFieldName = youTrackSite.getStateFieldName();
-                    }
+    void addCommentIfEnabled(ProcessingContext context, String msg, CommandBatch commandBatch) {
+        if (context.commentEnabled) {
+            Matcher matcher = context.issueIdMatcher.matcher(msg);
+            if (matcher != null) {
+                while (matcher.find()) {
+                    String issueId = matcher.group(IssueIdMatcher.ISSUE_ID_GROUP);
+                    commandBatch.addComment(issueId, context.commentText);
+                }
+            }
+        }
+    }
 
-                    //Get the issue state, then apply command, and get the issue state again.
-                    //to know whether the command has been marked as fixed, instead of trying to
-                    //interpret the command. This means however that there is a possibility for
-                    //the user to change state between the before and the after call, so the after
-                    //state can be affected by something else than the command.
-                    Issue before = youTrackServer.getIssue(user, issueId, stateFieldName);
-                    String command = matcher.group(4);
-                    boolean isSilent = youTrackSite.isSilentCommands() || silent;
-                    Command cmd = youTrackServer.applyCommand(youTrackSite.getName(), user, new Issue(issueId), command, comment, userByEmail, !isSilent);
-                    if (cmd.getStatus() == Command.Status.OK) {
-                        listener.getLogger().println("Applied command: " + command + " to issue: " + issueId);
-                    } else {
-                        listener.getLogger().println("FAILED: Applying command: " + command + " to issue: " + issueId);
-                    }
-                    commands.add(cmd);
-                    Issue after = youTrackServer.getIssue(user, issueId, stateFieldName);
-
-                    Set<String> fixedValues = new HashSet<String>();
-                    if (youTrackSite.getFixedValues() != null && !youTrackSite.getFixedValues().equals("")) {
-                        String values = youTrackSite.getFixedValues();
-                        String[] fixedValueArray = values.split(",");
-                        for (String fixedValueFromArray : fixedValueArray) {
-                            if (!fixedValueFromArray.trim().equals("")) {
-                                fixedValues.add(fixedValueFromArray.trim());
-                            }
-                        }
-                    } else {
-                        fixedValues.add("Fixed");
-                    }
+    /**
+     * Everything needed for processing the change log entries of a build which does not depend on the entry, so it is
+     * only computed once per build.
+     */
+    static final class ProcessingContext {
+        /**
+         * Matches the issue ids of all projects, for comments.
+         */
+        final IssueIdMatcher issueIdMatcher;
+        /**
+         * Finds the commands for the projects to execute commands for, null if there are no such projects.
+         */
+        final CommitMessageScanner commandScanner;
+        final YoutrackProcessedRevisionsSaver revisionsSaver;
+        /**
+         * The text of the comments linking issues to the build.
+         */
+        final String commentText;
+        final boolean commentEnabled;
+        final boolean commandsEnabled;
+        final boolean runAsEnabled;
+        final boolean silentCommands;
+        final boolean trackCommits;
+        /**
+         * The method for getting the full commit message of a change log entry class, if it has one.
+         */
+        private final Map<Class<?>, Method> messageMethods = new HashMap<Class<?>, Method>();
+        /**
+         * E-mail addresses of the authors looked up.
+         */
+        private final Map<hudson.model.User, String> addresses = new HashMap<hudson.model.User, String>();
+
+        ProcessingContext(AbstractBuild<?, ?> build, YouTrackSite youTrackSite, List<Project> projects) {
+            //noinspection deprecation
+            this(youTrackSite, projects, youTrackSite.isCommentEnabled() ? build.getAbsoluteUrl() : null);
+        }
 
-                    if (before != null && after != null && !fixedValues.contains(before.getState()) && fixedValues.contains(after.getState())) {
-                        fixedIssues.add(after);
-                    }
+        /**
+         * @param buildUrl the absolute url of the build, used in the comments.
+         */
+        ProcessingContext(YouTrackSite youTrackSite, List<Project> projects, String buildUrl) {
+            commentEnabled = youTrackSite.isCommentEnabled();
+            commandsEnabled = youTrackSite.isCommandsEnabled();
+            runAsEnabled = youTrackSite.isRunAsEnabled();
+            silentCommands = youTrackSite.isSilentCommands();
+            trackCommits = youTrackSite.isTrackCommits();
+            commentText = commentEnabled ? "Related build: " + buildUrl : null;
+
+            Jenkins instance = Jenkins.getInstance();
+            YouTrackPlugin plugin = null;
+            if (instance != null) {
+                plugin = instance.getPlugin(YouTrackPlugin.class);
+            }
+            revisionsSaver = plugin != null ? plugin.getRevisionsSaver() : null;
 
+            //Build the issue id matchers once for all entries, instead of a pattern per project and entry.
+            issueIdMatcher = IssueIdMatcher.forProjects(projects);
+            List<Project> youtrackProjects = new ArrayList<Project>(projects.size());
+            Set<String> includedProjects = getIncludedProjects(projects, youTrackSite);
+            for (Project project : projects) {
+                if (includedProjects.contains(project.getShortName())) {
+                    youtrackProjects.add(project);
                 }
-
             }
-
+            commandScanner = CommitMessageScanner.create(IssueIdMatcher.forProjects(youtrackProjects));
         }
-    }
 
-    private List<Command> addCommentIfEnabled(AbstractBuild<?, ?> build, YouTrackSite youTrackSite, YouTrackServer youTrackServer, User user, List<Project> projects, String msg, BuildListener listener) {
-        List<Command> commands = new ArrayList<Command>();
-        if (youTrackSite.isCommentEnabled()) {
-            for (Project project1 : projects) {
-                String shortName = project1.getShortName();
-                Pattern projectPattern = Pattern.compile("(" + shortName + "-" + "(\\d+)" + ")");
-                Matcher matcher = projectPattern.matcher(msg);
-                while (matcher.find()) {
-                    if (matcher.groupCount() >= 1) {
-                        String issueId = shortName + "-" + matcher.group(2);
-                        //noinspection deprecation
-                        String commentText = "Related build: " + build.getAbsoluteUrl();
-                        Command comment = youTrackServer.comment(youTrackSite.getName(), user, new Issue(issueId), commentText, youTrackSite.getLinkVisibility(), youTrackSite.isSilentLinks());
-                        commands.add(comment);
-                        if (comment.getStatus() == Command.Status.OK) {
-                            listener.getLogger().println("Commented on " + issueId);
-                        } else {
-                            listener.getLogger().println("FAILED: Commented on " + issueId);
-                        }
+        /**
+         * Gets the message of a change log entry. For Git this is the full commit message instead of the first line.
+         */
+        String getMessage(ChangeLogSet.Entry entry) throws IllegalAccessException, InvocationTargetException {
+            Class<?> entryClass = entry.getClass();
+            Method getComment;
+            if (messageMethods.containsKey(entryClass)) {
+                getComment = messageMethods.get(entryClass);
+            } else {
+                getComment = null;
+                if (entryClass.getName().equals("hudson.plugins.git.GitChangeSet")) {
+                    try {
+                        getComment = entryClass.getMethod("getComment");
+                    } catch (NoSuchMethodException e) {
+                        getComment = null;
+                    } catch (SecurityException e) {
+                        throw new RuntimeException(e);
                     }
                 }
+                messageMethods.put(entryClass, getComment);
+            }
+            return getComment != null ? (String) getComment.invoke(entry) : entry.getMsg();
+        }
+
+        /**
+         * Gets the e-mail address of an author.
+         */
+        String getAddress(hudson.model.User author) {
+            if (addresses.containsKey(author)) {
+                return addresses.get(author);
             }
+            Mailer.UserProperty property = author.getProperty(Mailer.UserProperty.class);
+            String address = property != null ? property.getAddress() : null;
+            addresses.put(author, address);
+            return address;
         }
-        return commands;
     }
 
     @Override
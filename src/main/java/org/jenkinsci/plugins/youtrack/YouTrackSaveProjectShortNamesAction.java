@@ -12,6 +12,10 @@ import java.util.List;
  */
 public class YouTrackSaveProjectShortNamesAction extends InvisibleAction {
     private String shortNames;
+    /**
+     * Matcher for the issue ids of the projects, created when first used.
+     */
+    private transient IssueIdMatcher issueIdMatcher;
 
     public YouTrackSaveProjectShortNamesAction(List<Project> projects) {
         StringBuilder stringBuilder = new StringBuilder();
@@ -28,4 +32,11 @@ public class YouTrackSaveProjectShortNamesAction extends InvisibleAction {
     public List<String> getShortNames() {
         return Arrays.asList(Util.tokenize(shortNames, ","));
     }
+
+    public IssueIdMatcher getIssueIdMatcher() {
+        if (issueIdMatcher == null) {
+            issueIdMatcher = IssueIdMatcher.get(getShortNames());
+        }
+        return issueIdMatcher;
+    }
 }
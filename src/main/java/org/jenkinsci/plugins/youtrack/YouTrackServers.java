@@ -0,0 +1,123 @@
+package org.jenkinsci.plugins.youtrack;
+
+import org.jenkinsci.plugins.youtrack.youtrackapi.CachingYouTrackClient;
+import org.jenkinsci.plugins.youtrack.youtrackapi.JsonYouTrackServer;
+import org.jenkinsci.plugins.youtrack.youtrackapi.MetricsYouTrackClient;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackClient;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackServer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the {@link YouTrackClient} for each site. All callers share the client of a site, which talks to the
+ * server with the REST API selected for the site, and caches the read operations with {@link CachingYouTrackClient}.
+ * The calls reaching the server are measured by {@link MetricsYouTrackClient}.
+ * <p/>
+ * With {@link YouTrackSite#API_MODE_AUTO} the version of the server is asked for once, and the JSON API is used if
+ * the server has it. If the server does not answer, the legacy API is used, and the version is asked for again after
+ * {@link #DETECT_RETRY}.
+ */
+public class YouTrackServers {
+    private static final Logger LOGGER = Logger.getLogger(YouTrackServers.class.getName());
+
+    /**
+     * Time in milliseconds after which the API of a server which did not answer is detected again.
+     */
+    static final long DETECT_RETRY = TimeUnit.MINUTES.toMillis(Long.getLong(YouTrackServers.class.getName() + ".detectRetryMinutes", 5));
+
+    /**
+     * The clients keyed by name, url and API mode of the site.
+     */
+    private static final ConcurrentMap<String, YouTrackClient> CLIENTS = new ConcurrentHashMap<String, YouTrackClient>();
+    /**
+     * Times after which to detect the API again, keyed like the clients, for the sites where detection failed.
+     */
+    private static final ConcurrentMap<String, Long> DETECT_AFTER = new ConcurrentHashMap<String, Long>();
+
+    private YouTrackServers() {
+    }
+
+    /**
+     * Gets the client for a site.
+     *
+     * @param youTrackSite the site.
+     * @return the client.
+     */
+    public static YouTrackClient get(YouTrackSite youTrackSite) {
+        String url = youTrackSite.getUrl();
+        String apiMode = youTrackSite.getApiMode();
+        String key = youTrackSite.getName() + "\n" + url + "\n" + apiMode;
+        YouTrackClient client = CLIENTS.get(key);
+        if (client != null) {
+            Long detectAfter = DETECT_AFTER.get(key);
+            if (detectAfter == null || System.currentTimeMillis() < detectAfter || !DETECT_AFTER.remove(key, detectAfter)) {
+                return client;
+            }
+            //Only the caller which removed the deadline detects again, the others keep using the legacy client.
+            YouTrackServer server = detectServer(url);
+            if (server == null) {
+                DETECT_AFTER.put(key, System.currentTimeMillis() + DETECT_RETRY);
+                return client;
+            }
+            YouTrackClient detected = wrap(youTrackSite, server);
+            return CLIENTS.replace(key, client, detected) ? detected : CLIENTS.get(key);
+        }
+
+        YouTrackServer server;
+        boolean detectAgain = false;
+        if (apiMode.equals(YouTrackSite.API_MODE_LEGACY)) {
+            server = new YouTrackServer(url);
+        } else if (apiMode.equals(YouTrackSite.API_MODE_JSON)) {
+            server = new JsonYouTrackServer(url);
+        } else {
+            server = detectServer(url);
+            if (server == null) {
+                server = new YouTrackServer(url);
+                detectAgain = true;
+            }
+        }
+
+        client = wrap(youTrackSite, server);
+        YouTrackClient existing = CLIENTS.putIfAbsent(key, client);
+        if (existing != null) {
+            return existing;
+        }
+        if (detectAgain) {
+            DETECT_AFTER.put(key, System.currentTimeMillis() + DETECT_RETRY);
+        }
+        return client;
+    }
+
+    private static YouTrackClient wrap(YouTrackSite youTrackSite, YouTrackServer server) {
+        return new CachingYouTrackClient(new MetricsYouTrackClient(server, youTrackSite.getName()));
+    }
+
+    /**
+     * Forgets all clients and thereby their cached results and detected APIs, e.g. when the site configuration has
+     * changed.
+     */
+    public static void clear() {
+        CLIENTS.clear();
+        DETECT_AFTER.clear();
+    }
+
+    /**
+     * Asks the server for its version to find out whether it has the JSON API.
+     *
+     * @return the server using the JSON API if the server has it, else the legacy API. Null if the server did not
+     *         answer.
+     */
+    private static YouTrackServer detectServer(String url) {
+        String[] version = new JsonYouTrackServer(url).getVersion();
+        if (version == null) {
+            LOGGER.fine("Could not get version of " + url + ", using the legacy REST API");
+            return null;
+        }
+        boolean jsonApi = JsonYouTrackServer.isSupported(version);
+        LOGGER.fine("Using the " + (jsonApi ? "JSON" : "legacy") + " REST API for " + url);
+        return jsonApi ? new JsonYouTrackServer(url) : new YouTrackServer(url);
+    }
+}
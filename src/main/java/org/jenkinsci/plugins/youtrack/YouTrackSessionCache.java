@@ -0,0 +1,109 @@
+package org.jenkinsci.plugins.youtrack;
+
+import org.jenkinsci.plugins.youtrack.youtrackapi.User;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackClient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Caches the logged in user for each YouTrack site, so the session cookies can be shared between builds and
+ * requests instead of logging in for every operation.
+ * <p/>
+ * A session is renewed when it is older than {@link #SESSION_TTL}, or when the server rejects it.
+ */
+public class YouTrackSessionCache {
+    private static final Logger LOGGER = Logger.getLogger(YouTrackSessionCache.class.getName());
+
+    /**
+     * Max age of a session in milliseconds before logging in again.
+     */
+    static final long SESSION_TTL = TimeUnit.MINUTES.toMillis(Long.getLong(YouTrackSessionCache.class.getName() + ".ttlMinutes", 30));
+
+    /**
+     * The sessions keyed by url and credentials of the site.
+     */
+    private static final ConcurrentMap<String, Session> SESSIONS = new ConcurrentHashMap<String, Session>();
+
+    private YouTrackSessionCache() {
+    }
+
+    /**
+     * Gets a logged in user for the site, logging in if there is no valid session.
+     *
+     * @param youTrackServer the server to log in to.
+     * @param youTrackSite   the site with the credentials.
+     * @return the user, null or not logged in if login failed.
+     */
+    public static User getUser(YouTrackClient youTrackServer, YouTrackSite youTrackSite) {
+        String key = youTrackSite.getUrl() + "\n" + youTrackSite.getUsername() + "\n" + youTrackSite.getPassword();
+        Session session = SESSIONS.get(key);
+        if (session == null) {
+            session = new Session(youTrackSite.getUsername(), youTrackSite.getPassword());
+            Session existing = SESSIONS.putIfAbsent(key, session);
+            if (existing != null) {
+                session = existing;
+            }
+        }
+        return session.getUser(youTrackServer);
+    }
+
+    /**
+     * Forgets all sessions, e.g. when the site configuration has changed.
+     */
+    public static void clear() {
+        SESSIONS.clear();
+    }
+
+    /**
+     * The session of a single site.
+     */
+    private static class Session implements User.Reauthenticator {
+        private final String username;
+        private final String password;
+        private User user;
+        private long loginTime;
+        private YouTrackClient youTrackServer;
+
+        Session(String username, String password) {
+            this.username = username;
+            this.password = password;
+        }
+
+        synchronized User getUser(YouTrackClient youTrackServer) {
+            this.youTrackServer = youTrackServer;
+            if (user == null || !user.isLoggedIn() || System.currentTimeMillis() - loginTime > SESSION_TTL) {
+                User newUser = youTrackServer.login(username, password);
+                if (newUser == null || !newUser.isLoggedIn()) {
+                    user = null;
+                    return newUser;
+                }
+                newUser.setReauthenticator(this);
+                user = newUser;
+                loginTime = System.currentTimeMillis();
+            }
+            return user;
+        }
+
+        public synchronized boolean reauthenticate(User expired, int generation) {
+            if (expired.getSessionGeneration() != generation) {
+                //Another thread already renewed the session.
+                return expired.isLoggedIn();
+            }
+            LOGGER.fine("YouTrack session for " + username + " was rejected, logging in again");
+            User newUser = youTrackServer.login(username, password);
+            if (newUser == null || !newUser.isLoggedIn()) {
+                //Only now is the session known to be lost, the next caller of getUser logs in again.
+                expired.setLoggedIn(false);
+                return false;
+            }
+            expired.renewSession(newUser.getCookies());
+            if (user == expired) {
+                loginTime = System.currentTimeMillis();
+            }
+            return true;
+        }
+    }
+}
@@ -24,13 +24,36 @@ public class YouTrackSite {
     private transient String project;
     private transient String executeProjectLimits;
     private boolean trackCommits;
+    /**
+     * The REST API used for the site, one of {@link #API_MODE_AUTO}, {@link #API_MODE_LEGACY} or
+     * {@link #API_MODE_JSON}. Null means legacy, so sites configured before the setting existed keep their API.
+     */
+    private String apiMode;
+
+    /**
+     * Use the JSON API if the version of the server has it.
+     */
+    public static final String API_MODE_AUTO = "auto";
+    /**
+     * Always use the legacy XML REST API.
+     */
+    public static final String API_MODE_LEGACY = "legacy";
+    /**
+     * Use the JSON API for reading issues and projects.
+     */
+    public static final String API_MODE_JSON = "json";
 
-    @DataBoundConstructor
     public YouTrackSite(String name, String username, String password, String url) {
+        this(name, username, password, url, null);
+    }
+
+    @DataBoundConstructor
+    public YouTrackSite(String name, String username, String password, String url, String apiMode) {
         this.username = username;
         this.password = password;
         this.url = url;
         this.name = name;
+        this.apiMode = apiMode;
     }
 
     public static YouTrackSite get(AbstractProject<?, ?> project) {
@@ -182,4 +205,12 @@ public class YouTrackSite {
     public boolean isTrackCommits() {
         return trackCommits;
     }
+
+    public String getApiMode() {
+        return apiMode == null || apiMode.equals("") ? API_MODE_LEGACY : apiMode;
+    }
+
+    public void setApiMode(String apiMode) {
+        this.apiMode = apiMode;
+    }
 }
@@ -109,8 +109,8 @@ public class YoutrackCreateIssueOnBuildFailure extends Notifier {
         }
 
         if (shouldCreateIssue(build)) {
-            YouTrackServer server = new YouTrackServer(youTrackSite.getUrl());
-            User user = server.login(youTrackSite.getUsername(), youTrackSite.getPassword());
+            YouTrackClient server = YouTrackServers.get(youTrackSite);
+            User user = YouTrackSessionCache.getUser(server, youTrackSite);
             if (user == null) {
                 listener.getLogger().println("Could not login user to YouTrack");
                 return true;
@@ -181,11 +181,14 @@ public class YoutrackCreateIssueOnBuildFailure extends Notifier {
             YouTrackSite youTrackSite = YouTrackSite.get(project);
             AutoCompletionCandidates autoCompletionCandidates = new AutoCompletionCandidates();
             if(youTrackSite != null) {
-                YouTrackServer youTrackServer = new YouTrackServer(youTrackSite.getUrl());
-                User user = youTrackServer.login(youTrackSite.getUsername(), youTrackSite.getPassword());
+                YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+                User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
                 if(user != null) {
-                    List<Project> groups = youTrackServer.getProjects(user);
-                    for (Project youtrackProject : groups) {
+                    List<Project> projects = YouTrackProjectCache.getProjects(youTrackServer, youTrackSite, user);
+                    if (projects == null) {
+                        return autoCompletionCandidates;
+                    }
+                    for (Project youtrackProject : projects) {
                         if(youtrackProject.getShortName().toLowerCase().contains(value.toLowerCase())) {
                             autoCompletionCandidates.add(youtrackProject.getShortName());
                         }
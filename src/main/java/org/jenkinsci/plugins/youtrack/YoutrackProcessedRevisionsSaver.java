@@ -4,66 +4,101 @@ import jenkins.model.Jenkins;
 import org.apache.log4j.Logger;
 
 import java.io.*;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
- * This is a class to persist the commit ids processed by the YouTrack plugin for Jenkins
+ * This is a class to persist the commit ids processed by the YouTrack plugin for Jenkins.
+ * <p/>
+ * The ids are kept in a {@link ProcessedRevisionStore}. Ids from the text file used by earlier versions are imported
+ * the first time the store is opened.
  */
 public class YoutrackProcessedRevisionsSaver {
     private static final Logger LOGGER = Logger.getLogger(YoutrackProcessedRevisionsSaver.class.getName());
 
+    /**
+     * Base name of the files of the store.
+     */
+    static final String NAME = "youtrack-processed";
 
-    public Set<String> processedIds;
-    private final File file;
+    private final File directory;
+    private ProcessedRevisionStore store;
 
     public YoutrackProcessedRevisionsSaver() {
-        file = new File(Jenkins.getInstance().getRootDir(), "youtrack-processed");
-        load();
+        this(Jenkins.getInstance().getRootDir());
+    }
 
+    YoutrackProcessedRevisionsSaver(File directory) {
+        this.directory = directory;
+        load();
     }
 
     private void load() {
-        processedIds = new HashSet<String>();
-        if (!file.exists()) {
+        try {
+            store = new ProcessedRevisionStore(directory, NAME);
+        } catch (IOException e) {
+            LOGGER.error("Could not open youtrack processed store", e);
+            return;
+        }
+
+        File legacyFile = new File(directory, NAME);
+        if (legacyFile.exists()) {
             try {
-                boolean newFile = file.createNewFile();
-                if (!newFile) {
-                    LOGGER.error("Could not create youtrack processed file");
-                }
+                migrate(legacyFile);
             } catch (IOException e) {
-                LOGGER.error("Could not create youtrack processed file", e);
+                LOGGER.error("Could not migrate youtrack processed file", e);
             }
-        } else {
-            try {
-                FileInputStream fileInputStream = new FileInputStream(file);
-                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(fileInputStream));
-                String l;
-                while ((l = bufferedReader.readLine()) != null) {
-                    processedIds.add(l);
+        }
+    }
+
+    /**
+     * Imports the ids from the text file, with one id per line, used by earlier versions, and renames the file when
+     * done. If interrupted, the import is just done again.
+     */
+    private void migrate(File legacyFile) throws IOException {
+        ProcessedRevisionStore.Import anImport = store.startImport(legacyFile.lastModified());
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(legacyFile), "UTF-8"));
+        int imported = 0;
+        try {
+            String l;
+            while ((l = bufferedReader.readLine()) != null) {
+                if (!l.trim().equals("")) {
+                    anImport.add(l.trim());
+                    imported++;
                 }
-                fileInputStream.close();
-            } catch (FileNotFoundException e) {
-                LOGGER.error("Could not load youtrack processed file", e);
-            } catch (IOException e) {
-                LOGGER.error("Could not load youtrack processed file", e);
             }
+            anImport.commit();
+        } finally {
+            bufferedReader.close();
+            anImport.discard();
         }
 
+        File migratedFile = new File(directory, NAME + ".migrated");
+        if (!legacyFile.renameTo(migratedFile) && !legacyFile.delete()) {
+            LOGGER.error("Could not rename youtrack processed file after migrating it");
+        }
+        LOGGER.info("Migrated " + imported + " processed revisions to the youtrack processed store");
     }
 
-    public synchronized boolean isProcessed(String revisionId) {
-        return processedIds.contains(revisionId);
+    public boolean isProcessed(String revisionId) {
+        return store != null && store.contains(revisionId);
     }
 
-    public synchronized void addProcessed(String revisionId) {
-        processedIds.add(revisionId);
+    public void addProcessed(String revisionId) {
+        if (store != null) {
+            store.add(revisionId);
+        }
+    }
+
+    /**
+     * Writes the ids not yet written and closes the store.
+     */
+    public void close() {
+        if (store == null) {
+            return;
+        }
         try {
-            FileWriter fileWriter = new FileWriter(file, true);
-            fileWriter.append(revisionId).append("\n");
-            fileWriter.close();
+            store.close();
         } catch (IOException e) {
-            LOGGER.error("Could not write to youtrack processed file", e);
+            LOGGER.error("Could not close youtrack processed store", e);
         }
     }
 }
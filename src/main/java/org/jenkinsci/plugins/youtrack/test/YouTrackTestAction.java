@@ -3,9 +3,11 @@ package org.jenkinsci.plugins.youtrack.test;
 import hudson.tasks.junit.CaseResult;
 import hudson.tasks.junit.TestAction;
 import org.jenkinsci.plugins.youtrack.Command;
+import org.jenkinsci.plugins.youtrack.YouTrackServers;
+import org.jenkinsci.plugins.youtrack.YouTrackSessionCache;
 import org.jenkinsci.plugins.youtrack.YouTrackSite;
 import org.jenkinsci.plugins.youtrack.youtrackapi.User;
-import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackServer;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackClient;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
@@ -65,8 +67,8 @@ public class YouTrackTestAction extends TestAction {
     public void doCreateIssue(StaplerRequest req, StaplerResponse resp)
             throws ServletException, IOException {
         YouTrackSite youTrackSite = YouTrackSite.get(data.getBuild().getProject());
-        YouTrackServer youTrackServer = new YouTrackServer(youTrackSite.getUrl());
-        User mainUser = youTrackServer.login(youTrackSite.getUsername(), youTrackSite.getPassword());
+        YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+        User mainUser = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
 
         Command issue = youTrackServer.createIssue(youTrackSite.getName(), mainUser, youTrackSite.getProject(), "Test case: " + id, careResult.getErrorStackTrace(), null);
         youtrackIssueId = issue.getIssueId();
@@ -0,0 +1,299 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import org.jenkinsci.plugins.youtrack.Command;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the results of the read operations of another client which rarely change, like groups, fields and bundles.
+ * Issues and projects are not cached, and all other operations are passed on.
+ * <p/>
+ * Results are cached per user for a time set with the system property
+ * <code>org.jenkinsci.plugins.youtrack.youtrackapi.CachingYouTrackClient.&lt;operation&gt;.ttlSeconds</code>, e.g.
+ * <code>...CachingYouTrackClient.getGroups.ttlSeconds</code>, defaulting to <code>...CachingYouTrackClient.ttlSeconds</code>
+ * (300). A time of 0 disables caching of the operation. Failed operations, returning null, are not cached.
+ * <p/>
+ * Users looked up by e-mail are kept in a separate cache of at most <code>...getUserByEmail.maxSize</code> (1000)
+ * addresses, which also remembers addresses the server does not know for
+ * <code>...getUserByEmail.negativeTtlSeconds</code> (60). Failed lookups are not cached.
+ * When an address is not cached, all users are fetched with {@link YouTrackClient#getUsersByEmail(User, int)} once
+ * per time to live if the server supports it, so runs as the authors of many commits need no lookup per address.
+ */
+public class CachingYouTrackClient implements YouTrackClient {
+    private static final String PROPERTY_PREFIX = CachingYouTrackClient.class.getName() + ".";
+    /**
+     * Default time in milliseconds a result is cached.
+     */
+    static final long DEFAULT_TTL = TimeUnit.SECONDS.toMillis(Long.getLong(PROPERTY_PREFIX + "ttlSeconds", 300));
+
+    private static final long GROUPS_TTL = ttl("getGroups");
+    private static final long FIELDS_TTL = ttl("getFields");
+    private static final long STATE_BUNDLE_TTL = ttl("getStateBundle");
+    private static final long BUILD_BUNDLES_TTL = ttl("getBuildBundles");
+    private static final long USER_BY_EMAIL_TTL = ttl("getUserByEmail");
+    /**
+     * Time in milliseconds an unknown e-mail address is cached.
+     */
+    private static final long UNKNOWN_EMAIL_TTL = TimeUnit.SECONDS.toMillis(Long.getLong(PROPERTY_PREFIX + "getUserByEmail.negativeTtlSeconds", 60));
+    /**
+     * Max number of e-mail addresses cached.
+     */
+    private static final int MAX_USERS_BY_EMAIL = Integer.getInteger(PROPERTY_PREFIX + "getUserByEmail.maxSize", 1000);
+
+    private final YouTrackClient delegate;
+    private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+    private final UserCache usersByEmail = new UserCache(MAX_USERS_BY_EMAIL);
+
+    public CachingYouTrackClient(YouTrackClient delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the client the operations are passed on to.
+     */
+    public YouTrackClient getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Forgets all cached results.
+     */
+    public void invalidate() {
+        cache.clear();
+        usersByEmail.clear();
+    }
+
+    private static long ttl(String operation) {
+        Long seconds = Long.getLong(PROPERTY_PREFIX + operation + ".ttlSeconds");
+        return seconds == null ? DEFAULT_TTL : TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    /**
+     * Gets a cached result, or loads and caches it.
+     *
+     * @param operation the name of the operation.
+     * @param user      the user the operation is performed as.
+     * @param argument  the argument of the operation, null if none.
+     * @param ttl       the time in milliseconds to cache the result.
+     * @param loader    performs the operation.
+     * @return the result.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T get(String operation, User user, String argument, long ttl, Loader<T> loader) {
+        if (ttl <= 0 || user == null) {
+            return loader.load();
+        }
+        String key = operation + "\n" + user.getUsername() + "\n" + argument;
+        Entry entry = cache.get(key);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.expires > now) {
+            return (T) entry.value;
+        }
+        T value = loader.load();
+        if (value != null) {
+            cache.put(key, new Entry(value, now + ttl));
+        } else if (entry != null) {
+            cache.remove(key, entry);
+        }
+        return value;
+    }
+
+    public List<Group> getGroups(final User user) {
+        return get("getGroups", user, null, GROUPS_TTL, new Loader<List<Group>>() {
+            public List<Group> load() {
+                return delegate.getGroups(user);
+            }
+        });
+    }
+
+    public StateBundle getStateBundleWithName(final User user, final String stateBundleName) {
+        return get("getStateBundleWithName", user, stateBundleName, STATE_BUNDLE_TTL, new Loader<StateBundle>() {
+            public StateBundle load() {
+                return delegate.getStateBundleWithName(user, stateBundleName);
+            }
+        });
+    }
+
+    public StateBundle getStateBundleForField(final User user, final String fieldName) {
+        return get("getStateBundleForField", user, fieldName, STATE_BUNDLE_TTL, new Loader<StateBundle>() {
+            public StateBundle load() {
+                return delegate.getStateBundleForField(user, fieldName);
+            }
+        });
+    }
+
+    public List<Field> getFields(final User user) {
+        return get("getFields", user, null, FIELDS_TTL, new Loader<List<Field>>() {
+            public List<Field> load() {
+                return delegate.getFields(user);
+            }
+        });
+    }
+
+    /**
+     * Projects are not cached here, as they are cached with a fallback for when YouTrack is down by
+     * {@link org.jenkinsci.plugins.youtrack.YouTrackProjectCache}.
+     */
+    public List<Project> getProjects(User user) {
+        return delegate.getProjects(user);
+    }
+
+    public User getUserByEmail(User user, String email) throws IOException {
+        if (USER_BY_EMAIL_TTL <= 0 || user == null || email == null) {
+            return delegate.getUserByEmail(user, email);
+        }
+        String prefix = user.getUsername() + "\n";
+        String key = prefix + email.toLowerCase(Locale.ENGLISH);
+        long now = System.currentTimeMillis();
+        Entry entry = usersByEmail.get(key, now);
+        if (entry != null) {
+            return (User) entry.value;
+        }
+
+        if (usersByEmail.startPreload(user.getUsername(), now + USER_BY_EMAIL_TTL)) {
+            Map<String, User> users = delegate.getUsersByEmail(user, MAX_USERS_BY_EMAIL);
+            if (users != null) {
+                for (Map.Entry<String, User> found : users.entrySet()) {
+                    usersByEmail.put(prefix + found.getKey(), new Entry(found.getValue(), now + USER_BY_EMAIL_TTL));
+                }
+                //All users have just been fetched, so the address is unknown if it was not among them.
+                User found = users.get(email.toLowerCase(Locale.ENGLISH));
+                usersByEmail.put(key, new Entry(found, now + (found != null ? USER_BY_EMAIL_TTL : UNKNOWN_EMAIL_TTL)));
+                return found;
+            }
+        }
+
+        //A failed lookup throws, so it is not cached, and only addresses the server does not know are cached as unknown.
+        User found = delegate.getUserByEmail(user, email);
+        usersByEmail.put(key, new Entry(found, now + (found != null ? USER_BY_EMAIL_TTL : UNKNOWN_EMAIL_TTL)));
+        return found;
+    }
+
+    public Map<String, User> getUsersByEmail(User user, int max) {
+        return delegate.getUsersByEmail(user, max);
+    }
+
+    public List<BuildBundle> getBuildBundles(final User user) {
+        return get("getBuildBundles", user, null, BUILD_BUNDLES_TTL, new Loader<List<BuildBundle>>() {
+            public List<BuildBundle> load() {
+                return delegate.getBuildBundles(user);
+            }
+        });
+    }
+
+    public Command createIssue(String siteName, User user, String project, String title, String description, String command) {
+        return delegate.createIssue(siteName, user, project, title, description, command);
+    }
+
+    public Command comment(String siteName, User user, Issue issue, String comment, String group, boolean silent) {
+        return delegate.comment(siteName, user, issue, comment, group, silent);
+    }
+
+    public Command applyCommand(String siteName, User user, Issue issue, String command, String comment, User runAs, boolean notify) {
+        return delegate.applyCommand(siteName, user, issue, command, comment, runAs, notify);
+    }
+
+    public User login(String username, String password) {
+        return delegate.login(username, password);
+    }
+
+    public Command addBuildToBundle(String siteName, User user, String bundleName, String buildName) {
+        return delegate.addBuildToBundle(siteName, user, bundleName, buildName);
+    }
+
+    public Issue getIssue(User user, String issueId, String stateField) {
+        return delegate.getIssue(user, issueId, stateField);
+    }
+
+    public Issue getIssueState(User user, String issueId, String stateField) {
+        return delegate.getIssueState(user, issueId, stateField);
+    }
+
+    public Map<String, Issue> getIssues(User user, Collection<String> issueIds, String stateField) {
+        return delegate.getIssues(user, issueIds, stateField);
+    }
+
+    public Map<String, Issue> getIssueStates(User user, Collection<String> issueIds, String stateField) {
+        return delegate.getIssueStates(user, issueIds, stateField);
+    }
+
+    public String[] getVersion() {
+        return delegate.getVersion();
+    }
+
+    /**
+     * Performs a cached operation.
+     */
+    private interface Loader<T> {
+        T load();
+    }
+
+    /**
+     * Least recently used users by e-mail address, including unknown addresses with a null user.
+     */
+    private static class UserCache {
+        private final Map<String, Entry> entries;
+        /**
+         * Time until which no preload is tried again, keyed by the username of the logged in user.
+         */
+        private final Map<String, Long> preloads = new HashMap<String, Long>();
+
+        UserCache(final int maxSize) {
+            entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachingYouTrackClient.Entry> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized Entry get(String key, long now) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expires <= now) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        synchronized void put(String key, Entry entry) {
+            entries.put(key, entry);
+        }
+
+        /**
+         * Checks whether all users should be fetched, which is tried once per time to live whether or not it works.
+         */
+        synchronized boolean startPreload(String username, long until) {
+            Long preloadedUntil = preloads.get(username);
+            if (preloadedUntil != null && preloadedUntil > System.currentTimeMillis()) {
+                return false;
+            }
+            preloads.put(username, until);
+            return true;
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            preloads.clear();
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expires;
+
+        Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
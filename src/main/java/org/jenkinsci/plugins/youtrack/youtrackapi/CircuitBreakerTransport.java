@@ -0,0 +1,233 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A transport which stops sending requests to a YouTrack server which is down, so builds fail fast instead of each
+ * waiting for timeouts.
+ * <p/>
+ * Each server, keyed by protocol, host and port, has a circuit breaker. It opens after {@link #FAILURE_THRESHOLD}
+ * consecutive failures, where a failure is an I/O error, e.g. a timeout, or a 5xx response. Requests not sent because
+ * all connections to the server were in use do not count. While open, requests fail
+ * at once with a {@link CircuitOpenException}, and the server is probed in the background with a GET request. The
+ * breaker closes when the server answers a probe. The time between probes starts at {@link #OPEN_TIME} and is doubled
+ * for every failed probe, up to {@link #MAX_OPEN_TIME}.
+ */
+public class CircuitBreakerTransport implements Transport {
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreakerTransport.class.getName());
+
+    /**
+     * Number of consecutive failures opening the breaker.
+     */
+    static final int FAILURE_THRESHOLD = Integer.getInteger(CircuitBreakerTransport.class.getName() + ".failureThreshold", 5);
+    /**
+     * Time in milliseconds before the first probe.
+     */
+    static final long OPEN_TIME = TimeUnit.SECONDS.toMillis(Long.getLong(CircuitBreakerTransport.class.getName() + ".openSeconds", 30));
+    /**
+     * Max time in milliseconds between probes.
+     */
+    static final long MAX_OPEN_TIME = TimeUnit.SECONDS.toMillis(Long.getLong(CircuitBreakerTransport.class.getName() + ".maxOpenSeconds", 600));
+
+    /**
+     * The shared instance.
+     */
+    private static final CircuitBreakerTransport INSTANCE = new CircuitBreakerTransport(HttpTransport.getDefault());
+
+    private static final ScheduledExecutorService PROBES = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "YouTrack server probe");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Transport transport;
+    /**
+     * Time in milliseconds before the first probe.
+     */
+    private final long firstProbeDelay;
+    /**
+     * The breakers keyed by protocol, host and port of the server.
+     */
+    private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<String, Breaker>();
+
+    public CircuitBreakerTransport(Transport transport) {
+        this(transport, OPEN_TIME);
+    }
+
+    CircuitBreakerTransport(Transport transport, long firstProbeDelay) {
+        this.transport = transport;
+        this.firstProbeDelay = firstProbeDelay;
+    }
+
+    /**
+     * @return the transport shared by all servers, using the default {@link HttpTransport}.
+     */
+    public static CircuitBreakerTransport getDefault() {
+        return INSTANCE;
+    }
+
+    public Response execute(Request request) throws IOException {
+        Breaker breaker = getBreaker(request.getUrl());
+        breaker.checkClosed();
+        if (request.getMethod().equals("GET")) {
+            breaker.probeUrl = request.getUrl();
+        }
+
+        Response response;
+        try {
+            response = transport.execute(request);
+        } catch (HttpTransport.NoFreeConnectionException e) {
+            //The request was never sent, so it says nothing about the server.
+            throw e;
+        } catch (IOException e) {
+            breaker.onFailure();
+            throw e;
+        } catch (RuntimeException e) {
+            breaker.onFailure();
+            throw e;
+        }
+        if (isServerError(response.getStatus())) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+        return response;
+    }
+
+    /**
+     * Checks whether requests to the server at the given url currently fail fast.
+     *
+     * @param url any url of the server.
+     * @return true if the breaker of the server is open.
+     */
+    public boolean isOpen(String url) {
+        try {
+            Breaker breaker = breakers.get(getKey(url));
+            return breaker != null && breaker.isOpen();
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
+    private Breaker getBreaker(String url) throws MalformedURLException {
+        String key = getKey(url);
+        Breaker breaker = breakers.get(key);
+        if (breaker == null) {
+            breaker = new Breaker(key);
+            Breaker existing = breakers.putIfAbsent(key, breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    private static String getKey(String url) throws MalformedURLException {
+        URL parsed = new URL(url);
+        return parsed.getProtocol() + "://" + parsed.getHost() + ":" + parsed.getPort();
+    }
+
+    private static boolean isServerError(int status) {
+        return status >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    /**
+     * The breaker of a single server.
+     */
+    private class Breaker {
+        private final String key;
+        private int failures;
+        private boolean open;
+        private long openTime;
+        /**
+         * Url of a GET request recently sent to the server, used for probing.
+         */
+        private volatile String probeUrl;
+
+        Breaker(String key) {
+            this.key = key;
+            this.probeUrl = key + "/";
+        }
+
+        synchronized boolean isOpen() {
+            return open;
+        }
+
+        synchronized void checkClosed() throws CircuitOpenException {
+            if (open) {
+                throw new CircuitOpenException("YouTrack server " + key + " is unavailable, requests are suspended until it answers again");
+            }
+        }
+
+        synchronized void onSuccess() {
+            failures = 0;
+        }
+
+        synchronized void onFailure() {
+            failures++;
+            if (!open && failures >= FAILURE_THRESHOLD) {
+                open = true;
+                openTime = firstProbeDelay;
+                LOGGER.warning("YouTrack server " + key + " failed " + failures + " times in a row, suspending requests");
+                scheduleProbe();
+            }
+        }
+
+        private void scheduleProbe() {
+            PROBES.schedule(new Runnable() {
+                public void run() {
+                    probe();
+                }
+            }, openTime, TimeUnit.MILLISECONDS);
+        }
+
+        private void probe() {
+            boolean available = false;
+            try {
+                Response response = transport.execute(new Request("GET", probeUrl));
+                try {
+                    available = !isServerError(response.getStatus());
+                } finally {
+                    response.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Probe of YouTrack server " + key + " failed", e);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Probe of YouTrack server " + key + " failed", e);
+            }
+
+            synchronized (this) {
+                if (available) {
+                    open = false;
+                    failures = 0;
+                    LOGGER.info("YouTrack server " + key + " is available again, resuming requests");
+                } else {
+                    openTime = Math.min(MAX_OPEN_TIME, openTime * 2);
+                    scheduleProbe();
+                }
+            }
+        }
+    }
+
+    /**
+     * Thrown when a request is not sent because the server is considered down.
+     */
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+}
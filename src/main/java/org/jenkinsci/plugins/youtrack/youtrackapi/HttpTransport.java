@@ -0,0 +1,145 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The default {@link Transport}, based on {@link HttpURLConnection}.
+ * <p/>
+ * Connections are kept alive by the keep-alive cache of the JDK, which only reuses a connection when the response
+ * has been fully read and closed, which {@link Transport.Response#close()} takes care of. The number of concurrent
+ * requests, and thereby the number of open connections, to a single YouTrack server is limited by a semaphore per
+ * server.
+ */
+public class HttpTransport implements Transport {
+    /**
+     * Connect timeout in milliseconds.
+     */
+    public static final int CONNECT_TIMEOUT = Integer.getInteger(HttpTransport.class.getName() + ".connectTimeout", 10000);
+    /**
+     * Read timeout in milliseconds.
+     */
+    public static final int READ_TIMEOUT = Integer.getInteger(HttpTransport.class.getName() + ".readTimeout", 60000);
+    /**
+     * Max number of concurrent requests per YouTrack server.
+     */
+    public static final int MAX_CONNECTIONS_PER_SITE = Integer.getInteger(HttpTransport.class.getName() + ".maxConnectionsPerSite", 8);
+
+    /**
+     * The shared instance.
+     */
+    private static final HttpTransport INSTANCE = new HttpTransport(CONNECT_TIMEOUT, READ_TIMEOUT, MAX_CONNECTIONS_PER_SITE);
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxConnectionsPerSite;
+    /**
+     * Concurrency limits keyed by protocol, host and port of the server.
+     */
+    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<String, Semaphore>();
+
+    public HttpTransport(int connectTimeout, int readTimeout, int maxConnectionsPerSite) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxConnectionsPerSite = maxConnectionsPerSite;
+    }
+
+    /**
+     * @return the transport shared by all servers.
+     */
+    public static HttpTransport getDefault() {
+        return INSTANCE;
+    }
+
+    public Response execute(Request request) throws IOException {
+        URL url = new URL(request.getUrl());
+        final Semaphore semaphore = getPermits(url);
+        try {
+            if (!semaphore.tryAcquire(connectTimeout + readTimeout, TimeUnit.MILLISECONDS)) {
+                throw new NoFreeConnectionException("Timed out waiting for a free connection to " + url.getHost());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NoFreeConnectionException("Interrupted while waiting for a free connection to " + url.getHost());
+        }
+
+        boolean released = false;
+        try {
+            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setConnectTimeout(connectTimeout);
+            urlConnection.setReadTimeout(readTimeout);
+            urlConnection.setUseCaches(false);
+            urlConnection.setRequestMethod(request.getMethod());
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            if (request.getBody() != null) {
+                urlConnection.setDoOutput(true);
+                byte[] bytes = request.getBody().getBytes("UTF-8");
+                urlConnection.setFixedLengthStreamingMode(bytes.length);
+                OutputStream outputStream = urlConnection.getOutputStream();
+                try {
+                    outputStream.write(bytes);
+                } finally {
+                    outputStream.close();
+                }
+            }
+
+            int responseCode = urlConnection.getResponseCode();
+            InputStream body = responseCode >= HttpURLConnection.HTTP_BAD_REQUEST ? urlConnection.getErrorStream() : urlConnection.getInputStream();
+
+            released = true;
+            return new Response(responseCode, urlConnection.getHeaderFields(), body) {
+                private boolean closed;
+
+                @Override
+                public void close() {
+                    if (!closed) {
+                        closed = true;
+                        try {
+                            super.close();
+                        } finally {
+                            semaphore.release();
+                        }
+                    }
+                }
+            };
+        } finally {
+            if (!released) {
+                semaphore.release();
+            }
+        }
+    }
+
+    private Semaphore getPermits(URL url) {
+        String key = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+        Semaphore semaphore = permits.get(key);
+        if (semaphore == null) {
+            semaphore = new Semaphore(maxConnectionsPerSite, true);
+            Semaphore existing = permits.putIfAbsent(key, semaphore);
+            if (existing != null) {
+                semaphore = existing;
+            }
+        }
+        return semaphore;
+    }
+
+    /**
+     * Thrown when a request is not sent because all connections to the server are in use, so the request failed
+     * because of the load on Jenkins, not because of the server.
+     */
+    public static class NoFreeConnectionException extends IOException {
+        public NoFreeConnectionException(String message) {
+            super(message);
+        }
+    }
+}
@@ -4,6 +4,9 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * This object represents an issue.
  */
@@ -104,13 +107,18 @@ public class Issue {
     }
 
     /**
-     * Parses data of an issue request. It only parses the state field.
+     * Parses data of an issue request. It only parses the state, summary, description and resolved fields, or only
+     * the state and summary fields, in which case the parsing stops when they have been read.
      */
     public static class IssueHandler extends DefaultHandler {
         /**
          * Field currently being parsed.
          */
         private String currentField;
+        /**
+         * Whether the value currently being parsed is wanted.
+         */
+        private boolean inValue;
         /**
          * Holder for character data.
          */
@@ -124,13 +132,38 @@ public class Issue {
          * State field name.
          */
         private String stateFieldName;
+        /**
+         * Whether only the state and summary fields are parsed.
+         */
+        private final boolean stateOnly;
+        /**
+         * Whether the parsing stops when the state and summary fields have been read.
+         */
+        private final boolean stopWhenRead;
 
 
         public IssueHandler(String stateFieldName) {
+            this(stateFieldName, false);
+        }
+
+        /**
+         * Creates a handler.
+         *
+         * @param stateFieldName the name of the state field.
+         * @param stateOnly      true to only parse the state and summary fields, and skip the rest of the document
+         *                       when they have been read.
+         */
+        public IssueHandler(String stateFieldName, boolean stateOnly) {
+            this(stateFieldName, stateOnly, stateOnly);
+        }
+
+        IssueHandler(String stateFieldName, boolean stateOnly, boolean stopWhenRead) {
             this.stateFieldName = stateFieldName;
             if(stateFieldName == null || stateFieldName.equals("")) {
                 this.stateFieldName = "State";
             }
+            this.stateOnly = stateOnly;
+            this.stopWhenRead = stopWhenRead;
         }
 
         /**
@@ -142,43 +175,96 @@ public class Issue {
             return issue;
         }
 
-        @Override
-        public void startDocument() throws SAXException {
-            super.startDocument();
-        }
-
         @Override
         public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-            super.startElement(uri, localName, qName, attributes);
-            stringBuilder.setLength(0);
             if (qName.equals("issue")) {
                 this.issue = new Issue(attributes.getValue("id"));
-            }
-            if (qName.equals("field")) {
+            } else if (qName.equals("field")) {
                 currentField = attributes.getValue("name");
+            } else if (qName.equals("value") && issue != null && isWanted(currentField)) {
+                inValue = true;
+                stringBuilder.setLength(0);
             }
         }
 
         @Override
         public void characters(char[] ch, int start, int length) throws SAXException {
-            super.characters(ch, start, length);
-            stringBuilder.append(ch, start, length);
+            if (inValue) {
+                stringBuilder.append(ch, start, length);
+            }
         }
 
         @Override
         public void endElement(String uri, String localName, String qName) throws SAXException {
-            super.endElement(uri, localName, qName);
-            if (qName.equals("value")) {
+            if (qName.equals("field")) {
+                currentField = null;
+            } else if (qName.equals("value") && inValue) {
+                inValue = false;
+                String value = stringBuilder.toString();
                 if (currentField.equals(stateFieldName)) {
-                    issue.state = stringBuilder.toString();
+                    issue.state = value;
                 } else if (currentField.equals("summary")) {
-                    issue.summary = stringBuilder.toString();
+                    issue.summary = value;
                 } else if (currentField.equals("description")) {
-                    issue.description = stringBuilder.toString();
+                    issue.description = value;
                 } else if (currentField.equals("resolved")) {
-                    issue.resolved = stringBuilder.toString();
+                    issue.resolved = value;
+                }
+                if (stopWhenRead && issue.state != null && issue.summary != null) {
+                    throw new XmlParser.StopParsingException();
                 }
             }
         }
+
+        private boolean isWanted(String field) {
+            if (field == null) {
+                return false;
+            }
+            if (field.equals(stateFieldName) || field.equals("summary")) {
+                return true;
+            }
+            return !stateOnly && (field.equals("description") || field.equals("resolved"));
+        }
+    }
+
+    /**
+     * Parses the result of an issue query, i.e. a list of issues with the same fields as {@link IssueHandler}.
+     */
+    public static class IssueListHandler extends IssueHandler {
+        /**
+         * The issues found.
+         */
+        private List<Issue> issues = new ArrayList<Issue>();
+
+        public IssueListHandler(String stateFieldName) {
+            this(stateFieldName, false);
+        }
+
+        /**
+         * Creates a handler.
+         *
+         * @param stateFieldName the name of the state field.
+         * @param stateOnly      true to only parse the state and summary fields of the issues.
+         */
+        public IssueListHandler(String stateFieldName, boolean stateOnly) {
+            super(stateFieldName, stateOnly, false);
+        }
+
+        /**
+         * Gets the issues found, should first be called when parsing is over.
+         *
+         * @return the issues.
+         */
+        public List<Issue> getIssues() {
+            return issues;
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            super.endElement(uri, localName, qName);
+            if (qName.equals("issue") && getIssue() != null) {
+                issues.add(getIssue());
+            }
+        }
     }
 }
@@ -0,0 +1,381 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Communication with YouTrack servers having the JSON REST API under <code>/api</code>.
+ * <p/>
+ * Issues, projects and users are read with the JSON API, asking only for the fields used with <code>fields=</code>
+ * projections and reading the responses as streams. All other operations use the legacy REST API of
+ * {@link YouTrackServer}.
+ */
+public class JsonYouTrackServer extends YouTrackServer {
+    private static final Logger LOGGER = Logger.getLogger(JsonYouTrackServer.class.getName());
+
+    /**
+     * First major version of YouTrack with the JSON REST API.
+     */
+    private static final int FIRST_JSON_API_VERSION = 2019;
+    /**
+     * Max number of issues to get in one issue query.
+     */
+    private static final int ISSUE_QUERY_SIZE = 50;
+    /**
+     * Number of projects to get in one request.
+     */
+    private static final int PROJECT_PAGE_SIZE = 100;
+    /**
+     * Number of users to get in one request.
+     */
+    private static final int USER_PAGE_SIZE = 100;
+
+    /**
+     * Issue fields needed for the state checks.
+     */
+    private static final String STATE_FIELDS = "idReadable,summary,customFields(name,value(name))";
+    /**
+     * Issue fields needed for the tooltips.
+     */
+    private static final String ISSUE_FIELDS = "idReadable,summary,wikifiedDescription,resolved,customFields(name,value(name))";
+
+    public JsonYouTrackServer(String serverUrl) {
+        super(serverUrl);
+    }
+
+    public JsonYouTrackServer(String serverUrl, Transport transport) {
+        super(serverUrl, transport);
+    }
+
+    /**
+     * Checks whether a server of the given version has the JSON REST API.
+     *
+     * @param version the version as returned by {@link #getVersion()}.
+     * @return true if the JSON API can be used.
+     */
+    public static boolean isSupported(String[] version) {
+        if (version == null || version.length == 0) {
+            return false;
+        }
+        try {
+            return Integer.parseInt(version[0].trim()) >= FIRST_JSON_API_VERSION;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Issue getIssue(User user, String issueId, String stateField) {
+        return getIssue(user, issueId, stateField, false);
+    }
+
+    @Override
+    public Issue getIssueState(User user, String issueId, String stateField) {
+        return getIssue(user, issueId, stateField, true);
+    }
+
+    private Issue getIssue(User user, String issueId, String stateField, boolean stateOnly) {
+        try {
+            String path = "/api/issues/" + URLEncoder.encode(issueId, "UTF-8") + "?fields=" + (stateOnly ? STATE_FIELDS : ISSUE_FIELDS);
+            Transport.Response response = getJson(path, user);
+            try {
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
+                    JsonReader reader = new JsonReader(new InputStreamReader(response.getBody(), "UTF-8"));
+                    return readIssue(reader, stateFieldName(stateField));
+                }
+            } finally {
+                response.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not get issue", e);
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.WARNING, "Could not read issue", e);
+        }
+        return null;
+    }
+
+    @Override
+    public Map<String, Issue> getIssues(User user, Collection<String> issueIds, String stateField) {
+        return getIssues(user, issueIds, stateField, false);
+    }
+
+    @Override
+    public Map<String, Issue> getIssueStates(User user, Collection<String> issueIds, String stateField) {
+        return getIssues(user, issueIds, stateField, true);
+    }
+
+    private Map<String, Issue> getIssues(User user, Collection<String> issueIds, String stateField, boolean stateOnly) {
+        Map<String, Issue> result = new HashMap<String, Issue>();
+        List<String> ids = new ArrayList<String>(issueIds);
+        String stateFieldName = stateFieldName(stateField);
+        for (int start = 0; start < ids.size(); start += ISSUE_QUERY_SIZE) {
+            List<String> chunk = ids.subList(start, Math.min(ids.size(), start + ISSUE_QUERY_SIZE));
+            try {
+                StringBuilder query = new StringBuilder("issue id: ");
+                for (int i = 0; i < chunk.size(); i++) {
+                    if (i > 0) {
+                        query.append(", ");
+                    }
+                    query.append(chunk.get(i));
+                }
+                String path = "/api/issues?query=" + URLEncoder.encode(query.toString(), "UTF-8") + "&$top=" + chunk.size() + "&fields=" + (stateOnly ? STATE_FIELDS : ISSUE_FIELDS);
+                Transport.Response response = getJson(path, user);
+                try {
+                    if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+                        LOGGER.log(Level.WARNING, "Could not get issues, server responded: " + response.getStatus());
+                        return null;
+                    }
+                    JsonReader reader = new JsonReader(new InputStreamReader(response.getBody(), "UTF-8"));
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Issue issue = readIssue(reader, stateFieldName);
+                        result.put(issue.getId(), issue);
+                    }
+                    reader.endArray();
+                } finally {
+                    response.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not get issues", e);
+                return null;
+            } catch (IllegalStateException e) {
+                LOGGER.log(Level.WARNING, "Could not read issues", e);
+                return null;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Project> getProjects(User user) {
+        List<Project> projects = new ArrayList<Project>();
+        try {
+            int count = PROJECT_PAGE_SIZE;
+            for (int skip = 0; count == PROJECT_PAGE_SIZE; skip += PROJECT_PAGE_SIZE) {
+                Transport.Response response = getJson("/api/admin/projects?fields=shortName&$skip=" + skip + "&$top=" + PROJECT_PAGE_SIZE, user);
+                try {
+                    if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+                        LOGGER.log(Level.WARNING, "Could not get YouTrack Projects, server responded: " + response.getStatus());
+                        return null;
+                    }
+                    JsonReader reader = new JsonReader(new InputStreamReader(response.getBody(), "UTF-8"));
+                    count = 0;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Project project = new Project();
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (reader.nextName().equals("shortName")) {
+                                project.setShortName(readString(reader));
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        projects.add(project);
+                        count++;
+                    }
+                    reader.endArray();
+                } finally {
+                    response.close();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
+            return null;
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.WARNING, "Could not read YouTrack Projects", e);
+            return null;
+        }
+        return projects;
+    }
+
+    @Override
+    public Map<String, User> getUsersByEmail(User user, int max) {
+        Map<String, User> users = new HashMap<String, User>();
+        try {
+            int count = USER_PAGE_SIZE;
+            for (int skip = 0; count == USER_PAGE_SIZE; skip += USER_PAGE_SIZE) {
+                if (skip > max) {
+                    return null;
+                }
+                Transport.Response response = getJson("/api/users?fields=login,email&$skip=" + skip + "&$top=" + USER_PAGE_SIZE, user);
+                try {
+                    if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+                        LOGGER.log(Level.WARNING, "Could not get YouTrack users, server responded: " + response.getStatus());
+                        return null;
+                    }
+                    JsonReader reader = new JsonReader(new InputStreamReader(response.getBody(), "UTF-8"));
+                    count = 0;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        User found = new User();
+                        String email = null;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String name = reader.nextName();
+                            if (name.equals("login")) {
+                                found.setUsername(readString(reader));
+                            } else if (name.equals("email")) {
+                                email = readString(reader);
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        if (email != null && !users.containsKey(email.toLowerCase(Locale.ENGLISH))) {
+                            users.put(email.toLowerCase(Locale.ENGLISH), found);
+                        }
+                        count++;
+                    }
+                    reader.endArray();
+                } finally {
+                    response.close();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack users", e);
+            return null;
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.WARNING, "Could not read YouTrack users", e);
+            return null;
+        }
+        return users.size() > max ? null : users;
+    }
+
+    /**
+     * Gets the version from the JSON API, for servers which no longer have the legacy version resource.
+     */
+    @Override
+    public String[] getVersion() {
+        String[] version = super.getVersion();
+        if (version != null) {
+            return version;
+        }
+        try {
+            Transport.Response response = getJson("/api/config?fields=version", null);
+            try {
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
+                    JsonReader reader = new JsonReader(new InputStreamReader(response.getBody(), "UTF-8"));
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("version")) {
+                            String value = readString(reader);
+                            return value == null ? null : value.split("\\.");
+                        }
+                        reader.skipValue();
+                    }
+                }
+            } finally {
+                response.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not get version", e);
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.WARNING, "Could not read version", e);
+        }
+        return null;
+    }
+
+    private Transport.Response getJson(String path, User user) throws IOException {
+        Transport.Request request = new Transport.Request("GET", getServerUrl() + path);
+        request.setHeader("Accept", "application/json");
+        return execute(request, user);
+    }
+
+    /**
+     * Reads an issue object, with the fields of {@link #ISSUE_FIELDS} or a subset of them.
+     */
+    private static Issue readIssue(JsonReader reader, String stateFieldName) throws IOException {
+        Issue issue = new Issue(null);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("idReadable")) {
+                issue.setId(readString(reader));
+            } else if (name.equals("summary")) {
+                issue.setSummary(readString(reader));
+            } else if (name.equals("wikifiedDescription")) {
+                issue.setDescription(readString(reader));
+            } else if (name.equals("resolved")) {
+                issue.setResolved(readString(reader));
+            } else if (name.equals("customFields") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readCustomField(reader, stateFieldName, issue);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return issue;
+    }
+
+    /**
+     * Reads a custom field, setting the state of the issue if it is the state field.
+     */
+    private static void readCustomField(JsonReader reader, String stateFieldName, Issue issue) throws IOException {
+        String fieldName = null;
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("name")) {
+                fieldName = readString(reader);
+            } else if (name.equals("value") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("name")) {
+                        value = readString(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (stateFieldName.equals(fieldName)) {
+            issue.setState(value);
+        }
+    }
+
+    /**
+     * Reads a string, number or boolean as a string.
+     */
+    private static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (reader.peek() == JsonToken.BEGIN_ARRAY || reader.peek() == JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        if (reader.peek() == JsonToken.BOOLEAN) {
+            return String.valueOf(reader.nextBoolean());
+        }
+        return reader.nextString();
+    }
+
+    private static String stateFieldName(String stateField) {
+        return stateField == null || stateField.equals("") ? "State" : stateField;
+    }
+}
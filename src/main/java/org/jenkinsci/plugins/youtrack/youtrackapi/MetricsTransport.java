@@ -0,0 +1,45 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import java.io.IOException;
+
+/**
+ * A transport noting the status of each response for {@link MetricsYouTrackClient}, so failed operations are
+ * counted by HTTP status.
+ */
+public class MetricsTransport implements Transport {
+    /**
+     * The shared instance, using the default {@link CircuitBreakerTransport}.
+     */
+    private static final MetricsTransport INSTANCE = new MetricsTransport(CircuitBreakerTransport.getDefault());
+
+    private final Transport transport;
+
+    public MetricsTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * @return the transport shared by all servers.
+     */
+    public static MetricsTransport getDefault() {
+        return INSTANCE;
+    }
+
+    public Response execute(Request request) throws IOException {
+        Response response;
+        try {
+            response = transport.execute(request);
+        } catch (CircuitBreakerTransport.CircuitOpenException e) {
+            MetricsYouTrackClient.onError("unavailable");
+            throw e;
+        } catch (HttpTransport.NoFreeConnectionException e) {
+            MetricsYouTrackClient.onError("no-connection");
+            throw e;
+        } catch (IOException e) {
+            MetricsYouTrackClient.onError("io");
+            throw e;
+        }
+        MetricsYouTrackClient.onResponse(response.getStatus());
+        return response;
+    }
+}
@@ -0,0 +1,287 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import org.jenkinsci.plugins.youtrack.Command;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the operations of another client, counting the calls, the failed calls by HTTP status, and the latencies
+ * of each operation of each site in an {@link OperationMetrics}. The duration of an operation returning a
+ * {@link Command} and its start time are also set on the command.
+ * <p/>
+ * The HTTP status of a call is noted by {@link MetricsTransport} on the thread performing the call. A call fails if
+ * the last response had an error status, no response was received, or the returned command failed.
+ */
+public class MetricsYouTrackClient implements YouTrackClient {
+    /**
+     * The metrics of all sites keyed by site name and operation.
+     */
+    private static final ConcurrentMap<String, OperationMetrics> METRICS = new ConcurrentHashMap<String, OperationMetrics>();
+    /**
+     * The error of the last request performed by the current operation on the thread, if any.
+     */
+    private static final ThreadLocal<String[]> CURRENT_ERROR = new ThreadLocal<String[]>();
+
+    private final YouTrackClient delegate;
+    private final String siteName;
+
+    public MetricsYouTrackClient(YouTrackClient delegate, String siteName) {
+        this.delegate = delegate;
+        this.siteName = siteName;
+    }
+
+    /**
+     * @return the metrics of all sites and operations called, ordered by site and operation.
+     */
+    public static List<OperationMetrics> getAll() {
+        List<OperationMetrics> all = new ArrayList<OperationMetrics>(METRICS.values());
+        Collections.sort(all, new Comparator<OperationMetrics>() {
+            public int compare(OperationMetrics metrics1, OperationMetrics metrics2) {
+                int result = String.valueOf(metrics1.getSiteName()).compareTo(String.valueOf(metrics2.getSiteName()));
+                return result != 0 ? result : metrics1.getOperation().compareTo(metrics2.getOperation());
+            }
+        });
+        return all;
+    }
+
+    /**
+     * Forgets all metrics.
+     */
+    public static void reset() {
+        METRICS.clear();
+    }
+
+    /**
+     * Notes the status of a response received by the current operation.
+     */
+    static void onResponse(int status) {
+        String[] error = CURRENT_ERROR.get();
+        if (error != null) {
+            error[0] = status >= 400 ? String.valueOf(status) : null;
+        }
+    }
+
+    /**
+     * Notes that the current operation received no response.
+     */
+    static void onError(String kind) {
+        String[] error = CURRENT_ERROR.get();
+        if (error != null) {
+            error[0] = kind;
+        }
+    }
+
+    private OperationMetrics getMetrics(String operation) {
+        String key = siteName + "\n" + operation;
+        OperationMetrics metrics = METRICS.get(key);
+        if (metrics == null) {
+            metrics = new OperationMetrics(siteName, operation);
+            OperationMetrics existing = METRICS.putIfAbsent(key, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Performs and measures an operation.
+     */
+    private <T, E extends Exception> T measure(String operation, Operation<T, E> call) throws E {
+        String[] outerError = CURRENT_ERROR.get();
+        String[] error = new String[1];
+        CURRENT_ERROR.set(error);
+        long startTime = System.currentTimeMillis();
+        long start = System.nanoTime();
+        T result = null;
+        boolean completed = false;
+        try {
+            result = call.perform();
+            completed = true;
+            return result;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            if (outerError != null) {
+                CURRENT_ERROR.set(outerError);
+            } else {
+                CURRENT_ERROR.remove();
+            }
+            String failure = error[0];
+            if (!completed && failure == null) {
+                failure = "error";
+            }
+            if (result instanceof Command) {
+                Command command = (Command) result;
+                command.setStartTime(new Date(startTime));
+                command.setDuration(TimeUnit.NANOSECONDS.toMillis(nanos));
+                if (failure == null && command.getStatus() != Command.Status.OK) {
+                    failure = command.getStatus().name();
+                }
+            } else if (operation.equals("login") && failure == null && result != null && !((User) result).isLoggedIn()) {
+                failure = "NOT_LOGGED_IN";
+            }
+            getMetrics(operation).record(nanos, failure);
+        }
+    }
+
+    public Command createIssue(final String siteName, final User user, final String project, final String title, final String description, final String command) {
+        return measure("createIssue", new Operation<Command, RuntimeException>() {
+            public Command perform() {
+                return delegate.createIssue(siteName, user, project, title, description, command);
+            }
+        });
+    }
+
+    public List<Group> getGroups(final User user) {
+        return measure("getGroups", new Operation<List<Group>, RuntimeException>() {
+            public List<Group> perform() {
+                return delegate.getGroups(user);
+            }
+        });
+    }
+
+    public StateBundle getStateBundleWithName(final User user, final String stateBundleName) {
+        return measure("getStateBundleWithName", new Operation<StateBundle, RuntimeException>() {
+            public StateBundle perform() {
+                return delegate.getStateBundleWithName(user, stateBundleName);
+            }
+        });
+    }
+
+    public StateBundle getStateBundleForField(final User user, final String fieldName) {
+        return measure("getStateBundleForField", new Operation<StateBundle, RuntimeException>() {
+            public StateBundle perform() {
+                return delegate.getStateBundleForField(user, fieldName);
+            }
+        });
+    }
+
+    public List<Field> getFields(final User user) {
+        return measure("getFields", new Operation<List<Field>, RuntimeException>() {
+            public List<Field> perform() {
+                return delegate.getFields(user);
+            }
+        });
+    }
+
+    public List<Project> getProjects(final User user) {
+        return measure("getProjects", new Operation<List<Project>, RuntimeException>() {
+            public List<Project> perform() {
+                return delegate.getProjects(user);
+            }
+        });
+    }
+
+    public Command comment(final String siteName, final User user, final Issue issue, final String comment, final String group, final boolean silent) {
+        return measure("comment", new Operation<Command, RuntimeException>() {
+            public Command perform() {
+                return delegate.comment(siteName, user, issue, comment, group, silent);
+            }
+        });
+    }
+
+    public Command applyCommand(final String siteName, final User user, final Issue issue, final String command, final String comment, final User runAs, final boolean notify) {
+        return measure("applyCommand", new Operation<Command, RuntimeException>() {
+            public Command perform() {
+                return delegate.applyCommand(siteName, user, issue, command, comment, runAs, notify);
+            }
+        });
+    }
+
+    public User getUserByEmail(final User user, final String email) throws IOException {
+        return measure("getUserByEmail", new Operation<User, IOException>() {
+            public User perform() throws IOException {
+                return delegate.getUserByEmail(user, email);
+            }
+        });
+    }
+
+    public Map<String, User> getUsersByEmail(final User user, final int max) {
+        return measure("getUsersByEmail", new Operation<Map<String, User>, RuntimeException>() {
+            public Map<String, User> perform() {
+                return delegate.getUsersByEmail(user, max);
+            }
+        });
+    }
+
+    public User login(final String username, final String password) {
+        return measure("login", new Operation<User, RuntimeException>() {
+            public User perform() {
+                return delegate.login(username, password);
+            }
+        });
+    }
+
+    public Command addBuildToBundle(final String siteName, final User user, final String bundleName, final String buildName) {
+        return measure("addBuildToBundle", new Operation<Command, RuntimeException>() {
+            public Command perform() {
+                return delegate.addBuildToBundle(siteName, user, bundleName, buildName);
+            }
+        });
+    }
+
+    public Issue getIssue(final User user, final String issueId, final String stateField) {
+        return measure("getIssue", new Operation<Issue, RuntimeException>() {
+            public Issue perform() {
+                return delegate.getIssue(user, issueId, stateField);
+            }
+        });
+    }
+
+    public Issue getIssueState(final User user, final String issueId, final String stateField) {
+        return measure("getIssueState", new Operation<Issue, RuntimeException>() {
+            public Issue perform() {
+                return delegate.getIssueState(user, issueId, stateField);
+            }
+        });
+    }
+
+    public Map<String, Issue> getIssues(final User user, final Collection<String> issueIds, final String stateField) {
+        return measure("getIssues", new Operation<Map<String, Issue>, RuntimeException>() {
+            public Map<String, Issue> perform() {
+                return delegate.getIssues(user, issueIds, stateField);
+            }
+        });
+    }
+
+    public Map<String, Issue> getIssueStates(final User user, final Collection<String> issueIds, final String stateField) {
+        return measure("getIssueStates", new Operation<Map<String, Issue>, RuntimeException>() {
+            public Map<String, Issue> perform() {
+                return delegate.getIssueStates(user, issueIds, stateField);
+            }
+        });
+    }
+
+    public String[] getVersion() {
+        return measure("getVersion", new Operation<String[], RuntimeException>() {
+            public String[] perform() {
+                return delegate.getVersion();
+            }
+        });
+    }
+
+    public List<BuildBundle> getBuildBundles(final User user) {
+        return measure("getBuildBundles", new Operation<List<BuildBundle>, RuntimeException>() {
+            public List<BuildBundle> perform() {
+                return delegate.getBuildBundles(user);
+            }
+        });
+    }
+
+    /**
+     * A measured operation.
+     */
+    private interface Operation<T, E extends Exception> {
+        T perform() throws E;
+    }
+}
@@ -0,0 +1,157 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts and latencies of the calls of one operation on one site. Latencies are counted in a histogram with fixed
+ * buckets, so recording a call never allocates, and percentiles are estimated as the upper bound of their bucket.
+ */
+public class OperationMetrics {
+    /**
+     * Upper bounds in milliseconds of the latency buckets, the last bucket has no upper bound.
+     */
+    private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private final String siteName;
+    private final String operation;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    /**
+     * Error counts keyed by HTTP status, or by the kind of error if there was no response.
+     */
+    private final ConcurrentMap<String, AtomicLong> errorsByStatus = new ConcurrentHashMap<String, AtomicLong>();
+
+    public OperationMetrics(String siteName, String operation) {
+        this.siteName = siteName;
+        this.operation = operation;
+    }
+
+    /**
+     * Records a call.
+     *
+     * @param nanos the duration of the call in nanoseconds.
+     * @param error the HTTP status or kind of error if the call failed, null if it succeeded.
+     */
+    public void record(long nanos, String error) {
+        calls.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+        buckets.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMillis(nanos)));
+
+        if (error != null) {
+            errors.incrementAndGet();
+            AtomicLong count = errorsByStatus.get(error);
+            if (count == null) {
+                count = new AtomicLong();
+                AtomicLong existing = errorsByStatus.putIfAbsent(error, count);
+                if (existing != null) {
+                    count = existing;
+                }
+            }
+            count.incrementAndGet();
+        }
+    }
+
+    private static int bucket(long millis) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (millis <= BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length;
+    }
+
+    public String getSiteName() {
+        return siteName;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return the error counts keyed by HTTP status, or by "io", "unavailable" or "no-connection" if there was no
+     *         response.
+     */
+    public Map<String, Long> getErrorsByStatus() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : errorsByStatus.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    public double getMeanMillis() {
+        long count = calls.get();
+        return count == 0 ? 0 : totalNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Estimates a percentile of the latency.
+     *
+     * @param fraction the percentile as a fraction, e.g. 0.99.
+     * @return the upper bound in milliseconds of the bucket of the percentile, or the max latency if it is in the
+     *         last bucket.
+     */
+    public double getPercentileMillis(double fraction) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(BUCKET_BOUNDS[i], getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * @return the upper bounds in milliseconds of the latency buckets, except the last which has none.
+     */
+    public static long[] getBucketBounds() {
+        return BUCKET_BOUNDS.clone();
+    }
+
+    /**
+     * @return the number of calls in each latency bucket.
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+}
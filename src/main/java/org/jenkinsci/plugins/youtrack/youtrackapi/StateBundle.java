@@ -55,10 +55,10 @@ public class StateBundle {
 
         @Override
         public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-            stringBuilder.setLength(0);
             super.startElement(uri, localName, qName, attributes);
             if (qName.equals("state")) {
                 inStateValue = true;
+                stringBuilder.setLength(0);
                 State state = new State();
                 currentState = state;
                 state.setDescription(attributes.getValue("description"));
@@ -79,6 +79,7 @@ public class StateBundle {
         public void endElement(String uri, String localName, String qName) throws SAXException {
             super.endElement(uri, localName, qName);
             if (qName.equals("state")) {
+                inStateValue = false;
                 currentState.setValue(stringBuilder.toString());
                 stateBundle.states.add(currentState);
                 currentState = null;
@@ -0,0 +1,214 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The transport used by {@link YouTrackServer} to perform HTTP requests against a YouTrack server.
+ * <p/>
+ * Implementations must make sure that a {@link Response} releases all resources held for the request when it is
+ * closed, so callers shall always close responses in a finally block.
+ */
+public interface Transport {
+
+    /**
+     * Executes a request.
+     *
+     * @param request the request to execute.
+     * @return the response, which must be closed by the caller.
+     * @throws IOException if the request could not be performed.
+     */
+    Response execute(Request request) throws IOException;
+
+    /**
+     * A request to a YouTrack server.
+     */
+    public static class Request {
+        /**
+         * HTTP method, e.g. GET.
+         */
+        private final String method;
+        /**
+         * The full url of the request.
+         */
+        private final String url;
+        /**
+         * Request headers, in the order they should be set.
+         */
+        private final Map<String, String> headers = new LinkedHashMap<String, String>();
+        /**
+         * The request body, null if the request has no body.
+         */
+        private String body;
+
+        public Request(String method, String url) {
+            this.method = method;
+            this.url = url;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public void setHeader(String name, String value) {
+            headers.put(name, value);
+        }
+
+        /**
+         * Sets the session cookies of the user on the request, replacing any cookies set before.
+         *
+         * @param user the user, null is allowed.
+         */
+        public void setCookies(User user) {
+            //Read the list once, it is replaced when the session is renewed.
+            List<String> cookies = user != null ? user.getCookies() : null;
+            if (cookies != null && !cookies.isEmpty()) {
+                StringBuilder header = new StringBuilder();
+                for (String cookie : cookies) {
+                    //The cookies are stored as received, so leave out attributes like the path.
+                    int end = cookie.indexOf(';');
+                    if (header.length() > 0) {
+                        header.append("; ");
+                    }
+                    header.append(end < 0 ? cookie : cookie.substring(0, end));
+                }
+                setHeader("Cookie", header.toString());
+            }
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public void setBody(String body) {
+            this.body = body;
+        }
+    }
+
+    /**
+     * A response from a YouTrack server.
+     */
+    public static class Response {
+        /**
+         * Max number of bytes to read when draining a response, larger responses are just closed.
+         */
+        private static final int MAX_DRAIN = 1024 * 1024;
+
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+
+        public Response(int status, Map<String, List<String>> headers, InputStream body) {
+            this.status = status;
+            this.headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+            if (headers != null) {
+                for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                    //The status line is returned with a null key by HttpURLConnection.
+                    if (header.getKey() != null) {
+                        this.headers.put(header.getKey(), header.getValue());
+                    }
+                }
+            }
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the response headers, with case insensitive names.
+         */
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        public String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        /**
+         * The body of the response, both for successful and error responses.
+         *
+         * @return the body stream, null if there is no body.
+         */
+        public InputStream getBody() {
+            return body;
+        }
+
+        /**
+         * Reads the rest of the body as an UTF-8 string.
+         *
+         * @return the body, empty if there is no body.
+         * @throws IOException if the body could not be read.
+         */
+        public String readBody() throws IOException {
+            if (body == null) {
+                return "";
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toString("UTF-8");
+        }
+
+        /**
+         * Reads the body into memory and closes this response, so its connection is released while the response is
+         * still being used.
+         *
+         * @return a response with the same status, headers and body, which does not need to be closed.
+         * @throws IOException if the body could not be read.
+         */
+        public Response buffer() throws IOException {
+            try {
+                byte[] bytes = readBody().getBytes("UTF-8");
+                return new Response(status, headers, body == null ? null : new ByteArrayInputStream(bytes));
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Drains and closes the body, so the underlying connection can be reused.
+         */
+        public void close() {
+            if (body == null) {
+                return;
+            }
+            try {
+                byte[] buffer = new byte[4096];
+                int drained = 0;
+                int read;
+                while (drained < MAX_DRAIN && (read = body.read(buffer)) != -1) {
+                    drained += read;
+                }
+            } catch (IOException ignored) {
+                //The connection will just not be reused.
+            } finally {
+                try {
+                    body.close();
+                } catch (IOException ignored) {
+                    //Nothing to do.
+                }
+            }
+        }
+    }
+}
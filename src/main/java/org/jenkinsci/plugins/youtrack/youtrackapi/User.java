@@ -4,8 +4,8 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * This object represents a user.
@@ -16,20 +16,35 @@ public class User {
      */
     private String username;
     /**
-     * The set of cookies if this user has a session.
+     * The set of cookies if this user has a session. Replaced as a whole when the session is renewed, so a request
+     * never sees the cookies of two sessions.
      */
-    private transient List<String> cookies;
+    private transient volatile List<String> cookies;
+    /**
+     * Incremented each time the session is renewed, so a request rejected with an old session does not renew it again.
+     */
+    private transient volatile int sessionGeneration;
 
     /**
      * True if the user object is logged in.
      */
-    private boolean loggedIn;
+    private volatile boolean loggedIn;
+
+    /**
+     * True if logging in failed because the server answered with a server error, so it may succeed later.
+     */
+    private transient boolean serverUnavailable;
+
+    /**
+     * Used to renew the session when the server rejects the cookies, null if the session cannot be renewed.
+     */
+    private transient Reauthenticator reauthenticator;
 
     /**
      * Constructs a user.
      */
     public User() {
-        cookies = new ArrayList<String>();
+        cookies = new CopyOnWriteArrayList<String>();
     }
 
     public boolean isLoggedIn() {
@@ -40,6 +55,14 @@ public class User {
         this.loggedIn = loggedIn;
     }
 
+    public boolean isServerUnavailable() {
+        return serverUnavailable;
+    }
+
+    public void setServerUnavailable(boolean serverUnavailable) {
+        this.serverUnavailable = serverUnavailable;
+    }
+
     /**
      * @return the username of the user.
      */
@@ -60,6 +83,48 @@ public class User {
         return cookies;
     }
 
+    /**
+     * @return the generation of the session, read before the cookies when sending a request.
+     */
+    public int getSessionGeneration() {
+        return sessionGeneration;
+    }
+
+    /**
+     * Replaces the cookies with the ones of a new session.
+     *
+     * @param newCookies the cookies of the new session.
+     */
+    public synchronized void renewSession(List<String> newCookies) {
+        cookies = new CopyOnWriteArrayList<String>(newCookies);
+        //Incremented after the cookies are replaced, so a request seeing the new generation sends the new cookies.
+        sessionGeneration++;
+        loggedIn = true;
+    }
+
+    public Reauthenticator getReauthenticator() {
+        return reauthenticator;
+    }
+
+    public void setReauthenticator(Reauthenticator reauthenticator) {
+        this.reauthenticator = reauthenticator;
+    }
+
+    /**
+     * Renews the session of a user, which is shared between several callers, when it has expired.
+     */
+    public interface Reauthenticator {
+        /**
+         * Logs in again and replaces the cookies of the given user with the ones of the new session, unless the
+         * session was already renewed since the rejected request was sent.
+         *
+         * @param user       the user whose session was rejected.
+         * @param generation the generation of the session the rejected request was sent with.
+         * @return true if the user has a valid session afterwards.
+         */
+        boolean reauthenticate(User user, int generation);
+    }
+
     /**
      * Handler for parsing user query if will find the first user
      * in the result.
@@ -76,6 +141,7 @@ public class User {
             if (user == null && qName.equals("user")) {
                 user = new User();
                 user.username = attributes.getValue("login");
+                throw new XmlParser.StopParsingException();
             }
         }
 
@@ -0,0 +1,103 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses the XML responses from YouTrack with SAX parsers reused across requests.
+ * <p/>
+ * The parser factory is looked up once, and idle parsers are kept in a small pool instead of one per thread, so
+ * request threads of the container do not hold on to parsers, and thereby the plugin class loader, after the plugin
+ * is done with them.
+ * <p/>
+ * A handler can stop the parsing when it has read what it needs by throwing a {@link StopParsingException}.
+ */
+final class XmlParser {
+    /**
+     * Max number of idle parsers kept.
+     */
+    private static final int MAX_IDLE = 16;
+
+    private static final SAXParserFactory FACTORY = SAXParserFactory.newInstance();
+
+    private static final Queue<SAXParser> IDLE = new ConcurrentLinkedQueue<SAXParser>();
+    private static final AtomicInteger IDLE_COUNT = new AtomicInteger();
+
+    private XmlParser() {
+    }
+
+    /**
+     * Parses a stream with the given handler.
+     *
+     * @param inputStream the stream to parse, it is not closed.
+     * @param handler     the handler.
+     */
+    static void parse(InputStream inputStream, DefaultHandler handler) throws ParserConfigurationException, SAXException, IOException {
+        parse(new InputSource(inputStream), handler);
+    }
+
+    /**
+     * Parses an input source with the given handler.
+     *
+     * @param inputSource the source to parse.
+     * @param handler     the handler.
+     */
+    static void parse(InputSource inputSource, DefaultHandler handler) throws ParserConfigurationException, SAXException, IOException {
+        SAXParser saxParser = acquire();
+        boolean reusable = false;
+        try {
+            saxParser.parse(inputSource, handler);
+            reusable = true;
+        } catch (StopParsingException e) {
+            reusable = true;
+        } finally {
+            if (reusable) {
+                release(saxParser);
+            }
+        }
+    }
+
+    private static SAXParser acquire() throws ParserConfigurationException, SAXException {
+        SAXParser saxParser = IDLE.poll();
+        if (saxParser != null) {
+            IDLE_COUNT.decrementAndGet();
+            return saxParser;
+        }
+        synchronized (FACTORY) {
+            return FACTORY.newSAXParser();
+        }
+    }
+
+    private static void release(SAXParser saxParser) {
+        try {
+            saxParser.reset();
+        } catch (UnsupportedOperationException e) {
+            return;
+        }
+        if (IDLE_COUNT.incrementAndGet() <= MAX_IDLE) {
+            IDLE.offer(saxParser);
+        } else {
+            IDLE_COUNT.decrementAndGet();
+        }
+    }
+
+    /**
+     * Thrown by a handler to end the parsing of a document early. The parsing then completes normally, with the
+     * handler having the data read so far.
+     */
+    static class StopParsingException extends SAXException {
+        StopParsingException() {
+            super("Parsing stopped");
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import org.jenkinsci.plugins.youtrack.Command;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The operations on a YouTrack server. Implemented by {@link YouTrackServer} talking to the server, and by
+ * decorators like {@link CachingYouTrackClient} wrapping another client.
+ */
+public interface YouTrackClient {
+    /**
+     * Creates an issue.
+     *
+     * @param siteName    the name of the site.
+     * @param user        the logged in user.
+     * @param project     the short name of the project.
+     * @param title       the summary of the issue.
+     * @param description the description of the issue.
+     * @param command     a command to apply to the new issue, null is allowed.
+     * @return the result of the operation.
+     */
+    Command createIssue(String siteName, User user, String project, String title, String description, String command);
+
+    /**
+     * Gets the user groups.
+     *
+     * @param user the logged in user.
+     * @return the groups, null if they could not be fetched.
+     */
+    List<Group> getGroups(User user);
+
+    /**
+     * Gets a state bundle for the given name filled with the state values.
+     *
+     * @param user            the logged in user.
+     * @param stateBundleName the name of the state bundle.
+     * @return the state bundle.
+     */
+    StateBundle getStateBundleWithName(User user, String stateBundleName);
+
+    /**
+     * Gets the state bundle of a state field.
+     *
+     * @param user      the logged in user.
+     * @param fieldName the name of the field.
+     * @return the state bundle, null if the field is not a state field.
+     */
+    StateBundle getStateBundleForField(User user, String fieldName);
+
+    /**
+     * Gets the custom fields.
+     *
+     * @param user the logged in user.
+     * @return the fields, null if they could not be fetched.
+     */
+    List<Field> getFields(User user);
+
+    /**
+     * Gets all projects that the given user can see.
+     *
+     * @param user the logged in user.
+     * @return the projects, null if they could not be fetched.
+     */
+    List<Project> getProjects(User user);
+
+    /**
+     * Adds a comment to an issue.
+     *
+     * @param siteName the name of the site.
+     * @param user     the logged in user.
+     * @param issue    the issue to comment on.
+     * @param comment  the comment text.
+     * @param group    the group the comment should be visible to.
+     * @param silent   prevents watchers from being notified.
+     * @return the result of the operation.
+     */
+    Command comment(String siteName, User user, Issue issue, String comment, String group, boolean silent);
+
+    /**
+     * Applies a command to an issue.
+     *
+     * @param siteName the name of the site.
+     * @param user     the logged in user.
+     * @param issue    the issue to apply the command to.
+     * @param command  the command to apply.
+     * @param comment  comment with the command, null is allowed.
+     * @param runAs    user to apply the command as, null is allowed.
+     * @param notify   notifies watchers.
+     * @return the result of the operation.
+     */
+    Command applyCommand(String siteName, User user, Issue issue, String command, String comment, User runAs, boolean notify);
+
+    /**
+     * Gets a YouTrack user from the e-mail address.
+     *
+     * @param user  the logged in user.
+     * @param email the email.
+     * @return the user, null if there is no user with the address or the user may not look up users.
+     * @throws IOException if the user could not be looked up, because the server could not be reached or failed.
+     */
+    User getUserByEmail(User user, String email) throws IOException;
+
+    /**
+     * Gets all users with an e-mail address, for looking up the users of many e-mail addresses at once.
+     *
+     * @param user the logged in user.
+     * @param max  the max number of users to get.
+     * @return the users keyed by lower case e-mail address. Null if they could not be fetched, or if there are more
+     *         than max users.
+     */
+    Map<String, User> getUsersByEmail(User user, int max);
+
+    /**
+     * Logs in a user.
+     *
+     * @param username the username of the user.
+     * @param password the password of the user.
+     * @return the user with the session cookies set, null if login failed.
+     */
+    User login(String username, String password);
+
+    /**
+     * Adds a build to a build bundle.
+     *
+     * @param siteName   the name of the site.
+     * @param user       the logged in user.
+     * @param bundleName the name of the bundle.
+     * @param buildName  the name of the build.
+     * @return the result of the operation.
+     */
+    Command addBuildToBundle(String siteName, User user, String bundleName, String buildName);
+
+    /**
+     * Gets an issue with its state, summary, description and resolved date.
+     *
+     * @param user       the logged in user.
+     * @param issueId    the id of the issue.
+     * @param stateField the name of the state field.
+     * @return the issue if any.
+     */
+    Issue getIssue(User user, String issueId, String stateField);
+
+    /**
+     * Gets the state and summary of an issue.
+     *
+     * @param user       the logged in user.
+     * @param issueId    the id of the issue.
+     * @param stateField the name of the state field.
+     * @return the issue if any.
+     */
+    Issue getIssueState(User user, String issueId, String stateField);
+
+    /**
+     * Gets several issues as by {@link #getIssue(User, String, String)}.
+     *
+     * @param user       the logged in user.
+     * @param issueIds   the ids of the issues.
+     * @param stateField the name of the state field.
+     * @return the issues found keyed by id. Null if they could not be fetched.
+     */
+    Map<String, Issue> getIssues(User user, Collection<String> issueIds, String stateField);
+
+    /**
+     * Gets several issues as by {@link #getIssueState(User, String, String)}.
+     *
+     * @param user       the logged in user.
+     * @param issueIds   the ids of the issues.
+     * @param stateField the name of the state field.
+     * @return the issues found keyed by id. Null if they could not be fetched.
+     */
+    Map<String, Issue> getIssueStates(User user, Collection<String> issueIds, String stateField);
+
+    /**
+     * Gets the version of the server.
+     *
+     * @return the parts of the version, null if it could not be fetched.
+     */
+    String[] getVersion();
+
+    /**
+     * Gets the build bundles.
+     *
+     * @param user the logged in user.
+     * @return the bundles, null if they could not be fetched.
+     */
+    List<BuildBundle> getBuildBundles(User user);
+}
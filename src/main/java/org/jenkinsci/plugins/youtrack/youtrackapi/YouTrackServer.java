@@ -7,15 +7,14 @@ import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -24,23 +23,53 @@ import java.util.logging.Logger;
 /**
  * This class contains methods for communication with a YouTrack server using the REST API for version 4 of YouTrack.
  */
-public class YouTrackServer {
+public class YouTrackServer implements YouTrackClient {
     /**
      * Logger for this class.
      */
     private static final Logger LOGGER = Logger.getLogger(YouTrackServer.class.getName());
+    /**
+     * Max number of issues to get in one issue query.
+     */
+    private static final int ISSUE_QUERY_SIZE = 50;
+    /**
+     * Status of a request rejected because the server is busy, which is not in {@link HttpURLConnection}.
+     */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
     /**
      * The url of the YouTrack server.
      */
     private final String serverUrl;
+    /**
+     * The transport used to perform requests.
+     */
+    private final Transport transport;
 
     /**
-     * Constructs a server.
+     * Constructs a server using the default transport.
      *
      * @param serverUrl the url of the server.
      */
     public YouTrackServer(String serverUrl) {
+        this(serverUrl, MetricsTransport.getDefault());
+    }
+
+    /**
+     * Constructs a server.
+     *
+     * @param serverUrl the url of the server.
+     * @param transport the transport to perform requests with.
+     */
+    public YouTrackServer(String serverUrl, Transport transport) {
         this.serverUrl = serverUrl;
+        this.transport = transport;
+    }
+
+    /**
+     * @return the url of the server.
+     */
+    String getServerUrl() {
+        return serverUrl;
     }
 
     public Command createIssue(String siteName, User user, String project, String title, String description, String command) {
@@ -60,21 +89,27 @@ public class YouTrackServer {
 
             String params = "project="+URLEncoder.encode(project, "UTF-8")+"&summary="+URLEncoder.encode(title, "UTF-8")+"&description=" + URLEncoder.encode(description, "UTF-8");
 
-            URL url = new URL(serverUrl + "/rest/issue?" + params);
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-            for (String cookie : user.getCookies()) {
-                urlConnection.setRequestProperty("Cookie", cookie);
-            }
-            urlConnection.setRequestMethod("PUT");
-
-            int responseCode = urlConnection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_CREATED) {
-                System.out.println("Created issue");
-                String location = urlConnection.getHeaderField("Location");
-                String issueId = location.substring(location.lastIndexOf("/") + 1);
+            Transport.Request request = new Transport.Request("PUT", serverUrl + "/rest/issue?" + params);
+            request.setHeader("Content-Type", "application/x-www-form-urlencoded");
 
+            String issueId = null;
+            Transport.Response response = execute(request, user);
+            try {
+                if (response.getStatus() == HttpURLConnection.HTTP_CREATED) {
+                    LOGGER.fine("Created issue in project " + project);
+                    String location = response.getHeader("Location");
+                    issueId = location.substring(location.lastIndexOf("/") + 1);
+                } else {
+                    cmd.setStatus(Command.Status.FAILED);
+                    cmd.setResponse(readError(response));
+                    LOGGER.warning("Did not create issue in project " + project + ": " + cmd.getResponse());
+                }
+            } finally {
+                response.close();
+            }
 
+            //The command is applied after closing the response, so only one connection is used at a time.
+            if (issueId != null) {
                 Issue issue = new Issue(issueId);
                 if (command != null && !command.equals("")) {
                     applyCommand(siteName, user, issue, command, "", null, false);
@@ -82,27 +117,6 @@ public class YouTrackServer {
                 cmd.setIssueId(issueId);
                 cmd.setStatus(Command.Status.OK);
                 return cmd;
-            } else {
-                cmd.setStatus(Command.Status.FAILED);
-
-                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(urlConnection.getErrorStream()));
-                String l;
-                StringBuilder stringBuilder = new StringBuilder();
-                while ((l = bufferedReader.readLine()) != null) {
-                    stringBuilder.append(l).append("\n");
-                }
-                try {
-                    SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-                    SAXParser saxParser = saxParserFactory.newSAXParser();
-                    ErrorHandler errorHandler = new ErrorHandler();
-                    saxParser.parse(new InputSource(new StringReader(stringBuilder.toString())), errorHandler);
-                    cmd.setResponse(errorHandler.errorMessage);
-                } catch (ParserConfigurationException e) {
-                    cmd.setResponse(e.getMessage());
-                } catch (SAXException e) {
-                    cmd.setResponse(e.getMessage());
-                }
-                System.out.println("Did not create issue: " + cmd.getResponse());
             }
 
         } catch (MalformedURLException e) {
@@ -118,28 +132,20 @@ public class YouTrackServer {
     public List<Group> getGroups(User user) {
         List<Group> groups = new ArrayList<Group>();
         try {
-            URL url = new URL(serverUrl + "/rest/admin/group");
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-
-
-            for (String cookie : user.getCookies()) {
-
-                urlConnection.setRequestProperty("Cookie", cookie);
-            }
-
-            SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+            Transport.Response response = get("/rest/admin/group", user);
             try {
-                if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                    SAXParser saxParser = saxParserFactory.newSAXParser();
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
                     Group.GroupListHandler dh = new Group.GroupListHandler();
-                    saxParser.parse(urlConnection.getInputStream(), dh);
+                    parse(response, dh);
                     return dh.getGroups();
                 }
-            } catch (ParserConfigurationException e) {
-                LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
-            } catch (SAXException e) {
-                LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
+            } finally {
+                response.close();
             }
+        } catch (ParserConfigurationException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
+        } catch (SAXException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
         } catch (MalformedURLException e) {
             LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
         } catch (IOException e) {
@@ -157,31 +163,23 @@ public class YouTrackServer {
      */
     public StateBundle getStateBundleWithName(User user, String stateBundleName) {
         try {
-            String stateBundleUrl = serverUrl + "/rest/admin/customfield/stateBundle/" + stateBundleName;
-            URL url = new URL(stateBundleUrl);
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-
-
-            for (String cookie : user.getCookies()) {
-
-                urlConnection.setRequestProperty("Cookie", cookie);
-            }
-
-            SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+            String stateBundlePath = "/rest/admin/customfield/stateBundle/" + stateBundleName;
+            Transport.Response response = get(stateBundlePath, user);
             try {
-                if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                    SAXParser saxParser = saxParserFactory.newSAXParser();
-                    StateBundle stateBundle = new StateBundle(stateBundleName, stateBundleUrl);
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
+                    StateBundle stateBundle = new StateBundle(stateBundleName, serverUrl + stateBundlePath);
                     StateBundle.StateBundleHandler dh = new StateBundle.StateBundleHandler(stateBundle);
-                    saxParser.parse(urlConnection.getInputStream(), dh);
+                    parse(response, dh);
                     return stateBundle;
 
                 }
-            } catch (ParserConfigurationException e) {
-                LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
-            } catch (SAXException e) {
-                LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
+            } finally {
+                response.close();
             }
+        } catch (ParserConfigurationException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
+        } catch (SAXException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
         } catch (MalformedURLException e) {
             LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
         } catch (IOException e) {
@@ -192,35 +190,30 @@ public class YouTrackServer {
 
     public StateBundle getStateBundleForField(User user, String fieldName) {
         try {
-            String fieldUrl = serverUrl + "/rest/admin/customfield/field/" + fieldName;
-            URL url = new URL(fieldUrl);
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-
-
-            for (String cookie : user.getCookies()) {
-
-                urlConnection.setRequestProperty("Cookie", cookie);
+            String fieldPath = "/rest/admin/customfield/field/" + fieldName;
+            Field field = null;
+            Transport.Response response = get(fieldPath, user);
+            try {
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
+                    Field.FieldHandler dh = new Field.FieldHandler(fieldName, serverUrl + fieldPath);
+                    parse(response, dh);
+                    field = dh.getField();
+                }
+            } finally {
+                response.close();
             }
 
-            SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-            try {
-                if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                    SAXParser saxParser = saxParserFactory.newSAXParser();
-                    Field.FieldHandler dh = new Field.FieldHandler(fieldName, fieldUrl);
-                    saxParser.parse(urlConnection.getInputStream(), dh);
-                    Field field = dh.getField();
-
-                    if (field.getType().equals("state[1]")) {
-                        return getStateBundleWithName(user, field.getDefaultBundle());
-                    } else {
-                        return null;
-                    }
+            if (field != null) {
+                if (field.getType().equals("state[1]")) {
+                    return getStateBundleWithName(user, field.getDefaultBundle());
+                } else {
+                    return null;
                 }
-            } catch (ParserConfigurationException e) {
-                LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
-            } catch (SAXException e) {
-                LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
             }
+        } catch (ParserConfigurationException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
+        } catch (SAXException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
         } catch (MalformedURLException e) {
             LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
         } catch (IOException e) {
@@ -232,28 +225,20 @@ public class YouTrackServer {
     public List<Field> getFields(User user) {
         List<Field> fields = new ArrayList<Field>();
         try {
-            URL url = new URL(serverUrl + "/rest/admin/customfield/field/");
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-
-
-            for (String cookie : user.getCookies()) {
-
-                urlConnection.setRequestProperty("Cookie", cookie);
-            }
-
-            SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+            Transport.Response response = get("/rest/admin/customfield/field/", user);
             try {
-                if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                    SAXParser saxParser = saxParserFactory.newSAXParser();
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
                     Field.FieldListHandler dh = new Field.FieldListHandler();
-                    saxParser.parse(urlConnection.getInputStream(), dh);
+                    parse(response, dh);
                     return dh.getFields();
                 }
-            } catch (ParserConfigurationException e) {
-                LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
-            } catch (SAXException e) {
-                LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
+            } finally {
+                response.close();
             }
+        } catch (ParserConfigurationException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
+        } catch (SAXException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
         } catch (MalformedURLException e) {
             LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
         } catch (IOException e) {
@@ -271,26 +256,20 @@ public class YouTrackServer {
      */
     public List<Project> getProjects(User user) {
         try {
-            URL url = new URL(serverUrl + "/rest/project/all");
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-
-
-            for (String cookie : user.getCookies()) {
-
-                urlConnection.setRequestProperty("Cookie", cookie);
-            }
-
-            SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+            Transport.Response response = get("/rest/project/all", user);
             try {
-                SAXParser saxParser = saxParserFactory.newSAXParser();
-                Project.ProjectListHandler dh = new Project.ProjectListHandler();
-                saxParser.parse(urlConnection.getInputStream(), dh);
-                return dh.getProjects();
-            } catch (ParserConfigurationException e) {
-                LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
-            } catch (SAXException e) {
-                LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
+                    Project.ProjectListHandler dh = new Project.ProjectListHandler();
+                    parse(response, dh);
+                    return dh.getProjects();
+                }
+            } finally {
+                response.close();
             }
+        } catch (ParserConfigurationException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
+        } catch (SAXException e) {
+            LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
         } catch (MalformedURLException e) {
             LOGGER.log(Level.WARNING, "Could not get YouTrack Projects", e);
         } catch (IOException e) {
@@ -321,6 +300,8 @@ public class YouTrackServer {
         command.setSilent(silent);
         if (user == null || !user.isLoggedIn()) {
             command.setStatus(Command.Status.NOT_LOGGED_IN);
+            //No user means the server could not be reached.
+            command.setRetryable(user == null || user.isServerUnavailable());
         } else {
             command.setStatus(Command.Status.FAILED);
         }
@@ -330,56 +311,35 @@ public class YouTrackServer {
 
 
         try {
-            URL url = new URL(serverUrl + "/rest/issue/" + issue.getId() + "/execute");
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setDoOutput(true);
-            urlConnection.setDoInput(true);
-
-            if (user != null) {
-                for (String cookie : user.getCookies()) {
-                    urlConnection.setRequestProperty("Cookie", cookie);
-                }
-            }
+            Transport.Request request = new Transport.Request("POST", serverUrl + "/rest/issue/" + issue.getId() + "/execute");
 
-            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(urlConnection.getOutputStream());
-            outputStreamWriter.write("comment=" + URLEncoder.encode(comment, "UTF-8"));
+            String str = "comment=" + URLEncoder.encode(comment, "UTF-8");
             if (group != null && !group.equals("")) {
-                outputStreamWriter.write("&group=" + group);
+                str += "&group=" + group;
             }
             if (silent) {
-                outputStreamWriter.write("&disableNotifications=" + true);
+                str += "&disableNotifications=" + true;
             }
-            outputStreamWriter.flush();
-
-            int responseCode = urlConnection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                command.setStatus(Command.Status.OK);
-                return command;
-            } else {
-                command.setStatus(Command.Status.FAILED);
+            request.setBody(str);
 
-                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(urlConnection.getErrorStream()));
-                String l;
-                StringBuilder stringBuilder = new StringBuilder();
-                while ((l = bufferedReader.readLine()) != null) {
-                    stringBuilder.append(l).append("\n");
-                }
-                try {
-                    SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-                    SAXParser saxParser = saxParserFactory.newSAXParser();
-                    ErrorHandler errorHandler = new ErrorHandler();
-                    saxParser.parse(new InputSource(new StringReader(stringBuilder.toString())), errorHandler);
-                    command.setResponse(errorHandler.errorMessage);
-                } catch (ParserConfigurationException e) {
-                    command.setResponse(e.getMessage());
-                } catch (SAXException e) {
-                    command.setResponse(e.getMessage());
+            Transport.Response response = execute(request, user);
+            try {
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
+                    command.setStatus(Command.Status.OK);
+                    return command;
+                } else {
+                    command.setStatus(Command.Status.FAILED);
+                    command.setRetryable(isServerError(response));
+                    command.setResponse(readError(response));
                 }
+            } finally {
+                response.close();
             }
 
 
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Could not comment", e);
+            command.setRetryable(true);
             command.setResponse(e.getMessage());
         }
         return command;
@@ -407,23 +367,15 @@ public class YouTrackServer {
 
         if (user == null || !user.isLoggedIn()) {
             cmd.setStatus(Command.Status.NOT_LOGGED_IN);
+            //No user means the server could not be reached.
+            cmd.setRetryable(user == null || user.isServerUnavailable());
             return cmd;
         }
         cmd.setUsername(user.getUsername());
         try {
 
 
-            URL url = new URL(serverUrl + "/rest/issue/" + issue.getId() + "/execute");
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setDoOutput(true);
-            urlConnection.setDoInput(true);
-
-            for (String cookie : user.getCookies()) {
-                urlConnection.setRequestProperty("Cookie", cookie);
-            }
-
-            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(urlConnection.getOutputStream());
-
+            Transport.Request request = new Transport.Request("POST", serverUrl + "/rest/issue/" + issue.getId() + "/execute");
 
             String str = "command=" + URLEncoder.encode(command, "UTF-8");
             if (comment != null) {
@@ -435,43 +387,27 @@ public class YouTrackServer {
             if (!notify) {
                 str += "&disableNotifications=true";
             }
-            outputStreamWriter.write(str);
-            outputStreamWriter.flush();
+            request.setBody(str);
 
-            int responseCode = urlConnection.getResponseCode();
-
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                cmd.setStatus(Command.Status.OK);
-                return cmd;
-            } else {
-
-
-                cmd.setStatus(Command.Status.FAILED);
-
-                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(urlConnection.getErrorStream()));
-                String l;
-                StringBuilder stringBuilder = new StringBuilder();
-                while ((l = bufferedReader.readLine()) != null) {
-                    stringBuilder.append(l).append("\n");
-                }
-                try {
-                    SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-                    SAXParser saxParser = saxParserFactory.newSAXParser();
-                    ErrorHandler errorHandler = new ErrorHandler();
-                    saxParser.parse(new InputSource(new StringReader(stringBuilder.toString())), errorHandler);
-                    cmd.setResponse(errorHandler.errorMessage);
-                } catch (ParserConfigurationException e) {
-                    cmd.setResponse(e.getMessage());
-                } catch (SAXException e) {
-                    cmd.setResponse(e.getMessage());
+            Transport.Response response = execute(request, user);
+            try {
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
+                    cmd.setStatus(Command.Status.OK);
+                    return cmd;
+                } else {
+                    cmd.setStatus(Command.Status.FAILED);
+                    cmd.setRetryable(isServerError(response));
+                    cmd.setResponse(readError(response));
+
+                    LOGGER.log(Level.WARNING, "Could not apply command. Server response: " + cmd.getResponse());
                 }
-
-
-                LOGGER.log(Level.WARNING, "Could not apply command. Server response: " + stringBuilder.toString());
+            } finally {
+                response.close();
             }
 
 
         } catch (IOException e) {
+            cmd.setRetryable(true);
             cmd.setResponse(e.getMessage());
             LOGGER.log(Level.WARNING, "Could not apply command", e);
         }
@@ -483,32 +419,39 @@ public class YouTrackServer {
      *
      * @param user  the user to get.
      * @param email the email to get.
-     * @return the user, null if none found.
+     * @return the user, null if there is no user with the address or the user may not look up users.
+     * @throws IOException if the server could not be reached or failed.
      */
-    public User getUserByEmail(User user, String email) {
+    public User getUserByEmail(User user, String email) throws IOException {
+        Transport.Response response = get("/rest/admin/user?q=" + email, user);
         try {
-            URL url = new URL(serverUrl + "/rest/admin/user?q=" + email);
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-
-            for (String cookie : user.getCookies()) {
-                urlConnection.setRequestProperty("Cookie", cookie);
-            }
-
-            int responseCode = urlConnection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-                SAXParser saxParser = saxParserFactory.newSAXParser();
+            if (response.getStatus() == HttpURLConnection.HTTP_OK) {
                 User.UserRefHandler dh = new User.UserRefHandler();
-                saxParser.parse(urlConnection.getInputStream(), dh);
+                parse(response, dh);
                 return dh.getUser();
             }
-        } catch (IOException e) {
-            LOGGER.log(Level.WARNING, "Could not get user", e);
+            if (!isServerError(response) && response.getStatus() != HTTP_TOO_MANY_REQUESTS) {
+                //Retrying does not help e.g. without permission to read users, so run as the logged in user.
+                LOGGER.warning("Could not look up the YouTrack user with e-mail " + email + ": " + readError(response));
+                return null;
+            }
+            throw new IOException("Could not get user: " + readError(response));
         } catch (ParserConfigurationException e) {
-            LOGGER.log(Level.WARNING, "Could not get user", e);
+            throw new IOException("Could not get user: " + e.getMessage());
         } catch (SAXException e) {
-            LOGGER.log(Level.WARNING, "Could not get user", e);
+            throw new IOException("Could not get user: " + e.getMessage());
+        } finally {
+            response.close();
         }
+    }
+
+    /**
+     * The legacy REST API lists users without their e-mail addresses, so users can only be looked up one by one with
+     * {@link #getUserByEmail(User, String)}.
+     *
+     * @return null.
+     */
+    public Map<String, User> getUsersByEmail(User user, int max) {
         return null;
     }
 
@@ -525,29 +468,26 @@ public class YouTrackServer {
         try {
             User user = new User();
             user.setUsername(username);
-            URL url = new URL(serverUrl + "/rest/user/login");
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-
-            urlConnection.setDoOutput(true);
-            urlConnection.setDoInput(true);
-            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(urlConnection.getOutputStream());
-            outputStreamWriter.write("login=" + username + "&password=" + password);
-            outputStreamWriter.flush();
+            Transport.Request request = new Transport.Request("POST", serverUrl + "/rest/user/login");
+            request.setBody("login=" + username + "&password=" + password);
 
-            int responseCode = urlConnection.getResponseCode();
-
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                Map<String, List<String>> headerFields = urlConnection.getHeaderFields();
-                List<String> strings = headerFields.get("Set-Cookie");
+            Transport.Response response = transport.execute(request);
+            try {
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
+                    Map<String, List<String>> headerFields = response.getHeaders();
+                    List<String> strings = headerFields.get("Set-Cookie");
 
-                for (String string : strings) {
-                    user.getCookies().add(string);
+                    for (String string : strings) {
+                        user.getCookies().add(string);
+                    }
+                    user.setLoggedIn(true);
+                    return user;
+                } else {
+                    user.setServerUnavailable(isServerError(response));
+                    return user;
                 }
-                user.setLoggedIn(true);
-                return user;
-            } else {
-
-                return user;
+            } finally {
+                response.close();
             }
         } catch (MalformedURLException e) {
             LOGGER.log(Level.WARNING, "Could not login", e);
@@ -573,6 +513,8 @@ public class YouTrackServer {
 
         if (user == null || !user.isLoggedIn()) {
             cmd.setStatus(Command.Status.NOT_LOGGED_IN);
+            //No user means the server could not be reached.
+            cmd.setRetryable(user == null || user.isServerUnavailable());
             return cmd;
         } else {
             cmd.setStatus(Command.Status.FAILED);
@@ -582,48 +524,28 @@ public class YouTrackServer {
 
             String encode = URLEncoder.encode(bundleName, "ISO-8859-1").replace("+", "%20");
             String encode1 = URLEncoder.encode(buildName, "ISO-8859-1").replace("+", "%20");
-            URL url = new URL(serverUrl + "/rest/admin/customfield/buildBundle/" + encode + "/" + encode1);
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("PUT");
-            for (String cookie : user.getCookies()) {
-                urlConnection.setRequestProperty("Cookie", cookie);
-            }
-            urlConnection.setDoOutput(true);
-            urlConnection.setDoInput(true);
-            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(urlConnection.getOutputStream());
-            outputStreamWriter.flush();
-
+            Transport.Request request = new Transport.Request("PUT", serverUrl + "/rest/admin/customfield/buildBundle/" + encode + "/" + encode1);
+            request.setBody("");
 
-            int responseCode = urlConnection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_CREATED) {
-                cmd.setStatus(Command.Status.OK);
-                return cmd;
-            } else {
-                cmd.setStatus(Command.Status.FAILED);
-
-                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(urlConnection.getErrorStream()));
-                String l;
-                StringBuilder stringBuilder = new StringBuilder();
-                while ((l = bufferedReader.readLine()) != null) {
-                    stringBuilder.append(l).append("\n");
-                }
-                try {
-                    SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-                    SAXParser saxParser = saxParserFactory.newSAXParser();
-                    ErrorHandler errorHandler = new ErrorHandler();
-                    saxParser.parse(new InputSource(new StringReader(stringBuilder.toString())), errorHandler);
-                    cmd.setResponse(errorHandler.errorMessage);
-                } catch (ParserConfigurationException e) {
-                    cmd.setResponse(e.getMessage());
-                } catch (SAXException e) {
-                    cmd.setResponse(e.getMessage());
+            Transport.Response response = execute(request, user);
+            try {
+                if (response.getStatus() == HttpURLConnection.HTTP_CREATED) {
+                    cmd.setStatus(Command.Status.OK);
+                    return cmd;
+                } else {
+                    cmd.setStatus(Command.Status.FAILED);
+                    cmd.setRetryable(isServerError(response));
+                    cmd.setResponse(readError(response));
                 }
+            } finally {
+                response.close();
             }
 
         } catch (MalformedURLException e) {
             cmd.setResponse(e.getMessage());
             LOGGER.log(Level.WARNING, "Could not add to bundle", e);
         } catch (IOException e) {
+            cmd.setRetryable(true);
             cmd.setResponse(e.getMessage());
             LOGGER.log(Level.WARNING, "Could not add to bundle", e);
         }
@@ -640,29 +562,37 @@ public class YouTrackServer {
      * @return the issue if any.
      */
     public Issue getIssue(User user, String issueId, String stateField) {
-        try {
-            URL url = new URL(serverUrl + "/rest/issue/" + issueId + "?wikifyDescription=true");
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-            for (String cookie : user.getCookies()) {
-                urlConnection.setRequestProperty("Cookie", cookie);
-            }
+        return getIssue(user, issueId, stateField, false);
+    }
 
+    /**
+     * Gets the state and summary of an issue by issue id. The rest of the issue is not read.
+     *
+     * @param user       the user session.
+     * @param issueId    the id of the issue.
+     * @param stateField the name of the state field.
+     * @return the issue if any.
+     */
+    public Issue getIssueState(User user, String issueId, String stateField) {
+        return getIssue(user, issueId, stateField, true);
+    }
 
-            int responseCode = urlConnection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                try {
-                    SAXParserFactory factory = SAXParserFactory.newInstance();
-                    SAXParser saxParser = factory.newSAXParser();
-                    Issue.IssueHandler issueHandler = new Issue.IssueHandler(stateField);
-                    saxParser.parse(urlConnection.getInputStream(), issueHandler);
+    private Issue getIssue(User user, String issueId, String stateField, boolean stateOnly) {
+        try {
+            Transport.Response response = get("/rest/issue/" + issueId + (stateOnly ? "" : "?wikifyDescription=true"), user);
+            try {
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
+                    Issue.IssueHandler issueHandler = new Issue.IssueHandler(stateField, stateOnly);
+                    parse(response, issueHandler);
                     return issueHandler.getIssue();
-                } catch (ParserConfigurationException e) {
-                    LOGGER.log(Level.WARNING, "Could not get issue", e);
-                } catch (SAXException e) {
-                    LOGGER.log(Level.WARNING, "Could not get issue", e);
                 }
+            } finally {
+                response.close();
             }
-
+        } catch (ParserConfigurationException e) {
+            LOGGER.log(Level.WARNING, "Could not get issue", e);
+        } catch (SAXException e) {
+            LOGGER.log(Level.WARNING, "Could not get issue", e);
         } catch (MalformedURLException e) {
             LOGGER.log(Level.WARNING, "Could not get issue", e);
         } catch (IOException e) {
@@ -671,55 +601,114 @@ public class YouTrackServer {
         return null;
     }
 
+    /**
+     * Gets several issues by issue id using issue queries, instead of one request per issue. The issues have the same
+     * fields set as by {@link #getIssue(User, String, String)}.
+     *
+     * @param user       the user session.
+     * @param issueIds   the ids of the issues.
+     * @param stateField the name of the state field.
+     * @return the issues found keyed by id, issues that does not exist are left out. Null if a query failed.
+     */
+    public Map<String, Issue> getIssues(User user, Collection<String> issueIds, String stateField) {
+        return getIssues(user, issueIds, stateField, false);
+    }
+
+    /**
+     * Gets the state and summary of several issues by issue id using issue queries, as by
+     * {@link #getIssueState(User, String, String)}.
+     *
+     * @param user       the user session.
+     * @param issueIds   the ids of the issues.
+     * @param stateField the name of the state field.
+     * @return the issues found keyed by id, issues that does not exist are left out. Null if a query failed.
+     */
+    public Map<String, Issue> getIssueStates(User user, Collection<String> issueIds, String stateField) {
+        return getIssues(user, issueIds, stateField, true);
+    }
+
+    private Map<String, Issue> getIssues(User user, Collection<String> issueIds, String stateField, boolean stateOnly) {
+        Map<String, Issue> result = new HashMap<String, Issue>();
+        List<String> ids = new ArrayList<String>(issueIds);
+        for (int start = 0; start < ids.size(); start += ISSUE_QUERY_SIZE) {
+            List<String> chunk = ids.subList(start, Math.min(ids.size(), start + ISSUE_QUERY_SIZE));
+            try {
+                StringBuilder filter = new StringBuilder("issue id: ");
+                for (int i = 0; i < chunk.size(); i++) {
+                    if (i > 0) {
+                        filter.append(", ");
+                    }
+                    filter.append(chunk.get(i));
+                }
+                String path = "/rest/issue?filter=" + URLEncoder.encode(filter.toString(), "UTF-8") + "&max=" + chunk.size() + (stateOnly ? "" : "&wikifyDescription=true");
+                Transport.Response response = get(path, user);
+                try {
+                    if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+                        LOGGER.log(Level.WARNING, "Could not get issues, server responded: " + response.getStatus());
+                        return null;
+                    }
+                    Issue.IssueListHandler issueListHandler = new Issue.IssueListHandler(stateField, stateOnly);
+                    parse(response, issueListHandler);
+                    for (Issue issue : issueListHandler.getIssues()) {
+                        result.put(issue.getId(), issue);
+                    }
+                } finally {
+                    response.close();
+                }
+            } catch (ParserConfigurationException e) {
+                LOGGER.log(Level.WARNING, "Could not get issues", e);
+                return null;
+            } catch (SAXException e) {
+                LOGGER.log(Level.WARNING, "Could not get issues", e);
+                return null;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not get issues", e);
+                return null;
+            }
+        }
+        return result;
+    }
+
     public String[] getVersion() {
         try {
-            URL url = new URL(serverUrl + "/rest/workflow/version");
+            Transport.Response response = get("/rest/workflow/version", null);
             try {
-                HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-                if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                    SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-                    SAXParser saxParser = saxParserFactory.newSAXParser();
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
                     VersionHandler versionHandler = new VersionHandler();
-                    saxParser.parse(urlConnection.getInputStream(), versionHandler);
-                    return versionHandler.version.split(".");
+                    parse(response, versionHandler);
+                    return versionHandler.version.split("\\.");
                 }
-            } catch (IOException e) {
-                LOGGER.log(Level.WARNING, "Could not get version", e);
-            } catch (ParserConfigurationException e) {
-                LOGGER.log(Level.WARNING, "Could not get version", e);
-            } catch (SAXException e) {
-                LOGGER.log(Level.WARNING, "Could not get version", e);
+            } finally {
+                response.close();
             }
         } catch (MalformedURLException e) {
             LOGGER.log(Level.WARNING, "Wrong url", e);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not get version", e);
+        } catch (ParserConfigurationException e) {
+            LOGGER.log(Level.WARNING, "Could not get version", e);
+        } catch (SAXException e) {
+            LOGGER.log(Level.WARNING, "Could not get version", e);
         }
         return null;
     }
 
     public List<BuildBundle> getBuildBundles(User user) {
         try {
-            URL url = new URL(serverUrl + "/rest/admin/customfield/buildBundle");
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-            for (String cookie : user.getCookies()) {
-                urlConnection.setRequestProperty("Cookie", cookie);
-            }
-
-
-            int responseCode = urlConnection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                try {
-                    SAXParserFactory factory = SAXParserFactory.newInstance();
-                    SAXParser saxParser = factory.newSAXParser();
+            Transport.Response response = get("/rest/admin/customfield/buildBundle", user);
+            try {
+                if (response.getStatus() == HttpURLConnection.HTTP_OK) {
                     BuildBundle.Handler issueHandler = new BuildBundle.Handler();
-                    saxParser.parse(urlConnection.getInputStream(), issueHandler);
+                    parse(response, issueHandler);
                     return issueHandler.getBundles();
-                } catch (ParserConfigurationException e) {
-                    LOGGER.log(Level.WARNING, "Could not get issue", e);
-                } catch (SAXException e) {
-                    LOGGER.log(Level.WARNING, "Could not get issue", e);
                 }
+            } finally {
+                response.close();
             }
-
+        } catch (ParserConfigurationException e) {
+            LOGGER.log(Level.WARNING, "Could not get issue", e);
+        } catch (SAXException e) {
+            LOGGER.log(Level.WARNING, "Could not get issue", e);
         } catch (MalformedURLException e) {
             LOGGER.log(Level.WARNING, "Could not get issue", e);
         } catch (IOException e) {
@@ -728,6 +717,83 @@ public class YouTrackServer {
         return null;
     }
 
+    /**
+     * Performs a GET request with the session cookies of the user.
+     *
+     * @param path the path relative to the server url.
+     * @param user the user, null is allowed for requests not requiring a session.
+     * @return the response, which must be closed.
+     * @throws IOException if the request could not be performed.
+     */
+    Transport.Response get(String path, User user) throws IOException {
+        Transport.Request request = new Transport.Request("GET", serverUrl + path);
+        return execute(request, user);
+    }
+
+    /**
+     * Performs a request with the session cookies of the user. If the server rejects the session and the session can
+     * be renewed, the request is retried once with the new session, otherwise the user is marked as logged out.
+     * The session is only renewed if the rejected request was sent with its current generation, so requests of
+     * other threads rejected at the same time reuse the renewed session.
+     *
+     * @param request the request.
+     * @param user    the user, null is allowed for requests not requiring a session.
+     * @return the response, which must be closed.
+     * @throws IOException if the request could not be performed.
+     */
+    Transport.Response execute(Transport.Request request, User user) throws IOException {
+        int generation = user != null ? user.getSessionGeneration() : 0;
+        request.setCookies(user);
+        Transport.Response response = transport.execute(request);
+        if (user != null && response.getStatus() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+            User.Reauthenticator reauthenticator = user.getReauthenticator();
+            if (reauthenticator == null) {
+                user.setLoggedIn(false);
+            } else {
+                //Release the connection before logging in, the login needs one as well.
+                response = response.buffer();
+                if (reauthenticator.reauthenticate(user, generation)) {
+                    request.setCookies(user);
+                    response = transport.execute(request);
+                }
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Checks whether the response is a server error, so the request may succeed later.
+     */
+    private static boolean isServerError(Transport.Response response) {
+        return response.getStatus() >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    /**
+     * Parses the body of the response with the given handler.
+     */
+    private void parse(Transport.Response response, DefaultHandler handler) throws ParserConfigurationException, SAXException, IOException {
+        XmlParser.parse(response.getBody(), handler);
+    }
+
+    /**
+     * Reads the error message from an error response.
+     *
+     * @param response the error response.
+     * @return the error message from the server.
+     */
+    private String readError(Transport.Response response) throws IOException {
+        String body = response.readBody();
+        try {
+            ErrorHandler errorHandler = new ErrorHandler();
+            XmlParser.parse(new InputSource(new StringReader(body)), errorHandler);
+            return errorHandler.errorMessage;
+        } catch (ParserConfigurationException e) {
+            return e.getMessage();
+        } catch (SAXException e) {
+            return e.getMessage();
+        }
+    }
+
     public static class VersionHandler extends DefaultHandler {
         boolean inVersion = false;
         private StringBuilder stringBuilder = new StringBuilder();
@@ -754,6 +820,7 @@ public class YouTrackServer {
             if (qName.equals("version")) {
                 inVersion = false;
                 version = stringBuilder.toString();
+                throw new XmlParser.StopParsingException();
             }
             super.endElement(uri, localName, qName);
         }
@@ -0,0 +1,169 @@
+/*
+ * Tooltips for the YouTrack issue links in change logs.
+ *
+ * One handler for the whole page finds the links by their data-youtrack-id attribute. When the first link is
+ * hovered, the data of the issues linked on the page is fetched in batches from the url in data-youtrack-url.
+ */
+(function () {
+    if (window.youtrackTooltips) {
+        return;
+    }
+    window.youtrackTooltips = true;
+
+    var BATCH_SIZE = 50;
+    var data = {};
+    var pending = {};
+    var tooltip = null;
+    var current = null;
+
+    function findLink(element) {
+        while (element && element.getAttribute) {
+            if (element.getAttribute("data-youtrack-id")) {
+                return element;
+            }
+            element = element.parentNode;
+        }
+        return null;
+    }
+
+    function contains(parent, element) {
+        while (element) {
+            if (element == parent) {
+                return true;
+            }
+            element = element.parentNode;
+        }
+        return false;
+    }
+
+    function escapeHtml(text) {
+        return String(text).replace(/&/g, "&amp;").replace(/</g, "&lt;").replace(/>/g, "&gt;");
+    }
+
+    function render(issue) {
+        var title = escapeHtml(issue.id + ": " + issue.summary);
+        if (issue.resolved != null) {
+            title = "<del>" + title + "</del>";
+        }
+        return "<h2>" + title + "</h2><p>" + (issue.description ? issue.description : "") + "</p>";
+    }
+
+    function show(link, html) {
+        if (!tooltip) {
+            tooltip = document.createElement("div");
+            tooltip.className = "youtrack-tooltip";
+            tooltip.style.position = "absolute";
+            tooltip.style.zIndex = "1000";
+            tooltip.style.maxWidth = "600px";
+            tooltip.style.padding = "4px 8px";
+            tooltip.style.background = "#ffffee";
+            tooltip.style.border = "1px solid #808080";
+            document.body.appendChild(tooltip);
+        }
+        tooltip.innerHTML = html;
+        var rect = link.getBoundingClientRect();
+        var scrollTop = window.pageYOffset || document.documentElement.scrollTop;
+        var scrollLeft = window.pageXOffset || document.documentElement.scrollLeft;
+        tooltip.style.top = (rect.bottom + scrollTop + 4) + "px";
+        tooltip.style.left = (rect.left + scrollLeft) + "px";
+        tooltip.style.display = "block";
+    }
+
+    function hide() {
+        current = null;
+        if (tooltip) {
+            tooltip.style.display = "none";
+        }
+    }
+
+    function refresh() {
+        if (!current) {
+            return;
+        }
+        var id = current.getAttribute("data-youtrack-id");
+        if (data[id]) {
+            show(current, render(data[id]));
+        } else if (!pending[id]) {
+            show(current, escapeHtml("Could not load " + id));
+        }
+    }
+
+    function load(link) {
+        var id = link.getAttribute("data-youtrack-id");
+        var url = link.getAttribute("data-youtrack-url");
+        var ids = [id];
+        var added = {};
+        added[id] = true;
+        var links = document.querySelectorAll ? document.querySelectorAll("[data-youtrack-id]") : [];
+        for (var i = 0; i < links.length && ids.length < BATCH_SIZE; i++) {
+            var other = links[i].getAttribute("data-youtrack-id");
+            if (!added[other] && !data[other] && !pending[other] && links[i].getAttribute("data-youtrack-url") == url) {
+                added[other] = true;
+                ids.push(other);
+            }
+        }
+        for (var j = 0; j < ids.length; j++) {
+            pending[ids[j]] = true;
+        }
+
+        var request = new XMLHttpRequest();
+        request.open("GET", url + "?ids=" + encodeURIComponent(ids.join(",")), true);
+        request.onreadystatechange = function () {
+            if (request.readyState != 4) {
+                return;
+            }
+            for (var k = 0; k < ids.length; k++) {
+                delete pending[ids[k]];
+            }
+            if (request.status == 200) {
+                var issues;
+                try {
+                    issues = JSON.parse(request.responseText);
+                } catch (e) {
+                    issues = {};
+                }
+                for (var key in issues) {
+                    if (issues.hasOwnProperty(key)) {
+                        data[key] = issues[key];
+                    }
+                }
+            }
+            refresh();
+        };
+        request.send(null);
+    }
+
+    function onMouseOver(event) {
+        event = event || window.event;
+        var link = findLink(event.target || event.srcElement);
+        if (!link || link == current) {
+            return;
+        }
+        current = link;
+        var id = link.getAttribute("data-youtrack-id");
+        if (data[id]) {
+            show(link, render(data[id]));
+        } else {
+            show(link, "Loading data...");
+            if (!pending[id]) {
+                load(link);
+            }
+        }
+    }
+
+    function onMouseOut(event) {
+        event = event || window.event;
+        var link = findLink(event.target || event.srcElement);
+        if (link && link == current && !contains(link, event.relatedTarget || event.toElement)) {
+            hide();
+        }
+    }
+
+    if (document.addEventListener) {
+        document.addEventListener("mouseover", onMouseOver, false);
+        document.addEventListener("mouseout", onMouseOut, false);
+    } else {
+        document.attachEvent("onmouseover", onMouseOver);
+        document.attachEvent("onmouseout", onMouseOut);
+    }
+})();
@@ -0,0 +1,143 @@
+package org.jenkinsci.plugins.youtrack;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the commit message scanner against splitting the message into lines, as the SCM listener did before.
+ */
+public class CommitMessageScannerTest {
+    private static final List<String> SHORT_NAMES = Arrays.asList("AB", "ABC", "ABX", "Q");
+    /**
+     * Parts of the generated messages. Issue ids always have a number, as a # followed by a short name and a dash but
+     * no number is where the scanner intentionally differs, see {@link #testCommandMustFollowHash()}.
+     */
+    private static final String[] PARTS = {"#", "!#", "!", "AB-12", "ABC-3", "ABX-45", "Q-6", "ABC", "XY-7", " ", " ",
+            "Fixed", "State In Progress", "work 1h", "text", "\n", "\n", "\n\n"};
+
+    @Test
+    public void testSameCommandsAsSplittingLines() {
+        CommitMessageScanner scanner = CommitMessageScanner.create(IssueIdMatcher.get(SHORT_NAMES));
+        Random random = new Random(42);
+        int commands = 0;
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder message = new StringBuilder();
+            int parts = random.nextInt(16);
+            for (int j = 0; j < parts; j++) {
+                message.append(PARTS[random.nextInt(PARTS.length)]);
+            }
+            List<String> expected = splitLines(SHORT_NAMES, message.toString());
+            assertEquals(message.toString(), expected, scan(scanner, message.toString()));
+            commands += expected.size();
+        }
+        assertTrue(commands > 1000);
+    }
+
+    @Test
+    public void testSilentCommand() {
+        assertScanned("fix\n!#AB-12 Fixed\n#ABC-3 work 1h", "AB-12|Fixed|null|true", "ABC-3|work 1h|null|false");
+        assertScanned("#AB-12 Fixed !#ABC-3", "AB-12|Fixed !#ABC-3|null|false");
+    }
+
+    @Test
+    public void testComment() {
+        assertScanned("#AB-12 Fixed\nthe comment\nmore", "AB-12|Fixed|the comment|false");
+        assertScanned("#AB-12 Fixed\n\nafter a blank line", "AB-12|Fixed||false");
+        assertScanned("#AB-12 Fixed\n#ABC-3\ncomment", "AB-12|Fixed|null|false", "ABC-3||comment|false");
+    }
+
+    @Test
+    public void testTrailingBlankLines() {
+        assertScanned("#AB-12 Fixed\n\n\n", "AB-12|Fixed|null|false");
+        assertScanned("#AB-12 Fixed\ncomment\n\n", "AB-12|Fixed|comment|false");
+        assertScanned("\n\n#AB-12\n", "AB-12||null|false");
+    }
+
+    @Test
+    public void testOverlappingShortNames() {
+        assertScanned("#ABC-3 Fixed", "ABC-3|Fixed|null|false");
+        assertScanned("#AB-3 Fixed", "AB-3|Fixed|null|false");
+        assertScanned("#ABCD-3 Fixed");
+        assertScanned("#AB-12ABC-3", "AB-12|ABC-3|null|false");
+    }
+
+    /**
+     * The old parsing also took an issue id found later on the line if the text after # was a short name and a dash
+     * without a number.
+     */
+    @Test
+    public void testCommandMustFollowHash() {
+        assertScanned("#AB- then AB-12 Fixed");
+        assertScanned("see #AB-12 Fixed", "AB-12|Fixed|null|false");
+    }
+
+    @Test
+    public void testNoProjects() {
+        assertNull(CommitMessageScanner.create(IssueIdMatcher.get(new ArrayList<String>())));
+    }
+
+    private static void assertScanned(String message, String... expected) {
+        CommitMessageScanner scanner = CommitMessageScanner.create(IssueIdMatcher.get(SHORT_NAMES));
+        assertEquals(Arrays.asList(expected), scan(scanner, message));
+    }
+
+    private static List<String> scan(CommitMessageScanner scanner, String message) {
+        List<String> commands = new ArrayList<String>();
+        scanner.reset(message);
+        while (scanner.next()) {
+            commands.add(scanner.getIssueId() + "|" + scanner.getCommand() + "|" + scanner.getComment() + "|" + scanner.isSilent());
+        }
+        return commands;
+    }
+
+    /**
+     * The parsing of YouTrackSCMListener before the scanner.
+     */
+    private static List<String> splitLines(List<String> shortNames, String msg) {
+        List<String> commands = new ArrayList<String>();
+        String[] lines = msg.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.contains("#")) {
+                String comment = null;
+                String issueStart = line.substring(line.indexOf("#") + 1);
+                boolean isSilent = false;
+                int hashPosition = line.indexOf("#");
+                if (hashPosition != 0) {
+                    char charBefore = line.charAt(hashPosition - 1);
+                    if (charBefore == '!') {
+                        isSilent = true;
+                    }
+                }
+                if (i + 1 < lines.length) {
+                    String l = lines[i + 1];
+                    if (!l.contains("#")) {
+                        comment = l;
+                    }
+                }
+                String p = null;
+                for (String shortName : shortNames) {
+                    if (issueStart.startsWith(shortName + "-")) {
+                        p = shortName;
+                    }
+                }
+                if (p != null) {
+                    Pattern projectPattern = Pattern.compile("(" + p + "-" + "(\\d+)" + ")( )?(.*)");
+                    Matcher matcher = projectPattern.matcher(issueStart);
+                    while (matcher.find()) {
+                        commands.add(p + "-" + matcher.group(2) + "|" + matcher.group(4) + "|" + comment + "|" + isSilent);
+                    }
+                }
+            }
+        }
+        return commands;
+    }
+}
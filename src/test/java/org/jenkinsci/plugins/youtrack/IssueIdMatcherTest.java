@@ -0,0 +1,82 @@
+package org.jenkinsci.plugins.youtrack;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the issue id matcher against matching each project on its own, as the SCM listener did before.
+ */
+public class IssueIdMatcherTest {
+    private static final List<String> SHORT_NAMES = Arrays.asList("AB", "ABC", "ABX", "Q");
+    private static final String[] PARTS = {"AB-12", "ABC-3", "ABX-45", "Q-6", "ABC", "AB-", "XY-7", "#", " ", "-",
+            "1", "text", "\n"};
+
+    @Test
+    public void testSameIssueIdsAsMatchingEachProject() {
+        IssueIdMatcher issueIdMatcher = IssueIdMatcher.get(SHORT_NAMES);
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder message = new StringBuilder();
+            int parts = random.nextInt(16);
+            for (int j = 0; j < parts; j++) {
+                message.append(PARTS[random.nextInt(PARTS.length)]);
+            }
+            assertEquals(message.toString(), matchEachProject(SHORT_NAMES, message.toString()), match(issueIdMatcher, message.toString()));
+        }
+    }
+
+    @Test
+    public void testLongestShortNameWins() {
+        IssueIdMatcher issueIdMatcher = IssueIdMatcher.get(Arrays.asList("BC", "ABC"));
+        assertEquals(Arrays.asList("ABC-1", "BC-2"), match(issueIdMatcher, "ABC-1 BC-2"));
+        //Matching each project also found BC-1 in ABC-1.
+        assertEquals(Arrays.asList("ABC-1", "BC-1"), matchEachProject(Arrays.asList("BC", "ABC"), "ABC-1"));
+    }
+
+    @Test
+    public void testShortNamesAreQuoted() {
+        IssueIdMatcher issueIdMatcher = IssueIdMatcher.get(Arrays.asList("A.B"));
+        assertEquals(Arrays.asList("A.B-1"), match(issueIdMatcher, "AXB-2 A.B-1"));
+    }
+
+    @Test
+    public void testSameMatcherForSameProjects() {
+        assertSame(IssueIdMatcher.get(Arrays.asList("AB", "ABC")), IssueIdMatcher.get(Arrays.asList("ABC", "AB", "", null)));
+        assertNull(IssueIdMatcher.get(new ArrayList<String>()).matcher("AB-1"));
+    }
+
+    private static List<String> match(IssueIdMatcher issueIdMatcher, String msg) {
+        List<String> issueIds = new ArrayList<String>();
+        Matcher matcher = issueIdMatcher.matcher(msg);
+        while (matcher.find()) {
+            issueIds.add(matcher.group(IssueIdMatcher.ISSUE_ID_GROUP));
+        }
+        Collections.sort(issueIds);
+        return issueIds;
+    }
+
+    /**
+     * The matching of YouTrackSCMListener before the issue id matcher.
+     */
+    private static List<String> matchEachProject(List<String> shortNames, String msg) {
+        List<String> issueIds = new ArrayList<String>();
+        for (String shortName : shortNames) {
+            Pattern projectPattern = Pattern.compile("(" + shortName + "-" + "(\\d+)" + ")");
+            Matcher matcher = projectPattern.matcher(msg);
+            while (matcher.find()) {
+                issueIds.add(shortName + "-" + matcher.group(2));
+            }
+        }
+        Collections.sort(issueIds);
+        return issueIds;
+    }
+}
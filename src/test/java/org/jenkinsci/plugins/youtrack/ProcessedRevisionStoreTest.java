@@ -0,0 +1,311 @@
+package org.jenkinsci.plugins.youtrack;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the processed revisions store.
+ */
+public class ProcessedRevisionStoreTest {
+    private static final String NAME = "test";
+
+    private File directory;
+    private ProcessedRevisionStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("processed", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testAddedRevisionsAreKeptAfterReopen() throws IOException {
+        store = new ProcessedRevisionStore(directory, NAME);
+        assertTrue(store.add("0123456789abcdef0123456789abcdef01234567"));
+        assertTrue(store.add("1234"));
+        assertFalse(store.add("1234"));
+        assertTrue(store.contains("1234"));
+        assertFalse(store.contains("12345"));
+
+        reopen();
+        assertTrue(store.contains("0123456789abcdef0123456789abcdef01234567"));
+        assertTrue(store.contains("1234"));
+        assertFalse(store.contains("12345"));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testTornJournalBatchIsDropped() throws IOException {
+        store = new ProcessedRevisionStore(directory, NAME);
+        store.add("first");
+        store.close();
+        File journal = new File(directory, NAME + ".journal");
+        long validLength = journal.length();
+
+        //A batch of two records of which only the size and part of the first record were written.
+        RandomAccessFile file = new RandomAccessFile(journal, "rw");
+        try {
+            file.seek(validLength);
+            file.writeInt(2);
+            file.write(new byte[ProcessedRevisionStore.RECORD_SIZE / 2]);
+        } finally {
+            file.close();
+        }
+
+        store = new ProcessedRevisionStore(directory, NAME);
+        assertTrue(store.contains("first"));
+        assertEquals(1, store.size());
+        assertEquals(validLength, journal.length());
+
+        store.add("second");
+        reopen();
+        assertTrue(store.contains("first"));
+        assertTrue(store.contains("second"));
+    }
+
+    @Test
+    public void testJournalBatchWithInvalidChecksumIsDropped() throws IOException {
+        store = new ProcessedRevisionStore(directory, NAME);
+        store.add("first");
+        store.close();
+        store = new ProcessedRevisionStore(directory, NAME);
+        store.add("second");
+        store.close();
+
+        //Corrupts the key of the second batch.
+        File journal = new File(directory, NAME + ".journal");
+        RandomAccessFile file = new RandomAccessFile(journal, "rw");
+        try {
+            long secondBatch = journal.length() / 2;
+            file.seek(secondBatch + 4);
+            file.write(~file.read());
+        } finally {
+            file.close();
+        }
+
+        store = new ProcessedRevisionStore(directory, NAME);
+        assertTrue(store.contains("first"));
+        assertFalse(store.contains("second"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testCompactWhileAdding() throws Exception {
+        store = new ProcessedRevisionStore(directory, NAME);
+        final int threads = 4;
+        final int revisions = 2000;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> adders = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            adders.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < revisions; i++) {
+                        String revisionId = thread + "-" + i;
+                        store.add(revisionId);
+                        if (!store.contains(revisionId)) {
+                            failure.compareAndSet(null, new AssertionError("Missing " + revisionId + " right after adding it"));
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread adder : adders) {
+            adder.start();
+        }
+        boolean adding = true;
+        while (adding) {
+            store.compact();
+            adding = false;
+            for (Thread adder : adders) {
+                adding |= adder.isAlive();
+            }
+        }
+        for (Thread adder : adders) {
+            adder.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertAllAdded(threads, revisions);
+
+        reopen();
+        assertAllAdded(threads, revisions);
+        assertEquals(threads * revisions, store.size());
+    }
+
+    private void assertAllAdded(int threads, int revisions) {
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < revisions; i++) {
+                assertTrue(t + "-" + i, store.contains(t + "-" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testExpiredRevisionsAreNotContained() throws IOException {
+        store = new ProcessedRevisionStore(directory, NAME, 2);
+        long now = System.currentTimeMillis();
+        List<String> old = new ArrayList<String>();
+        old.add("old");
+        store.importAll(old, now - TimeUnit.DAYS.toMillis(3));
+        List<String> recent = new ArrayList<String>();
+        recent.add("recent");
+        store.importAll(recent, now - TimeUnit.DAYS.toMillis(1));
+
+        assertFalse(store.contains("old"));
+        assertTrue(store.contains("recent"));
+        assertEquals(1, store.size());
+
+        assertTrue(store.add("old"));
+        assertTrue(store.contains("old"));
+        reopen(2);
+        assertTrue(store.contains("old"));
+        assertTrue(store.contains("recent"));
+    }
+
+    @Test
+    public void testExpiredRevisionsAreDroppedWhenReopened() throws IOException {
+        store = new ProcessedRevisionStore(directory, NAME);
+        List<String> old = new ArrayList<String>();
+        old.add("old");
+        store.importAll(old, System.currentTimeMillis() - TimeUnit.DAYS.toMillis(3));
+        store.add("recent");
+        reopen();
+        assertEquals(2, store.size());
+
+        reopen(2);
+        assertEquals(1, store.size());
+        assertFalse(store.contains("old"));
+        assertTrue(store.contains("recent"));
+    }
+
+    @Test
+    public void testFilterIsRebuiltWhenMissingOrStale() throws IOException {
+        store = new ProcessedRevisionStore(directory, NAME);
+        store.add("first");
+        store.compact();
+        store.close();
+        File filter = new File(directory, NAME + ".bloom");
+        File staleFilter = new File(directory, "stale.bloom");
+        assertTrue(filter.renameTo(staleFilter));
+
+        store = new ProcessedRevisionStore(directory, NAME);
+        assertTrue(store.contains("first"));
+        assertTrue(filter.exists());
+        store.add("second");
+        store.compact();
+        store.close();
+
+        //A filter saved with an older segment does not have the keys merged since.
+        assertTrue(filter.delete());
+        assertTrue(staleFilter.renameTo(filter));
+        store = new ProcessedRevisionStore(directory, NAME);
+        assertTrue(store.contains("first"));
+        assertTrue(store.contains("second"));
+    }
+
+    @Test
+    public void testImportWritesASingleSegment() throws IOException {
+        store = new ProcessedRevisionStore(directory, NAME);
+        List<String> imported = new ArrayList<String>();
+        imported.add("imported");
+        store.importAll(imported, System.currentTimeMillis());
+        int count = ProcessedRevisionStore.IMPORT_CHUNK_SIZE * 2 + 10;
+        ProcessedRevisionStore.Import anImport = store.startImport(System.currentTimeMillis());
+        try {
+            for (int i = 0; i < count; i++) {
+                anImport.add("revision-" + i);
+            }
+            //Duplicates across chunks are only kept once.
+            anImport.add("revision-0");
+            anImport.add("imported");
+            assertFalse(store.contains("revision-0"));
+            anImport.commit();
+        } finally {
+            anImport.discard();
+        }
+
+        assertEquals(count + 1, store.size());
+        assertTrue(new File(directory, NAME + "-2.seg").exists());
+        assertFalse(new File(directory, NAME + "-3.seg").exists());
+        for (File file : directory.listFiles()) {
+            assertFalse(file.getName(), file.getName().endsWith(".run"));
+        }
+        reopen();
+        for (int i = 0; i < count; i++) {
+            assertTrue(store.contains("revision-" + i));
+        }
+        assertTrue(store.contains("imported"));
+    }
+
+    @Test
+    public void testMigrateFromTextFile() throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, YoutrackProcessedRevisionsSaver.NAME)), "UTF-8");
+        try {
+            writer.write("0123456789abcdef0123456789abcdef01234567\n\n  42  \n1234\n");
+        } finally {
+            writer.close();
+        }
+
+        YoutrackProcessedRevisionsSaver saver = new YoutrackProcessedRevisionsSaver(directory);
+        try {
+            assertTrue(saver.isProcessed("0123456789abcdef0123456789abcdef01234567"));
+            assertTrue(saver.isProcessed("42"));
+            assertTrue(saver.isProcessed("1234"));
+            assertFalse(saver.isProcessed(""));
+            assertFalse(new File(directory, YoutrackProcessedRevisionsSaver.NAME).exists());
+            assertTrue(new File(directory, YoutrackProcessedRevisionsSaver.NAME + ".migrated").exists());
+            saver.addProcessed("5678");
+        } finally {
+            saver.close();
+        }
+
+        saver = new YoutrackProcessedRevisionsSaver(directory);
+        try {
+            assertTrue(saver.isProcessed("42"));
+            assertTrue(saver.isProcessed("5678"));
+        } finally {
+            saver.close();
+        }
+    }
+
+    private void reopen() throws IOException {
+        reopen(0);
+    }
+
+    private void reopen(int maxAgeDays) throws IOException {
+        store.close();
+        store = new ProcessedRevisionStore(directory, NAME, maxAgeDays);
+    }
+}
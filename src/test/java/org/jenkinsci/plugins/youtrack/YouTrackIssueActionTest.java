@@ -0,0 +1,151 @@
+package org.jenkinsci.plugins.youtrack;
+
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackStubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.mockito.ArgumentCaptor;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the issue tooltips against the stub server, and their revalidation with ETags.
+ */
+public class YouTrackIssueActionTest {
+    private static final String GET_ISSUE = "GET /rest/issue/{id}";
+    private static final String GET_ISSUES = "GET /rest/issue";
+
+    private YouTrackStubServer server;
+    private YouTrackIssueAction action;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new YouTrackStubServer(Arrays.asList("PRJ"));
+        server.start();
+        final YouTrackSite youTrackSite = new YouTrackSite("stub", "user", "password", server.getUrl());
+        action = new YouTrackIssueAction(null) {
+            @Override
+            YouTrackSite getYouTrackSite() {
+                return youTrackSite;
+            }
+        };
+        YouTrackIssueCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        YouTrackIssueCache.clear();
+    }
+
+    @Test
+    public void testIssueIsCachedAndRevalidated() throws Exception {
+        Exchange first = issue("PRJ-1", null);
+        assertTrue(first.body, first.body.contains("Issue PRJ-1"));
+        assertNotNull(first.etag);
+        assertEquals(Long.valueOf(1), server.getRequestCounts().get(GET_ISSUE));
+
+        Exchange second = issue("PRJ-1", first.etag);
+        verify(second.rsp).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals("", second.body);
+        assertEquals(first.etag, second.etag);
+        assertEquals(Long.valueOf(1), server.getRequestCounts().get(GET_ISSUE));
+
+        Exchange weak = issue("PRJ-1", "\"other\", W/" + first.etag);
+        verify(weak.rsp).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    @Test
+    public void testChangedIssueHasNewEtag() throws Exception {
+        Exchange first = issue("PRJ-1", null);
+        YouTrackIssueCache.put(action.getYouTrackSite(), "PRJ-1", "{\"id\":\"PRJ-1\",\"summary\":\"Changed\"}");
+
+        Exchange second = issue("PRJ-1", first.etag);
+        verify(second.rsp, never()).setStatus(anyInt());
+        assertFalse(first.etag.equals(second.etag));
+        assertTrue(second.body, second.body.contains("Changed"));
+    }
+
+    @Test
+    public void testUnknownIssue() throws Exception {
+        Exchange exchange = issue("OTHER-1", null);
+        verify(exchange.rsp).sendError(HttpServletResponse.SC_NOT_FOUND);
+        assertNull(exchange.etag);
+    }
+
+    @Test
+    public void testIssuesAreFetchedInOneRequestAndRevalidated() throws Exception {
+        Exchange first = issues("PRJ-1,PRJ-2,OTHER-1", null);
+        assertTrue(first.body, first.body.contains("Issue PRJ-1") && first.body.contains("Issue PRJ-2"));
+        assertFalse(first.body, first.body.contains("OTHER-1"));
+        assertEquals(Long.valueOf(1), server.getRequestCounts().get(GET_ISSUES));
+
+        Exchange second = issues("PRJ-1,PRJ-2,OTHER-1", first.etag);
+        verify(second.rsp).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals("", second.body);
+
+        //Only the issue which is not cached is fetched, and the ETag changes with the set of issues.
+        Exchange third = issues("PRJ-1,PRJ-2,PRJ-3", first.etag);
+        verify(third.rsp, never()).setStatus(anyInt());
+        assertFalse(first.etag.equals(third.etag));
+        assertTrue(third.body, third.body.contains("Issue PRJ-3"));
+        assertEquals(null, server.getRequestCounts().get(GET_ISSUE));
+    }
+
+    private Exchange issue(String id, String ifNoneMatch) throws Exception {
+        Exchange exchange = new Exchange(ifNoneMatch);
+        when(exchange.req.getParameter("id")).thenReturn(id);
+        action.doIssue().generateResponse(exchange.req, exchange.rsp, null);
+        return exchange.done();
+    }
+
+    private Exchange issues(String ids, String ifNoneMatch) throws Exception {
+        Exchange exchange = new Exchange(ifNoneMatch);
+        when(exchange.req.getParameter("ids")).thenReturn(ids);
+        action.doIssues().generateResponse(exchange.req, exchange.rsp, null);
+        return exchange.done();
+    }
+
+    /**
+     * A request to the action and its response.
+     */
+    private static class Exchange {
+        private final StaplerRequest req = mock(StaplerRequest.class);
+        private final StaplerResponse rsp = mock(StaplerResponse.class);
+        private final StringWriter writer = new StringWriter();
+        private String body;
+        private String etag;
+
+        Exchange(String ifNoneMatch) throws IOException {
+            when(req.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+            when(rsp.getWriter()).thenReturn(new PrintWriter(writer));
+        }
+
+        Exchange done() {
+            body = writer.toString();
+            ArgumentCaptor<String> name = ArgumentCaptor.forClass(String.class);
+            ArgumentCaptor<String> value = ArgumentCaptor.forClass(String.class);
+            verify(rsp, atLeast(0)).setHeader(name.capture(), value.capture());
+            for (int i = 0; i < name.getAllValues().size(); i++) {
+                if (name.getAllValues().get(i).equals("ETag")) {
+                    etag = value.getAllValues().get(i);
+                }
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.jenkinsci.plugins.youtrack;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the issue cache.
+ */
+public class YouTrackIssueCacheTest {
+    private final YouTrackSite youTrackSite = new YouTrackSite("site", "user", "password", "http://youtrack.example.com");
+
+    @After
+    public void tearDown() {
+        YouTrackIssueCache.clear();
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneFetch() throws Exception {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CountDownLatch fetching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<String> loader = new Callable<String>() {
+            public String call() throws Exception {
+                fetches.incrementAndGet();
+                fetching.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return "{\"id\":\"PRJ-1\"}";
+            }
+        };
+        final List<YouTrackIssueCache.CachedIssue> results = new ArrayList<YouTrackIssueCache.CachedIssue>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    YouTrackIssueCache.CachedIssue cachedIssue = YouTrackIssueCache.get(youTrackSite, "PRJ-1", loader);
+                    synchronized (results) {
+                        results.add(cachedIssue);
+                    }
+                }
+            });
+        }
+        threads.get(0).start();
+        assertTrue(fetching.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i < threads.size(); i++) {
+            threads.get(i).start();
+        }
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, fetches.get());
+        assertEquals(threads.size(), results.size());
+        for (YouTrackIssueCache.CachedIssue cachedIssue : results) {
+            assertEquals("{\"id\":\"PRJ-1\"}", cachedIssue.getJson());
+        }
+        assertSame(results.get(0), YouTrackIssueCache.get(youTrackSite, "PRJ-1"));
+    }
+
+    @Test
+    public void testIssueNotFoundIsNotCached() throws Exception {
+        final AtomicInteger fetches = new AtomicInteger();
+        Callable<String> loader = new Callable<String>() {
+            public String call() {
+                fetches.incrementAndGet();
+                return null;
+            }
+        };
+        assertNull(YouTrackIssueCache.get(youTrackSite, "PRJ-1", loader));
+        assertNull(YouTrackIssueCache.get(youTrackSite, "PRJ-1", loader));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void testEtagMatching() {
+        YouTrackIssueCache.CachedIssue cachedIssue = YouTrackIssueCache.put(youTrackSite, "PRJ-1", "{\"id\":\"PRJ-1\"}");
+        String etag = cachedIssue.getEtag();
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        assertTrue(cachedIssue.matches(etag));
+        assertTrue(cachedIssue.matches("W/" + etag));
+        assertTrue(cachedIssue.matches("\"other\", " + etag));
+        assertTrue(cachedIssue.matches("*"));
+        assertFalse(cachedIssue.matches(null));
+        assertFalse(cachedIssue.matches("\"other\""));
+        assertFalse(cachedIssue.matches(etag.substring(1, etag.length() - 1)));
+
+        assertEquals(etag, YouTrackIssueCache.put(youTrackSite, "PRJ-2", "{\"id\":\"PRJ-1\"}").getEtag());
+        assertFalse(etag.equals(YouTrackIssueCache.put(youTrackSite, "PRJ-1", "{\"id\":\"PRJ-1\",\"summary\":\"Changed\"}").getEtag()));
+    }
+}
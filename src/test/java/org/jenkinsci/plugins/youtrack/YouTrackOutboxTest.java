@@ -0,0 +1,206 @@
+package org.jenkinsci.plugins.youtrack;
+
+import hudson.util.StreamTaskListener;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackStubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test retrying queued commands against the stub server.
+ */
+public class YouTrackOutboxTest {
+    private static final String EXECUTE = "POST /rest/issue/{id}/execute";
+    private static final String ADD_BUILD = "PUT /rest/admin/customfield/buildBundle/{bundle}/{build}";
+
+    private YouTrackStubServer server;
+    private YouTrackSite youTrackSite;
+    private File directory;
+    private ByteArrayOutputStream log;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new YouTrackStubServer(Arrays.asList("PRJ"));
+        server.start();
+        youTrackSite = new YouTrackSite("stub", "user", "password", server.getUrl());
+        directory = File.createTempFile("outbox", "");
+        directory.delete();
+        log = new ByteArrayOutputStream();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testRetriesInQueuedOrder() throws Exception {
+        YouTrackOutbox outbox = createOutbox();
+        Command first = enqueue(outbox, 0, YouTrackOutbox.Entry.command("PRJ-1", "State In Progress", null, null, false));
+        enqueue(outbox, 1, YouTrackOutbox.Entry.command("PRJ-2", "Fixed", null, null, false));
+        enqueue(outbox, 2, YouTrackOutbox.Entry.command("PRJ-1", "Fixed", null, null, false));
+        assertEquals(Command.Status.QUEUED, first.getStatus());
+        assertNotNull(first.getKey());
+        assertEquals(3, outbox.size());
+
+        //Nothing is due yet.
+        outbox.dispatch(listener(), System.currentTimeMillis());
+        assertEquals(new ArrayList<String>(), server.getCommands());
+
+        outbox.dispatch(listener(), System.currentTimeMillis() + YouTrackOutbox.RETRY_BASE);
+        assertEquals(Arrays.asList("PRJ-1 State In Progress", "PRJ-2 Fixed", "PRJ-1 Fixed"), server.getCommands());
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void testQueuingTheSameCommandTwiceIsIgnored() throws Exception {
+        YouTrackOutbox outbox = createOutbox();
+        Command first = enqueue(outbox, 0, YouTrackOutbox.Entry.command("PRJ-1", "Fixed", null, null, false));
+        Command second = enqueue(outbox, 0, YouTrackOutbox.Entry.command("PRJ-1", "Fixed", null, null, false));
+        assertEquals(first.getKey(), second.getKey());
+        assertEquals(1, outbox.size());
+    }
+
+    @Test
+    public void testWaitsForCommandItIsQueuedAfter() throws Exception {
+        YouTrackOutbox outbox = createOutbox();
+        Command addBuild = enqueue(outbox, 0, YouTrackOutbox.Entry.addBuild("Builds", "1.0"));
+        enqueue(outbox, 1, YouTrackOutbox.Entry.command("PRJ-2", "Fixed in build 1.0", null, null, false).after(addBuild.getKey()));
+        logIn();
+
+        server.setErrorRate(1);
+        long now = System.currentTimeMillis() + YouTrackOutbox.RETRY_BASE;
+        outbox.dispatch(listener(), now);
+        assertEquals(1, getAttempts(ADD_BUILD));
+        assertEquals(0, getAttempts(EXECUTE));
+
+        server.setErrorRate(0);
+        outbox.dispatch(listener(), now + 2 * YouTrackOutbox.RETRY_BASE);
+        assertEquals(2, getAttempts(ADD_BUILD));
+        assertEquals(Arrays.asList("PRJ-2 Fixed in build 1.0"), server.getCommands());
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void testBacksOffAndKeepsOrderWhileFailing() throws Exception {
+        YouTrackOutbox outbox = createOutbox();
+        enqueue(outbox, 0, YouTrackOutbox.Entry.command("PRJ-1", "State In Progress", null, null, false));
+        enqueue(outbox, 1, YouTrackOutbox.Entry.command("PRJ-1", "Fixed", null, null, false));
+        enqueue(outbox, 2, YouTrackOutbox.Entry.command("PRJ-2", "Fixed", null, null, false));
+        logIn();
+
+        server.setErrorRate(1);
+        long now = System.currentTimeMillis() + YouTrackOutbox.RETRY_BASE;
+        outbox.dispatch(listener(), now);
+        //The second command for PRJ-1 waits for the first, the one for PRJ-2 does not.
+        assertEquals(2, getAttempts(EXECUTE));
+
+        //The second attempt waits twice as long.
+        outbox.dispatch(listener(), now + 2 * YouTrackOutbox.RETRY_BASE - 1);
+        assertEquals(2, getAttempts(EXECUTE));
+        now += 2 * YouTrackOutbox.RETRY_BASE;
+        outbox.dispatch(listener(), now);
+        assertEquals(4, getAttempts(EXECUTE));
+        assertEquals(3, outbox.size());
+
+        //The third attempt waits four times as long.
+        server.setErrorRate(0);
+        outbox.dispatch(listener(), now + 4 * YouTrackOutbox.RETRY_BASE - 1);
+        assertEquals(4, getAttempts(EXECUTE));
+        outbox.dispatch(listener(), now + 4 * YouTrackOutbox.RETRY_BASE);
+        assertEquals(Arrays.asList("PRJ-1 State In Progress", "PRJ-1 Fixed", "PRJ-2 Fixed"), server.getCommands());
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void testGivesUpOnErrorsWhichAreNotRetryable() throws Exception {
+        YouTrackOutbox outbox = createOutbox();
+        enqueue(outbox, 0, YouTrackOutbox.Entry.command("OTHER-1", "Fixed", null, null, false));
+        outbox.dispatch(listener(), System.currentTimeMillis() + YouTrackOutbox.RETRY_BASE);
+        assertEquals(0, outbox.size());
+        assertTrue(log.toString(), log.toString().contains("FAILED: Retrying command Fixed on OTHER-1"));
+    }
+
+    @Test
+    public void testForbiddenUserLookupRunsAsLoggedInUser() throws Exception {
+        YouTrackOutbox outbox = createOutbox();
+        enqueue(outbox, 0, YouTrackOutbox.Entry.command("PRJ-1", "Fixed", null, null, false).runAsEmail("dev@example.com"));
+        server.setUserLookupForbidden(true);
+        outbox.dispatch(listener(), System.currentTimeMillis() + YouTrackOutbox.RETRY_BASE);
+        assertEquals(Arrays.asList("PRJ-1 Fixed"), server.getCommands());
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void testExpiredCommandsAreGivenUp() throws Exception {
+        YouTrackOutbox outbox = createOutbox();
+        enqueue(outbox, 0, YouTrackOutbox.Entry.command("PRJ-1", "Fixed", null, null, false));
+        outbox.dispatch(listener(), System.currentTimeMillis() + YouTrackOutbox.MAX_AGE + 1000);
+        assertEquals(0, outbox.size());
+        assertEquals(new ArrayList<String>(), server.getCommands());
+        assertTrue(log.toString(), log.toString().contains("FAILED: Retrying command Fixed on PRJ-1"));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void testQueueIsKeptAfterRestart() throws Exception {
+        YouTrackOutbox outbox = createOutbox();
+        enqueue(outbox, 0, YouTrackOutbox.Entry.command("PRJ-1", "State In Progress", null, null, false));
+        enqueue(outbox, 1, YouTrackOutbox.Entry.command("PRJ-1", "Fixed", null, null, false).runAsEmail("dev@example.com"));
+
+        outbox = createOutbox();
+        assertEquals(2, outbox.size());
+        outbox.dispatch(listener(), System.currentTimeMillis() + YouTrackOutbox.RETRY_BASE);
+        assertEquals(Arrays.asList("PRJ-1 State In Progress", "PRJ-1 Fixed"), server.getCommands());
+        assertEquals(Long.valueOf(1), server.getRequestCounts().get("GET /rest/admin/user"));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    /**
+     * Logs in while the server is up, so only the retried requests fail.
+     */
+    private void logIn() {
+        assertTrue(YouTrackSessionCache.getUser(YouTrackServers.get(youTrackSite), youTrackSite).isLoggedIn());
+    }
+
+    private long getAttempts(String request) {
+        Long count = server.getRequestCounts().get(request);
+        return count != null ? count : 0;
+    }
+
+    private YouTrackOutbox createOutbox() {
+        return new YouTrackOutbox(directory) {
+            @Override
+            YouTrackSite findSite(String siteName) {
+                return siteName.equals(youTrackSite.getName()) ? youTrackSite : null;
+            }
+        };
+    }
+
+    private Command enqueue(YouTrackOutbox outbox, int index, YouTrackOutbox.Entry entry) {
+        Command command = new Command();
+        command.setStatus(Command.Status.FAILED);
+        assertTrue(outbox.enqueue("job", 1, youTrackSite, "test", index, entry, command));
+        return command;
+    }
+
+    private StreamTaskListener listener() {
+        return new StreamTaskListener(log);
+    }
+}
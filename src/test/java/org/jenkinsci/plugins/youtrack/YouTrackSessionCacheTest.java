@@ -0,0 +1,73 @@
+package org.jenkinsci.plugins.youtrack;
+
+import org.jenkinsci.plugins.youtrack.youtrackapi.Issue;
+import org.jenkinsci.plugins.youtrack.youtrackapi.User;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackClient;
+import org.jenkinsci.plugins.youtrack.youtrackapi.YouTrackStubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test renewing a shared session against the stub server.
+ */
+public class YouTrackSessionCacheTest {
+    private static final String LOGIN = "POST /rest/user/login";
+    private static final int THREADS = 16;
+
+    private YouTrackStubServer server;
+    private YouTrackSite youTrackSite;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new YouTrackStubServer(Arrays.asList("PRJ"));
+        server.start();
+        youTrackSite = new YouTrackSite("stub", "user", "password", server.getUrl());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        YouTrackSessionCache.clear();
+    }
+
+    @Test
+    public void testExpiredSessionIsRenewedOnceForConcurrentCommands() throws Exception {
+        final YouTrackClient youTrackServer = YouTrackServers.get(youTrackSite);
+        final User user = YouTrackSessionCache.getUser(youTrackServer, youTrackSite);
+        assertTrue(user.isLoggedIn());
+        server.expireSessions();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Command>> results = new ArrayList<Future<Command>>();
+            for (int i = 0; i < THREADS; i++) {
+                final Issue issue = new Issue("PRJ-" + (i + 1));
+                results.add(executor.submit(new Callable<Command>() {
+                    public Command call() {
+                        return youTrackServer.applyCommand("stub", user, issue, "Fixed", null, null, true);
+                    }
+                }));
+            }
+            for (Future<Command> result : results) {
+                assertEquals(Command.Status.OK, result.get().getStatus());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(user.isLoggedIn());
+        assertEquals(Long.valueOf(2), server.getRequestCounts().get(LOGIN));
+        assertEquals(THREADS, server.getCommands().size());
+    }
+}
@@ -0,0 +1,148 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the circuit breaker against the stub server.
+ */
+public class CircuitBreakerTransportTest {
+    private static final String VERSION_PATH = "/rest/workflow/version";
+
+    private YouTrackStubServer server;
+    private CircuitBreakerTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new YouTrackStubServer(Arrays.asList("PRJ"));
+        server.start();
+        transport = new CircuitBreakerTransport(new HttpTransport(1000, 5000, 8), 200);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveServerErrors() throws Exception {
+        server.setErrorRate(1);
+        for (int i = 0; i < CircuitBreakerTransport.FAILURE_THRESHOLD; i++) {
+            assertFalse(transport.isOpen(server.getUrl()));
+            assertEquals(503, get(VERSION_PATH));
+        }
+        assertTrue(transport.isOpen(server.getUrl()));
+
+        long requests = getRequestCount();
+        try {
+            get(VERSION_PATH);
+            fail("The request should not be sent while the breaker is open");
+        } catch (CircuitBreakerTransport.CircuitOpenException e) {
+            //Expected.
+        }
+        assertEquals(requests, getRequestCount());
+    }
+
+    @Test
+    public void testClosesWhenProbeSucceeds() throws Exception {
+        server.setErrorRate(1);
+        for (int i = 0; i < CircuitBreakerTransport.FAILURE_THRESHOLD; i++) {
+            get(VERSION_PATH);
+        }
+        assertTrue(transport.isOpen(server.getUrl()));
+
+        //Failed probes keep the breaker open.
+        Thread.sleep(500);
+        assertTrue(transport.isOpen(server.getUrl()));
+        assertTrue(getRequestCount() > CircuitBreakerTransport.FAILURE_THRESHOLD);
+
+        server.setErrorRate(0);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (transport.isOpen(server.getUrl()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(transport.isOpen(server.getUrl()));
+        assertEquals(200, get(VERSION_PATH));
+    }
+
+    @Test
+    public void testSuccessResetsFailures() throws Exception {
+        for (int round = 0; round < 3; round++) {
+            server.setErrorRate(1);
+            for (int i = 0; i < CircuitBreakerTransport.FAILURE_THRESHOLD - 1; i++) {
+                assertEquals(503, get(VERSION_PATH));
+            }
+            server.setErrorRate(0);
+            assertEquals(200, get(VERSION_PATH));
+        }
+        assertFalse(transport.isOpen(server.getUrl()));
+    }
+
+    @Test
+    public void testClientErrorsDoNotCount() throws Exception {
+        for (int i = 0; i < CircuitBreakerTransport.FAILURE_THRESHOLD * 2; i++) {
+            assertEquals(401, get("/rest/project/all"));
+        }
+        assertFalse(transport.isOpen(server.getUrl()));
+    }
+
+    @Test
+    public void testNoFreeConnectionDoesNotCount() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        transport = new CircuitBreakerTransport(new Transport() {
+            public Response execute(Request request) throws IOException {
+                requests.incrementAndGet();
+                throw new HttpTransport.NoFreeConnectionException("No free connection");
+            }
+        }, 200);
+        for (int i = 0; i < CircuitBreakerTransport.FAILURE_THRESHOLD * 2; i++) {
+            try {
+                get(VERSION_PATH);
+                fail();
+            } catch (HttpTransport.NoFreeConnectionException e) {
+                //Expected.
+            }
+        }
+        assertFalse(transport.isOpen(server.getUrl()));
+        assertEquals(CircuitBreakerTransport.FAILURE_THRESHOLD * 2, requests.get());
+    }
+
+    @Test
+    public void testConnectionErrorsCount() throws Exception {
+        String url = server.getUrl();
+        server.stop();
+        for (int i = 0; i < CircuitBreakerTransport.FAILURE_THRESHOLD; i++) {
+            try {
+                transport.execute(new Transport.Request("GET", url + VERSION_PATH)).close();
+                fail();
+            } catch (IOException e) {
+                assertFalse(e instanceof CircuitBreakerTransport.CircuitOpenException);
+            }
+        }
+        assertTrue(transport.isOpen(url));
+    }
+
+    private int get(String path) throws IOException {
+        Transport.Response response = transport.execute(new Transport.Request("GET", server.getUrl() + path));
+        try {
+            return response.getStatus();
+        } finally {
+            response.close();
+        }
+    }
+
+    private long getRequestCount() {
+        long count = 0;
+        for (Long requests : server.getRequestCounts().values()) {
+            count += requests;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,385 @@
+package org.jenkinsci.plugins.youtrack.youtrackapi;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process YouTrack server, answering the legacy REST API requests of the plugin, for testing and load testing
+ * the HTTP paths without a real server.
+ * <p/>
+ * The server has a fixed set of projects, and every issue id of those projects exists. Issues are open until a
+ * command containing "Fixed" is applied. Every request except login needs the session cookie set by login.
+ * <p/>
+ * Slow or unreliable servers are simulated with a latency added to every request, a rate of requests failing with
+ * 503, and a max number of concurrent requests, above which requests are rejected with 429.
+ */
+public class YouTrackStubServer {
+    private static final String SESSION_COOKIE = "JSESSIONID";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<String> shortNames;
+    private final Set<String> projects;
+    /**
+     * States of the issues commands have been applied to, other issues are open.
+     */
+    private final ConcurrentMap<String, String> states = new ConcurrentHashMap<String, String>();
+    /**
+     * The commands applied, as the issue id and the command, in the order they were applied.
+     */
+    private final List<String> commands = Collections.synchronizedList(new ArrayList<String>());
+    private final ConcurrentMap<String, AtomicLong> requestCounts = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final Set<String> validSessions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger createdIssues = new AtomicInteger();
+
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double errorRate;
+    private volatile int maxConcurrentRequests;
+    private volatile boolean userLookupForbidden;
+
+    /**
+     * Creates a server listening on a free port of the loopback interface.
+     *
+     * @param shortNames the short names of the projects.
+     * @throws IOException if the server could not be created.
+     */
+    public YouTrackStubServer(List<String> shortNames) throws IOException {
+        this.shortNames = shortNames;
+        this.projects = new HashSet<String>(shortNames);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "YouTrack stub server");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    YouTrackStubServer.this.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the url of the server, to use as the url of a site.
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Sets the time added to every request.
+     *
+     * @param latencyMillis       the base time in milliseconds.
+     * @param latencyJitterMillis the max random time in milliseconds added to the base time.
+     */
+    public void setLatency(long latencyMillis, long latencyJitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+    }
+
+    /**
+     * @param errorRate the fraction of requests failing with 503, between 0 and 1.
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param maxConcurrentRequests the max number of requests handled at the same time, 0 for no limit.
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * @param userLookupForbidden true if looking up users fails with 403, as for a user without permission to read users.
+     */
+    public void setUserLookupForbidden(boolean userLookupForbidden) {
+        this.userLookupForbidden = userLookupForbidden;
+    }
+
+    /**
+     * Invalidates all sessions, the next request of every client is rejected with 401 until it logs in again.
+     */
+    public void expireSessions() {
+        validSessions.clear();
+    }
+
+    /**
+     * @return the number of requests received, keyed by method and path pattern, e.g. <code>GET /rest/issue/{id}</code>.
+     */
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : requestCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    /**
+     * @return the commands applied, as the issue id, a space and the command, in the order they were applied.
+     */
+    public List<String> getCommands() {
+        synchronized (commands) {
+            return new ArrayList<String>(commands);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath();
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        String[] parts = path.split("/");
+        count(method + " " + pattern(parts));
+
+        int limit = maxConcurrentRequests;
+        if (inFlight.incrementAndGet() > limit && limit > 0) {
+            inFlight.decrementAndGet();
+            send(exchange, 429, "<error>Too many requests</error>");
+            return;
+        }
+        try {
+            delay();
+            if (errorRate > 0 && Math.random() < errorRate) {
+                send(exchange, 503, "<error>Service unavailable</error>");
+                return;
+            }
+            route(exchange, method, path, parts, query);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void route(HttpExchange exchange, String method, String path, String[] parts, Map<String, String> query) throws IOException {
+        if (method.equals("POST") && path.equals("/rest/user/login")) {
+            String session = "stub" + sessions.incrementAndGet();
+            validSessions.add(session);
+            exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=" + session + "; Path=/");
+            send(exchange, 200, "<login>ok</login>");
+            return;
+        }
+        if (method.equals("GET") && path.equals("/rest/workflow/version")) {
+            send(exchange, 200, "<version><version>6.5.17105</version><build>17105</build></version>");
+            return;
+        }
+        String session = sessionOf(exchange.getRequestHeaders().getFirst("Cookie"));
+        if (session == null || !validSessions.contains(session)) {
+            send(exchange, 401, "<error>Unauthorized</error>");
+            return;
+        }
+
+        if (method.equals("GET") && path.equals("/rest/project/all")) {
+            StringBuilder xml = new StringBuilder("<projects>");
+            for (String shortName : shortNames) {
+                xml.append("<project name=\"").append(shortName).append("\" shortName=\"").append(shortName).append("\"/>");
+            }
+            send(exchange, 200, xml.append("</projects>").toString());
+        } else if (method.equals("GET") && path.equals("/rest/issue")) {
+            StringBuilder xml = new StringBuilder("<issueCompacts>");
+            String filter = query.get("filter");
+            if (filter != null && filter.startsWith("issue id:")) {
+                for (String issueId : filter.substring("issue id:".length()).split(",")) {
+                    if (exists(issueId.trim())) {
+                        appendIssue(xml, issueId.trim());
+                    }
+                }
+            }
+            send(exchange, 200, xml.append("</issueCompacts>").toString());
+        } else if (method.equals("PUT") && path.equals("/rest/issue")) {
+            String project = query.get("project");
+            if (project == null || !projects.contains(project)) {
+                send(exchange, 400, "<error>Project not found</error>");
+                return;
+            }
+            exchange.getResponseHeaders().add("Location", getUrl() + "/rest/issue/" + project + "-" + (100000 + createdIssues.incrementAndGet()));
+            send(exchange, 201, "");
+        } else if (method.equals("GET") && parts.length == 4 && parts[2].equals("issue")) {
+            if (exists(parts[3])) {
+                send(exchange, 200, appendIssue(new StringBuilder(), parts[3]).toString());
+            } else {
+                send(exchange, 404, "<error>Issue not found.</error>");
+            }
+        } else if (method.equals("POST") && parts.length == 5 && parts[2].equals("issue") && parts[4].equals("execute")) {
+            if (!exists(parts[3])) {
+                send(exchange, 404, "<error>Issue not found.</error>");
+                return;
+            }
+            String command = parseForm(readBody(exchange)).get("command");
+            commands.add(parts[3] + " " + command);
+            if (command != null && command.contains("Fixed")) {
+                states.put(parts[3], "Fixed");
+            }
+            send(exchange, 200, "");
+        } else if (method.equals("GET") && path.equals("/rest/admin/group")) {
+            send(exchange, 200, "<userGroups><userGroup name=\"All Users\" url=\"" + getUrl() + "/rest/admin/group/All%20Users\"/></userGroups>");
+        } else if (method.equals("GET") && path.equals("/rest/admin/user") && userLookupForbidden) {
+            send(exchange, 403, "<error>You have no permission to read users</error>");
+        } else if (method.equals("GET") && path.equals("/rest/admin/user")) {
+            String email = query.get("q");
+            String login = email != null && email.contains("@") ? email.substring(0, email.indexOf('@')) : "user";
+            send(exchange, 200, "<userRefs><user login=\"" + login + "\" url=\"" + getUrl() + "/rest/admin/user/" + login + "\"/></userRefs>");
+        } else if (method.equals("GET") && path.equals("/rest/admin/customfield/buildBundle")) {
+            send(exchange, 200, "<buildBundles><buildBundle name=\"Builds\" url=\"" + getUrl() + "/rest/admin/customfield/buildBundle/Builds\"/></buildBundles>");
+        } else if (method.equals("PUT") && parts.length == 7 && path.startsWith("/rest/admin/customfield/buildBundle/")) {
+            send(exchange, 201, "");
+        } else {
+            send(exchange, 404, "<error>Not found</error>");
+        }
+    }
+
+    /**
+     * @return the first session id in the cookie header, like a servlet container picks it, or null if there is none.
+     */
+    private static String sessionOf(String cookieHeader) {
+        if (cookieHeader != null) {
+            for (String cookie : cookieHeader.split(";")) {
+                cookie = cookie.trim();
+                if (cookie.startsWith(SESSION_COOKIE + "=")) {
+                    return cookie.substring(SESSION_COOKIE.length() + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean exists(String issueId) {
+        int dash = issueId.lastIndexOf('-');
+        return dash > 0 && projects.contains(issueId.substring(0, dash));
+    }
+
+    private StringBuilder appendIssue(StringBuilder xml, String issueId) {
+        String state = states.get(issueId);
+        xml.append("<issue id=\"").append(issueId).append("\">");
+        appendField(xml, "projectShortName", issueId.substring(0, issueId.lastIndexOf('-')));
+        appendField(xml, "summary", "Issue " + issueId);
+        appendField(xml, "description", "Description of issue " + issueId);
+        appendField(xml, "State", state != null ? state : "Open");
+        if (state != null) {
+            appendField(xml, "resolved", "1360000000000");
+        }
+        return xml.append("</issue>");
+    }
+
+    private static void appendField(StringBuilder xml, String name, String value) {
+        xml.append("<field name=\"").append(name).append("\"><value>").append(value).append("</value></field>");
+    }
+
+    /**
+     * Gets the path with the variable parts, like issue ids, replaced by placeholders, for counting requests.
+     */
+    private static String pattern(String[] parts) {
+        StringBuilder pattern = new StringBuilder();
+        for (int i = 1; i < parts.length; i++) {
+            pattern.append('/');
+            if (i == 3 && parts[2].equals("issue")) {
+                pattern.append("{id}");
+            } else if (i >= 5 && parts[4].equals("buildBundle")) {
+                pattern.append(i == 5 ? "{bundle}" : "{build}");
+            } else {
+                pattern.append(parts[i]);
+            }
+        }
+        return pattern.toString();
+    }
+
+    private void count(String key) {
+        AtomicLong count = requestCounts.get(key);
+        if (count == null) {
+            count = new AtomicLong();
+            AtomicLong existing = requestCounts.putIfAbsent(key, count);
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private void delay() {
+        long delay = latencyMillis + (latencyJitterMillis > 0 ? (long) (Math.random() * latencyJitterMillis) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            body.write(buffer, 0, read);
+        }
+        return body.toString("UTF-8");
+    }
+
+    private static Map<String, String> parseForm(String form) throws UnsupportedEncodingException {
+        Map<String, String> values = new HashMap<String, String>();
+        if (form != null) {
+            for (String pair : form.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    values.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                }
+            }
+        }
+        return values;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/xml; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+    }
+}